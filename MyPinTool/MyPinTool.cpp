@@ -2,7 +2,10 @@
 #include <fstream>
 #include <cstdlib>
 #include <cstddef>
+#include <cstring>
+#include <cerrno>
 #include <unistd.h>
+#include <fcntl.h>
 #include <sys/stat.h>
 #include "pin.H"
 #include <chrono>
@@ -22,6 +25,12 @@ using std::string;
  */
 KNOB<string> KnobOutputFile(KNOB_MODE_WRITEONCE, "pintool", "o", OUTPUT_DIR "buffer.out", "output file");
 
+/*
+ * Named pipe to send the buffers to TraceAnalyzer through, instead of
+ * writing trace files
+ */
+KNOB<string> KnobPipe(KNOB_MODE_WRITEONCE, "pintool", "pipe", "", "named pipe to send the trace to");
+
 /*
  * The ID of the buffer
  */
@@ -39,6 +48,29 @@ struct MEMREF
     UINT64 timestmp; // Timestamp
 };
 
+// TraceAnalyzer reads MEMREFs from the pipe as they are laid out here
+static_assert(sizeof(struct MEMREF) == 24, "unexpected MEMREF layout");
+
+/*
+ * Frames sent through the pipe: this header, followed by count raw MEMREFs.
+ * A frame is at most PIPE_BUF bytes, so the frames that threads write to the
+ * pipe concurrently are never interleaved.
+ */
+struct FRAME_HEADER
+{
+    UINT32 pid;
+    UINT32 tid;
+    UINT32 count;
+};
+
+#define FRAME_SIZE 4096
+#define FRAME_RECORDS ((FRAME_SIZE - sizeof(struct FRAME_HEADER)) / sizeof(struct MEMREF))
+
+/*
+ * The pipe, or -1 when writing trace files
+ */
+int pipeFd = -1;
+
 /*
  * MLOG - thread specific data that is not handled by the buffering API.
  */
@@ -94,6 +126,37 @@ VOID MLOG::DumpBufferToFile(struct MEMREF *reference, UINT64 numElements, THREAD
     }
 }
 
+VOID SendBufferToPipe(struct MEMREF *reference, UINT64 numElements, THREADID tid)
+{
+    char frame[FRAME_SIZE];
+    struct FRAME_HEADER *header = (struct FRAME_HEADER *)frame;
+    header->pid = getpid();
+    header->tid = tid;
+
+    while (numElements > 0)
+    {
+        UINT64 count = numElements < FRAME_RECORDS ? numElements : FRAME_RECORDS;
+        header->count = count;
+        memcpy(frame + sizeof(struct FRAME_HEADER), reference, count * sizeof(struct MEMREF));
+
+        size_t length = sizeof(struct FRAME_HEADER) + count * sizeof(struct MEMREF);
+        ssize_t written;
+        do
+        {
+            written = write(pipeFd, frame, length);
+        } while (written < 0 && errno == EINTR);
+
+        if (written != (ssize_t)length)
+        {
+            cerr << "Error: could not write to the pipe." << endl;
+            exit(1);
+        }
+
+        reference += count;
+        numElements -= count;
+    }
+}
+
 // Define the thread specific data key
 TLS_KEY mlog_key;
 
@@ -164,6 +227,12 @@ VOID *BufferFull(BUFFER_ID id, THREADID tid, const CONTEXT *ctxt, VOID *buf, UIN
 {
     struct MEMREF *reference = (struct MEMREF *)buf;
 
+    if (pipeFd >= 0)
+    {
+        SendBufferToPipe(reference, numElements, tid);
+        return buf;
+    }
+
     MLOG *mlog = static_cast<MLOG *>(PIN_GetThreadData(mlog_key, tid));
 
     mlog->DumpBufferToFile(reference, numElements, tid);
@@ -173,6 +242,12 @@ VOID *BufferFull(BUFFER_ID id, THREADID tid, const CONTEXT *ctxt, VOID *buf, UIN
 
 VOID ThreadStart(THREADID tid, CONTEXT *ctxt, INT32 flags, VOID *v)
 {
+    // Threads sending to the pipe have no trace file
+    if (pipeFd >= 0)
+    {
+        return;
+    }
+
     MLOG *mlog = new MLOG(tid);
 
     PIN_SetThreadData(mlog_key, mlog, tid);
@@ -219,6 +294,17 @@ int main(int argc, char *argv[])
 
     mlog_key = PIN_CreateThreadDataKey(0);
 
+    // Opening blocks until TraceAnalyzer opens the pipe for reading
+    if (!KnobPipe.Value().empty())
+    {
+        pipeFd = open(KnobPipe.Value().c_str(), O_WRONLY);
+        if (pipeFd < 0)
+        {
+            cerr << "Error: could not open the pipe " << KnobPipe.Value() << "." << endl;
+            return 1;
+        }
+    }
+
     TRACE_AddInstrumentFunction(Trace, 0);
 
     PIN_AddThreadStartFunction(ThreadStart, 0);
@@ -41,22 +41,26 @@ run_tracer() {
 sort_and_cleanup() {
     echo "Sorting and deleting files in the output directory"
 
+    # Timestamps are unpadded hexadecimal numbers, so the files are sorted
+    # numerically by TraceAnalyzer's TraceSorter instead of the 'sort' command
+    analyzer_bin="$path/../TraceAnalyzer/bin"
+    if [ ! -f "$analyzer_bin/TraceSorter.class" ]; then
+        echo "TraceSorter not found, build TraceAnalyzer first (make -C $path/../TraceAnalyzer)"
+        exit 1
+    fi
+
+    # Sort all files in parallel, optionally limiting the memory it uses (in MB)
+    if [ -n "$SORT_MEMORY_MB" ]; then
+        java -cp "$analyzer_bin" TraceSorter "$input_dir" "$sorted_dir" --memory "$SORT_MEMORY_MB" || exit 1
+    else
+        java -cp "$analyzer_bin" TraceSorter "$input_dir" "$sorted_dir" || exit 1
+    fi
+
     for file in "$input_dir"/*; do
         # Ensure that we are processing files only
         if [ -f "$file" ]; then
-            # Get the base name of the file
-            base_name=$(basename "$file")
-
-            # Define the sorted file path
-            sorted_file="$sorted_dir/$base_name"
-
-            # Sort the file and output to the sorted directory
-            sort "$file" -o "$sorted_file"
-
             # Delete the original file
             rm "$file"
-
-            echo "Sorted $file -> $sorted_file"
         fi
     done
 
@@ -0,0 +1,17 @@
+#!/bin/bash
+
+# Build the benchmark jar and run the JMH suite, saving the results as JSON
+# in results/<commit>.json so they can be compared across versions.
+# Extra arguments are passed to JMH, e.g. a benchmark name regex or -p pages=65536.
+
+cd "$(dirname "$0")" || exit 1
+
+mvn -B -q package || exit 1
+
+mkdir -p results
+revision=$(git rev-parse --short HEAD 2>/dev/null || echo "local")
+results_file="results/$revision.json"
+
+java -jar target/benchmarks.jar -rf json -rff "$results_file" "$@" || exit 1
+
+echo "Results saved to $results_file"
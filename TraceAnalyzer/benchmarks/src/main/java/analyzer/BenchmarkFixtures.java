@@ -0,0 +1,122 @@
+package analyzer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks: page access
+ * sequences with a configurable skew, text trace chunks and trace directories.
+ */
+final class BenchmarkFixtures {
+
+    private static final long SEED = 42;
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    // Spreads ranks over the address space so hot pages are not contiguous
+    private static final long PAGE_SCATTER = 0x9E3779B97F4A7C15L;
+
+    private BenchmarkFixtures() {
+    }
+
+    // Page IDs of count accesses to a footprint of pages, uniform or Zipfian
+    static long[] pageIds(int count, int pages, String skew) {
+        Random random = new Random(SEED);
+        long[] pageIds = new long[count];
+
+        double[] cdf = null;
+        if (skew.equals("zipf")) {
+            cdf = new double[pages];
+            double sum = 0;
+            for (int rank = 0; rank < pages; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                cdf[rank] = sum;
+            }
+            for (int rank = 0; rank < pages; rank++) {
+                cdf[rank] /= sum;
+            }
+        } else if (!skew.equals("uniform")) {
+            throw new IllegalArgumentException("Unknown skew " + skew);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int rank;
+            if (cdf == null) {
+                rank = random.nextInt(pages);
+            } else {
+                rank = Arrays.binarySearch(cdf, random.nextDouble());
+                rank = Math.min(pages - 1, rank < 0 ? -rank - 1 : rank);
+            }
+            pageIds[i] = ((rank * PAGE_SCATTER) >>> 28) & 0xFFFFFFFFFL;
+        }
+        return pageIds;
+    }
+
+    // Increasing timestamps starting at start, 1 to 2 * meanGap - 1 ticks apart
+    static long[] timestamps(int count, long start, int meanGap) {
+        Random random = new Random(SEED + 1);
+        long[] timestamps = new long[count];
+        long timestamp = start;
+        for (int i = 0; i < count; i++) {
+            timestamp += 1 + random.nextInt(2 * meanGap - 1);
+            timestamps[i] = timestamp;
+        }
+        return timestamps;
+    }
+
+    static long address(long pageId, int i) {
+        return (pageId << 12) | ((i * 64L) & 0xFFF);
+    }
+
+    static char accessType(int i) {
+        return i % 4 == 0 ? 'W' : 'R';
+    }
+
+    // Text lines of the given accesses, in MyPinTool's format
+    static byte[] textLines(long[] timestamps, long[] pageIds) {
+        StringBuilder text = new StringBuilder(timestamps.length * 30);
+        for (int i = 0; i < timestamps.length; i++) {
+            text.append(Long.toHexString(timestamps[i])).append(',').append(accessType(i)).append(',')
+                    .append(Long.toHexString(address(pageIds[i], i))).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // A trace directory of the given format, with the accesses dealt round-robin
+    // over the files like the threads of a traced program
+    static File traceDirectory(TraceWriter.Format format, int files, long[] timestamps, long[] pageIds)
+            throws IOException {
+        File dir = Files.createTempDirectory("trace-bench").toFile();
+        TraceWriter[] writers = new TraceWriter[files];
+        try {
+            for (int f = 0; f < files; f++) {
+                writers[f] = TraceWriter.open(new File(dir, "buffer.out.1." + f), format);
+            }
+            for (int i = 0; i < timestamps.length; i++) {
+                writers[i % files].write(timestamps[i], accessType(i), address(pageIds[i], i));
+            }
+        } finally {
+            for (TraceWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        return dir;
+    }
+
+    static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,74 @@
+package analyzer;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End-to-end analysis of a fixture trace, per on-disk format: every interval
+ * is scanned, merged and ranked exactly like TraceAnalyzer does, without the
+ * console and CSV output.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntervalAnalysisBenchmark {
+
+    static final int FILES = 4;
+    static final int RECORDS = 4 << 20;
+    static final int PAGES = 1 << 18;
+    static final int INTERVALS = 20;
+    static final int SUB_INTERVALS = 10;
+    static final double DRAM_PERCENTAGE = 0.2;
+
+    @Param({ "TEXT", "BINARY", "COMPRESSED" })
+    public String format;
+
+    private File traceDir;
+    private long globalStart;
+    private long globalEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        long[] timestamps = BenchmarkFixtures.timestamps(RECORDS, 1L << 52, 20);
+        long[] pageIds = BenchmarkFixtures.pageIds(RECORDS, PAGES, "zipf");
+        traceDir = BenchmarkFixtures.traceDirectory(TraceWriter.Format.valueOf(format), FILES, timestamps, pageIds);
+        globalStart = timestamps[0];
+        globalEnd = timestamps[RECORDS - 1];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.deleteDirectory(traceDir);
+    }
+
+    @Benchmark
+    public double analyzeTrace() throws IOException {
+        List<File> traceFiles = Arrays.asList(traceDir.listFiles(file -> file.isFile() && !file.isHidden()));
+        long intervalTicks = (globalEnd - globalStart) / INTERVALS;
+        double hitRatioSum = 0;
+
+        try (TraceScanner traceScanner = new TraceScanner(traceFiles)) {
+            IntervalAnalyzer intervalAnalyzer = new IntervalAnalyzer(intervalTicks / SUB_INTERVALS,
+                    traceScanner.getWorkerPool());
+            List<IntervalAnalyzer> analyzers = Collections.singletonList(intervalAnalyzer);
+
+            long intervalStart = globalStart;
+            while (intervalStart + intervalTicks <= globalEnd) {
+                intervalAnalyzer.beginInterval(intervalStart, intervalStart + intervalTicks);
+                traceScanner.scan(intervalStart, intervalStart + intervalTicks, analyzers);
+                intervalAnalyzer.endInterval();
+
+                HitRatioStats hitRatios = TraceAnalyzer.calculateAccuracy(intervalAnalyzer, DRAM_PERCENTAGE);
+                hitRatioSum += hitRatios.getHitRatio(RankingPolicies.BuiltIn.MICROCHRONOS.ordinal());
+                intervalStart += intervalTicks;
+            }
+        }
+        return hitRatioSum;
+    }
+}
@@ -0,0 +1,52 @@
+package analyzer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * MicroChronos sub-interval lookup throughput, in lookups per second, for
+ * intervals split in more or fewer sub-intervals.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MicroChronosBenchmark {
+
+    static final int LOOKUPS = 1 << 20;
+    static final long INTERVAL_START = 1L << 52;
+    static final long INTERVAL_LENGTH = 1L << 32;
+
+    // Interval length in sub-interval durations
+    @Param({ "10", "100", "10000" })
+    public long subIntervals;
+
+    private MicroChronosBuckets buckets;
+    private long[] timestamps;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buckets = new MicroChronosBuckets();
+        buckets.configure(INTERVAL_START, INTERVAL_START + INTERVAL_LENGTH, INTERVAL_LENGTH / subIntervals);
+
+        Random random = new Random(42);
+        timestamps = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            timestamps[i] = INTERVAL_START + (random.nextLong() >>> 1) % INTERVAL_LENGTH;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long indexOf() {
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            sum += buckets.indexOf(timestamps[i]);
+        }
+        return sum;
+    }
+}
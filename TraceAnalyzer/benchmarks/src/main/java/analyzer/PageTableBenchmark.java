@@ -0,0 +1,48 @@
+package analyzer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Page table update throughput, in accesses per second, for footprints that
+ * fit in the caches or not, and for uniform or Zipfian access skew.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PageTableBenchmark {
+
+    static final int ACCESSES = 1 << 20;
+    static final int PTS_SUB_INTERVALS = 100;
+    static final int MICROCHRONOS_BUCKETS = 8;
+
+    @Param({ "1024", "65536", "1048576" })
+    public int pages;
+
+    @Param({ "uniform", "zipf" })
+    public String skew;
+
+    private long[] pageIds;
+    private PageTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pageIds = BenchmarkFixtures.pageIds(ACCESSES, pages, skew);
+        table = new PageTable();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long recordAccesses() {
+        table.reset(PTS_SUB_INTERVALS);
+        for (int i = 0; i < ACCESSES; i++) {
+            int ptsSubIntervalIndex = (int) ((long) i * PTS_SUB_INTERVALS / ACCESSES);
+            table.recordAccess(pageIds[i], i, ptsSubIntervalIndex, i & (MICROCHRONOS_BUCKETS - 1));
+        }
+        return table.size();
+    }
+}
@@ -0,0 +1,60 @@
+package analyzer;
+
+import java.io.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Decoding throughput of one chunk of records, in records per second: text
+ * line parsing, plus binary and block-compressed decoding for comparison.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    // Fits in a single chunk of every format
+    static final int RECORDS = 100_000;
+
+    @Param({ "TEXT", "BINARY", "COMPRESSED" })
+    public String format;
+
+    private TraceChunk chunk;
+    private TraceChunkReader reader;
+    private File traceDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        long[] timestamps = BenchmarkFixtures.timestamps(RECORDS, 1L << 52, 20);
+        long[] pageIds = BenchmarkFixtures.pageIds(RECORDS, 1 << 16, "zipf");
+
+        traceDir = BenchmarkFixtures.traceDirectory(TraceWriter.Format.valueOf(format), 1, timestamps, pageIds);
+        reader = TraceChunkReader.open(traceDir.listFiles()[0], new ConcurrentLinkedQueue<>());
+        chunk = reader.nextChunk();
+        if (reader.nextChunk() != null) {
+            throw new IllegalStateException("The fixture does not fit in one chunk");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        BenchmarkFixtures.deleteDirectory(traceDir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long decodeChunk() {
+        long checksum = 0;
+        chunk.rewind();
+        while (chunk.next()) {
+            checksum += chunk.getTimestamp() ^ chunk.getAddress() ^ chunk.getAccessType();
+        }
+        return checksum;
+    }
+}
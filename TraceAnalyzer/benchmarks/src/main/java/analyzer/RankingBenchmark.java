@@ -0,0 +1,64 @@
+package analyzer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Time to select the top N pages of an interval, per ranking policy, and for
+ * ALL policies at once (in parallel, as the analyzer does).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RankingBenchmark {
+
+    static final double DRAM_PERCENTAGE = 0.2;
+    static final int PTS_SUB_INTERVALS = 100;
+    static final int MICROCHRONOS_BUCKETS = 8;
+
+    @Param({ "65536", "1048576" })
+    public int pages;
+
+    @Param({ "ALL", "TOTAL_ACCESS", "FIRST_ACCESS", "PTS", "MICROCHRONOS" })
+    public String policy;
+
+    private ForkJoinPool pool;
+    private RankingEngine rankingEngine;
+    private PageTable table;
+    private int[] topN;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int accesses = 8 * pages;
+        long[] pageIds = BenchmarkFixtures.pageIds(accesses, pages, "zipf");
+        table = new PageTable();
+        table.reset(PTS_SUB_INTERVALS);
+        for (int i = 0; i < accesses; i++) {
+            int ptsSubIntervalIndex = (int) ((long) i * PTS_SUB_INTERVALS / accesses);
+            int microChronosIndex = (int) ((long) i * MICROCHRONOS_BUCKETS / accesses);
+            table.recordAccess(pageIds[i], i, ptsSubIntervalIndex, microChronosIndex);
+        }
+
+        pool = new ForkJoinPool();
+        rankingEngine = new RankingEngine(pool);
+        topN = new int[] { (int) Math.ceil(table.size() * DRAM_PERCENTAGE) };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long topN() {
+        if (policy.equals("ALL")) {
+            return rankingEngine.getTopAccessCounts(table, topN[0])[0];
+        }
+        return rankingEngine.getTopAccessCurve(table, RankingPolicies.BuiltIn.valueOf(policy).ordinal(), topN)[0];
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Performance metrics of an analysis, to tell whether it is bound by reading,
+ * aggregating, ranking or garbage collection, and how long it will take.
+ *
+ * Trace sources (files, or threads sending to a pipe) count the bytes they
+ * read and the records they parse, and queues report their depth. A sampler
+ * thread turns them into rates every period: progress lines on stderr, with
+ * an ETA from the scan's position in the analyzed timestamps, rows of the
+ * metrics file, and JFR events. Every finished interval reports its page
+ * count and how long it took to scan and to rank.
+ *
+ * The metrics file is a CSV of {@code elapsed_ms,metric,source,interval_start,value}
+ * rows, so new metrics and sources don't change its columns.
+ */
+public class AnalysisMetrics implements Closeable {
+
+    public static final long DEFAULT_PERIOD_MS = 10000;
+
+    // Bytes read and records parsed from one trace file, or one thread sending to a pipe
+    public static class Source {
+        private final String name;
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder recordsParsed = new LongAdder();
+        private long lastBytesRead;
+        private long lastRecordsParsed;
+
+        Source(String name) {
+            this.name = name;
+        }
+
+        public void addBytesRead(long bytes) {
+            bytesRead.add(bytes);
+        }
+
+        public void addRecordsParsed(long records) {
+            recordsParsed.add(records);
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final boolean printProgress;
+    private final BufferedWriter metricsWriter;
+    private final ScheduledExecutorService sampler;
+
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+    private final Map<String, IntSupplier> queues = new ConcurrentSkipListMap<>();
+
+    // Analyzed timestamps (the end is Long.MAX_VALUE while following a trace),
+    // where the scan is, and when it started
+    private volatile long rangeStart;
+    private volatile long rangeEnd = Long.MAX_VALUE;
+    private volatile long ticksPerTraceMs = 1;
+    private volatile long position = Long.MIN_VALUE;
+    private volatile long scanStartNanos;
+
+    // Totals of the last sample, for rates
+    private long lastSampleNanos = startNanos;
+    private long lastBytesRead;
+    private long lastRecordsParsed;
+    private long lastGcMillis;
+
+    private final JfrEvent progressEvent = JfrEvent.create("Progress", "Analysis Progress",
+            new String[] { "tracePosition", "etaSeconds", "bytesRead", "recordsParsed", "bytesPerSecond",
+                    "recordsPerSecond", "queueDepths" },
+            new Class<?>[] { double.class, long.class, long.class, long.class, double.class, double.class,
+                    String.class });
+    private final JfrEvent sourceEvent = JfrEvent.create("SourceThroughput", "Trace Source Throughput",
+            new String[] { "source", "bytesPerSecond", "recordsPerSecond" },
+            new Class<?>[] { String.class, double.class, double.class });
+    private final JfrEvent intervalEvent = JfrEvent.create("Interval", "Analysis Interval",
+            new String[] { "run", "intervalStart", "intervalEnd", "pages", "pageGrowth", "accesses",
+                    "scanNanos", "rankNanos" },
+            new Class<?>[] { String.class, long.class, long.class, long.class, long.class, long.class, long.class,
+                    long.class });
+
+    // Sample every periodMs, printing progress lines if asked to and writing
+    // the metrics file if there is one
+    public AnalysisMetrics(long periodMs, boolean printProgress, File metricsFile) throws IOException {
+        this.printProgress = printProgress;
+        if (metricsFile != null) {
+            metricsWriter = new BufferedWriter(new FileWriter(metricsFile));
+            metricsWriter.write("elapsed_ms,metric,source,interval_start,value\n");
+        } else {
+            metricsWriter = null;
+        }
+
+        if (printProgress || metricsWriter != null || progressEvent != null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(this::sampleQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        } else {
+            sampler = null;
+        }
+    }
+
+    public Source addSource(String name) {
+        Source source = new Source(name);
+        sources.add(source);
+        return source;
+    }
+
+    // Report the depth of a queue with every sample
+    public void addQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    // The scan starts on these timestamps
+    public void setRange(long start, long end, long ticksPerTraceMs) {
+        this.rangeStart = start;
+        this.rangeEnd = end;
+        this.ticksPerTraceMs = Math.max(1, ticksPerTraceMs);
+        this.position = start;
+        this.scanStartNanos = System.nanoTime();
+    }
+
+    // Every record before this timestamp has been scanned
+    public void setPosition(long timestamp) {
+        this.position = timestamp;
+    }
+
+    // A run finished an interval of this many pages (growth is from its
+    // previous interval), scanned and ranked in these many ns
+    public synchronized void intervalCompleted(String run, long intervalStart, long intervalEnd, long pages,
+            long pageGrowth, long accesses, long scanNanos, long rankNanos) throws IOException {
+        if (metricsWriter != null) {
+            long elapsedMs = getElapsedMs();
+            writeRow(elapsedMs, "interval_pages", run, intervalStart, pages);
+            writeRow(elapsedMs, "interval_page_growth", run, intervalStart, pageGrowth);
+            writeRow(elapsedMs, "interval_accesses", run, intervalStart, accesses);
+            writeRow(elapsedMs, "interval_scan_ms", run, intervalStart, scanNanos / 1e6);
+            writeRow(elapsedMs, "interval_rank_ms", run, intervalStart, rankNanos / 1e6);
+        }
+        if (intervalEvent != null) {
+            intervalEvent.commit(run, intervalStart, intervalEnd, pages, pageGrowth, accesses, scanNanos, rankNanos);
+        }
+    }
+
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Rates since the last sample, and totals so far
+    private synchronized void sample() throws IOException {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastSampleNanos) / 1e9);
+        long elapsedMs = getElapsedMs();
+
+        long bytesRead = 0;
+        long recordsParsed = 0;
+        for (Source source : sources) {
+            long sourceBytes = source.bytesRead.sum();
+            long sourceRecords = source.recordsParsed.sum();
+            double bytesPerSecond = (sourceBytes - source.lastBytesRead) / seconds;
+            double recordsPerSecond = (sourceRecords - source.lastRecordsParsed) / seconds;
+            source.lastBytesRead = sourceBytes;
+            source.lastRecordsParsed = sourceRecords;
+            bytesRead += sourceBytes;
+            recordsParsed += sourceRecords;
+
+            if (metricsWriter != null) {
+                writeRow(elapsedMs, "bytes_read", source.name, null, sourceBytes);
+                writeRow(elapsedMs, "records_parsed", source.name, null, sourceRecords);
+                writeRow(elapsedMs, "bytes_per_second", source.name, null, bytesPerSecond);
+                writeRow(elapsedMs, "records_per_second", source.name, null, recordsPerSecond);
+            }
+            if (sourceEvent != null) {
+                sourceEvent.commit(source.name, bytesPerSecond, recordsPerSecond);
+            }
+        }
+        double bytesPerSecond = (bytesRead - lastBytesRead) / seconds;
+        double recordsPerSecond = (recordsParsed - lastRecordsParsed) / seconds;
+        lastBytesRead = bytesRead;
+        lastRecordsParsed = recordsParsed;
+
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        double gcFraction = (gcMillis - lastGcMillis) / 1000.0 / seconds;
+        lastGcMillis = gcMillis;
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        lastSampleNanos = now;
+
+        // Fraction of the analyzed timestamps scanned, and the time left at the rate so far
+        long position = this.position;
+        double fraction = -1;
+        long etaSeconds = -1;
+        if (position != Long.MIN_VALUE && rangeEnd != Long.MAX_VALUE && rangeEnd > rangeStart) {
+            fraction = Math.min(1, Math.max(0, (double) (position - rangeStart) / (rangeEnd - rangeStart)));
+            if (fraction > 0) {
+                etaSeconds = (long) ((now - scanStartNanos) / 1e9 * (1 - fraction) / fraction);
+            }
+        }
+
+        StringBuilder queueDepths = new StringBuilder();
+        for (Map.Entry<String, IntSupplier> queue : queues.entrySet()) {
+            int depth = queue.getValue().getAsInt();
+            queueDepths.append(queueDepths.length() > 0 ? ", " : "").append(queue.getKey()).append(' ').append(depth);
+            if (metricsWriter != null) {
+                writeRow(elapsedMs, "queue_depth", queue.getKey(), null, depth);
+            }
+        }
+
+        if (metricsWriter != null) {
+            writeRow(elapsedMs, "bytes_read", "all", null, bytesRead);
+            writeRow(elapsedMs, "records_parsed", "all", null, recordsParsed);
+            writeRow(elapsedMs, "bytes_per_second", "all", null, bytesPerSecond);
+            writeRow(elapsedMs, "records_per_second", "all", null, recordsPerSecond);
+            if (fraction >= 0) {
+                writeRow(elapsedMs, "trace_position", "all", null, fraction);
+            }
+            if (etaSeconds >= 0) {
+                writeRow(elapsedMs, "eta_seconds", "all", null, etaSeconds);
+            }
+            writeRow(elapsedMs, "heap_used_bytes", "jvm", null, heapUsed);
+            writeRow(elapsedMs, "gc_time_ms", "jvm", null, gcMillis);
+            metricsWriter.flush();
+        }
+        if (progressEvent != null) {
+            progressEvent.commit(fraction, etaSeconds, bytesRead, recordsParsed, bytesPerSecond, recordsPerSecond,
+                    queueDepths.toString());
+        }
+
+        if (printProgress) {
+            StringBuilder line = new StringBuilder("Progress: ");
+            if (fraction >= 0) {
+                line.append(String.format("%.1f%% of the trace", fraction * 100));
+            } else if (position != Long.MIN_VALUE) {
+                line.append(String.format("%.1f s into the trace", (double) (position - rangeStart) / ticksPerTraceMs / 1000));
+            } else {
+                line.append("starting");
+            }
+            line.append(String.format(", %.1f MB/s, %.2f M records/s, %.0f MB heap, %.1f%% GC",
+                    bytesPerSecond / 1048576, recordsPerSecond / 1e6, heapUsed / 1048576.0, gcFraction * 100));
+            if (queueDepths.length() > 0) {
+                line.append(", queues: ").append(queueDepths);
+            }
+            if (etaSeconds >= 0) {
+                line.append(String.format(", ETA %d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60,
+                        etaSeconds % 60));
+            }
+            System.err.println(line);
+        }
+    }
+
+    private long getElapsedMs() {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    private void writeRow(long elapsedMs, String metric, String source, Long intervalStart, double value)
+            throws IOException {
+        metricsWriter.write(elapsedMs + "," + metric + "," + source + "," + (intervalStart != null ? intervalStart : "")
+                + "," + (value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+                        : Double.toString(value))
+                + "\n");
+    }
+
+    // Take a last sample and close the metrics file
+    @Override
+    public synchronized void close() throws IOException {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sample();
+        }
+        if (metricsWriter != null) {
+            metricsWriter.close();
+        }
+    }
+}
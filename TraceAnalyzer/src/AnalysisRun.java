@@ -0,0 +1,660 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * One (interval window, sub-interval duration) configuration of an analysis:
+ * its interval progression, its {@link IntervalAnalyzer} and its output files.
+ *
+ * Runs at a page size larger than the scanned 4 KB pages are chained after
+ * the run of the next smaller page size: they are never scanned, and every
+ * interval is aggregated from the smaller pages' table instead.
+ *
+ * In approximate mode the run's page tables are bounded, its hit ratios are
+ * estimates, and their bounds go to their own CSV, next to the exact hit
+ * ratios of another run of the same configuration if there is one. Only the
+ * access count policy's hit ratio is bounded, and intervals whose top pages
+ * do not all fit in the tables are not reported. Hit ratios of sampled pages
+ * are estimates too, with approximate 95% bands as their bounds.
+ *
+ * A pipelined run scans into two analyzers in turn: while the trace scan
+ * fills one with the next interval, the other's interval is merged, ranked
+ * and reported by an {@link IntervalPipeline}.
+ *
+ * A run of one shard of the pages writes rank histograms of every interval
+ * instead of reporting it, and the {@link ShardCoordinator} reports the
+ * intervals merged from all shards through a run of its own.
+ */
+public class AnalysisRun {
+
+    private final long intervalWindowTicks;
+    private final double dramPercentage;
+    private final int pageShift;
+    private final String label;
+
+    // Analyzer of the interval being reported, and the analyzers the trace
+    // is scanned into, two taking turns if pipelined
+    private IntervalAnalyzer intervalAnalyzer;
+    private IntervalAnalyzer[] analyzers;
+    private int scanning;
+    private final List<RankingPolicy> policies;
+
+    // Where finished intervals are completed, if pipelined, and each analyzer's interval in flight there
+    private IntervalPipeline pipeline;
+    private Future<?>[] pendingIntervals;
+
+    private final String outputFilename;
+    private BufferedWriter csvWriter;
+
+    private HitRatioCurve hitRatioCurve;
+    private String curveFilenameBase;
+
+    // DRAM sets carried across intervals, if simulated
+    private TieringSimulation tieringSimulation;
+
+    // Where the page summary of every finished interval is saved, if anywhere
+    private PageSummaryCache summaryCache;
+
+    // Where the rank histograms of every finished interval go instead of the
+    // results, if the run only has a shard of the pages
+    private ShardHistograms shardHistograms;
+
+    // Run at the next larger page size, aggregated from this one
+    private AnalysisRun coarserRun;
+
+    // Where the pages, scan and rank times of every interval are reported, if
+    // anywhere, with the scan time of the interval being scanned and the pages
+    // of the last interval reported
+    private AnalysisMetrics metrics;
+    private long scanNanos;
+    private long lastPageCount;
+
+    // Where the page statistics of intervals that do not fit in memory go, if anywhere
+    private PageSpill pageSpill;
+
+    // Approximate mode and sampling: hit ratio bounds, and the exact run of the
+    // configuration compared against, if any, with the hit ratios of its last interval
+    private BufferedWriter boundsWriter;
+    private String boundsFilename;
+    private AnalysisRun exactRun;
+    private HitRatioStats lastHitRatios;
+    private long lastIntervalStart;
+    private long totalAccesses;
+    private double[] totalLowerBoundHits;
+    private double[] totalUpperBoundHits;
+    private int unresolvableIntervals;
+
+    public AnalysisRun(String workloadName, long intervalWindowMs, float ptsIntervalDurationMs, double dramPercentage,
+            int curvePoints, long intervalWindowTicks, long ptsWindowTicks, long globalStartTimestamp,
+            List<RankingPolicy> policies, ForkJoinPool workerPool, int pageShift, int maxPages, String outputRoot,
+            boolean labelled) throws IOException {
+        this.intervalWindowTicks = intervalWindowTicks;
+        this.policies = policies;
+        this.dramPercentage = dramPercentage;
+        this.pageShift = pageShift;
+
+        // Larger pages get their own output directory, with the same file names
+        String outputDir = outputRoot;
+        String pageLabel = "";
+        if (pageShift != TraceScanner.PAGE_SHIFT) {
+            outputDir = outputRoot + "/pages-" + getPageSizeName(pageShift);
+            pageLabel = " / " + getPageSizeName(pageShift) + " pages";
+        }
+        if (maxPages > 0) {
+            pageLabel += " / approximate";
+        }
+        new File(outputDir).mkdirs();
+        this.label = labelled
+                ? String.format("[%d ms / %.2f ms%s] ", intervalWindowMs, ptsIntervalDurationMs, pageLabel)
+                : "";
+
+        // Create the output filename using the workload name and other parameters
+        this.outputFilename = String.format("%s/%s-%d-%.2f-%.2f.csv",
+                outputDir, workloadName, intervalWindowMs, ptsIntervalDurationMs, dramPercentage);
+
+        // Hit ratio curves go to their own directory, so they are not mistaken
+        // for interval CSVs by the visualizer
+        if (curvePoints > 0) {
+            File curveDir = new File(outputDir, "curves");
+            if (!curveDir.exists()) {
+                curveDir.mkdirs();
+            }
+            curveFilenameBase = String.format("%s/%s-%d-%.2f",
+                    curveDir.getPath(), workloadName, intervalWindowMs, ptsIntervalDurationMs);
+            hitRatioCurve = new HitRatioCurve(curveFilenameBase + ".csv", curvePoints, policies);
+        }
+
+        this.intervalAnalyzer = new IntervalAnalyzer(ptsWindowTicks, workerPool, policies);
+        this.analyzers = new IntervalAnalyzer[] { intervalAnalyzer };
+        if (maxPages > 0) {
+            intervalAnalyzer.setMaxPages(maxPages);
+        }
+        this.boundsFilename = new File(new File(outputDir, "bounds"), new File(outputFilename).getName()).getPath();
+        this.totalLowerBoundHits = new double[policies.size()];
+        this.totalUpperBoundHits = new double[policies.size()];
+        intervalAnalyzer.beginInterval(globalStartTimestamp, globalStartTimestamp + intervalWindowTicks);
+    }
+
+    // Page size of a page shift, e.g. 4K for 12 or 2M for 21
+    static String getPageSizeName(int pageShift) {
+        int unit = Math.min(pageShift / 10, 4);
+        return (1L << (pageShift - 10 * unit)) + (unit == 0 ? "" : "KMGT".substring(unit - 1, unit));
+    }
+
+    // "<name>_dram_hit_ratio" CSV column of every policy
+    static String getPolicyColumns(List<RankingPolicy> policies) {
+        StringBuilder columns = new StringBuilder();
+        for (RankingPolicy policy : policies) {
+            if (columns.length() > 0) {
+                columns.append(',');
+            }
+            columns.append(policy.getName()).append("_dram_hit_ratio");
+        }
+        return columns.toString();
+    }
+
+    // Output file name without its .csv extension
+    public String getOutputBaseName() {
+        String name = new File(outputFilename).getName();
+        return name.substring(0, name.length() - ".csv".length());
+    }
+
+    // The CSV, with a hit ratio column per policy, created with its header on
+    // first use, so that shard runs leave none
+    private BufferedWriter getCsvWriter() throws IOException {
+        if (csvWriter == null) {
+            csvWriter = new BufferedWriter(new FileWriter(outputFilename));
+            csvWriter.write("interval_start_timestamp,interval_end_timestamp,number_of_pages_accessed,"
+                    + "total_access_count," + getPolicyColumns(policies) + "\n");
+        }
+        return csvWriter;
+    }
+
+    // Analyzer the current interval is scanned into
+    public IntervalAnalyzer getIntervalAnalyzer() {
+        return analyzers[scanning];
+    }
+
+    public long getIntervalEnd() {
+        return analyzers[scanning].getIntervalEnd();
+    }
+
+    // Complete finished intervals in the pipeline while the next one is
+    // scanned into a second analyzer, with its own instances of the policies.
+    // Not for approximate or spilling runs, which budget for one analyzer.
+    public void enablePipeline(IntervalPipeline pipeline, List<RankingPolicy> secondPolicies) throws IOException {
+        IntervalAnalyzer second = new IntervalAnalyzer(intervalAnalyzer.getSubIntervalDuration(),
+                intervalAnalyzer.getWorkerPool(), secondPolicies);
+        second.setSampleRate(intervalAnalyzer.getSampleRate());
+        second.beginInterval(intervalAnalyzer.getIntervalStart(), intervalAnalyzer.getIntervalEnd());
+        this.analyzers = new IntervalAnalyzer[] { intervalAnalyzer, second };
+        this.pendingIntervals = new Future<?>[2];
+        this.pipeline = pipeline;
+    }
+
+    // Also simulate tiering with DRAM sets carried across intervals; its
+    // results go to their own directory, like the hit ratio curves
+    public void enableTiering(long migrationCapBytes) throws IOException {
+        File outputFile = new File(outputFilename);
+        File tieringDir = new File(outputFile.getParentFile(), "tiering");
+        if (!tieringDir.exists()) {
+            tieringDir.mkdirs();
+        }
+        tieringSimulation = new TieringSimulation(new File(tieringDir, outputFile.getName()).getPath(),
+                policies, migrationCapBytes, pageShift);
+        if (coarserRun != null) {
+            coarserRun.enableTiering(migrationCapBytes);
+        }
+    }
+
+    // Keep the page statistics of every interval within this many bytes,
+    // spilling the rest to a directory of the run's own under spillRoot
+    public void enableSpill(File spillRoot, long memoryBudgetBytes) throws IOException {
+        spillRoot.mkdirs();
+        File directory = Files.createTempDirectory(spillRoot.toPath(), "spill-").toFile();
+        // Pages selected in memory take a key, a tie-break key and an access count
+        int candidateLimit = (int) Math.max(1 << 10, Math.min(1 << 28, memoryBudgetBytes / 24));
+        pageSpill = new PageSpill(directory, policies, candidateLimit);
+        intervalAnalyzer.enableSpill(pageSpill, memoryBudgetBytes);
+    }
+
+    // Also analyze every interval at a larger page size
+    public void setCoarserRun(AnalysisRun coarserRun) {
+        this.coarserRun = coarserRun;
+    }
+
+    // Report every interval's pages, and how long it took to scan and rank, to
+    // the metrics, at every page size
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+        if (coarserRun != null) {
+            coarserRun.setMetrics(metrics);
+        }
+    }
+
+    // The current interval was scanned for this many more ns
+    public void addScanTime(long nanos) {
+        scanNanos += nanos;
+    }
+
+    // Report the exact hit ratios of this run next to the approximate ones of
+    // the approximate run, which must finish its intervals after this one
+    public void setExactRun(AnalysisRun exactRun) {
+        this.exactRun = exactRun;
+    }
+
+    // Only analyze a fraction of the pages, see TraceScanner.setSampleRate()
+    public void setSampleRate(double sampleRate) {
+        for (IntervalAnalyzer analyzer : analyzers) {
+            analyzer.setSampleRate(sampleRate);
+        }
+    }
+
+    // Whether hit ratios are estimates with bounds
+    private boolean hasBounds() {
+        return intervalAnalyzer.isApproximate() || intervalAnalyzer.getSampleRate() < 1;
+    }
+
+    // The bounds CSV, created with its header on first use
+    private BufferedWriter getBoundsWriter() throws IOException {
+        if (boundsWriter == null) {
+            new File(boundsFilename).getParentFile().mkdirs();
+            boundsWriter = new BufferedWriter(new FileWriter(boundsFilename));
+            StringBuilder columns = new StringBuilder("interval_start_timestamp,interval_end_timestamp,"
+                    + "tracked_pages,count_error");
+            // Sampled hit ratios have approximate bands rather than bounds
+            String low = intervalAnalyzer.isApproximate() ? "_dram_hit_ratio_low," : "_dram_hit_ratio_band_low,";
+            String high = intervalAnalyzer.isApproximate() ? "_dram_hit_ratio_high" : "_dram_hit_ratio_band_high";
+            for (RankingPolicy policy : policies) {
+                columns.append(',').append(policy.getName()).append(low).append(policy.getName()).append(high);
+            }
+            if (exactRun != null) {
+                for (RankingPolicy policy : policies) {
+                    columns.append(',').append(policy.getName()).append("_exact_dram_hit_ratio");
+                }
+            }
+            boundsWriter.write(columns.append('\n').toString());
+        }
+        return boundsWriter;
+    }
+
+    // Save the page summary of every interval finished from now on
+    public void setSummaryCache(PageSummaryCache summaryCache) {
+        this.summaryCache = summaryCache;
+    }
+
+    // Write the rank histograms of every interval instead of its results; the
+    // run only gets the pages of one shard
+    public void enableShard(ShardHistograms shardHistograms) {
+        this.shardHistograms = shardHistograms;
+    }
+
+    // Rank the current interval, report it and move on to the next one. If
+    // pipelined, the next interval is scanned into the other analyzer once its
+    // last interval is complete, while this one is completed in the pipeline.
+    public void finishInterval() throws IOException {
+        IntervalAnalyzer finished = analyzers[scanning];
+        long currentIntervalEnd = finished.getIntervalEnd();
+        long intervalScanNanos = scanNanos;
+        scanNanos = 0;
+        if (pipeline == null) {
+            completeInterval(finished, intervalScanNanos);
+            finished.beginInterval(currentIntervalEnd, currentIntervalEnd + intervalWindowTicks);
+            return;
+        }
+
+        int next = 1 - scanning;
+        IntervalPipeline.await(pendingIntervals[next]);
+        analyzers[next].beginInterval(currentIntervalEnd, currentIntervalEnd + intervalWindowTicks);
+        pendingIntervals[scanning] = pipeline.submit(() -> completeInterval(finished, intervalScanNanos));
+        scanning = next;
+    }
+
+    // Merge, save and report an interval whose records were all scanned, in scanNanos
+    private void completeInterval(IntervalAnalyzer analyzer, long scanNanos) throws IOException {
+        long rankStartNanos = System.nanoTime();
+        intervalAnalyzer = analyzer;
+        intervalAnalyzer.endInterval();
+        if (summaryCache != null) {
+            summaryCache.writeInterval(intervalAnalyzer.getIntervalStart(), intervalAnalyzer.getIntervalEnd(),
+                    intervalAnalyzer.getPageTable());
+        }
+
+        if (shardHistograms != null) {
+            shardHistograms.writeInterval(intervalAnalyzer);
+            reportMetrics(scanNanos, rankStartNanos);
+            return;
+        }
+
+        reportInterval();
+        reportMetrics(scanNanos, rankStartNanos);
+        if (coarserRun != null) {
+            coarserRun.aggregateInterval(intervalAnalyzer, pageShift);
+        }
+    }
+
+    // Rank and report every interval of cached page summaries instead of scanning the trace
+    public void replay(PageSummaryCache cachedSummaries) throws IOException {
+        while (cachedSummaries.nextInterval()) {
+            intervalAnalyzer.beginInterval(cachedSummaries.getIntervalStart(), cachedSummaries.getIntervalEnd());
+            long readStartNanos = System.nanoTime();
+            cachedSummaries.readPageTable(intervalAnalyzer.getPageTable());
+            long rankStartNanos = System.nanoTime();
+            reportInterval();
+            reportMetrics(rankStartNanos - readStartNanos, rankStartNanos);
+            if (coarserRun != null) {
+                coarserRun.aggregateInterval(intervalAnalyzer, pageShift);
+            }
+        }
+    }
+
+    // Rank and report an interval of the smaller pages' run at this run's page size
+    private void aggregateInterval(IntervalAnalyzer finerAnalyzer, int finerPageShift) throws IOException {
+        long rankStartNanos = System.nanoTime();
+        intervalAnalyzer.beginInterval(finerAnalyzer.getIntervalStart(), finerAnalyzer.getIntervalEnd());
+        intervalAnalyzer.getPageTable().aggregateFrom(finerAnalyzer.getPageTable(), pageShift - finerPageShift);
+        reportInterval();
+        reportMetrics(0, rankStartNanos);
+        if (coarserRun != null) {
+            coarserRun.aggregateInterval(intervalAnalyzer, pageShift);
+        }
+    }
+
+    private void reportInterval() throws IOException {
+        long currentIntervalStart = intervalAnalyzer.getIntervalStart();
+        long currentIntervalEnd = intervalAnalyzer.getIntervalEnd();
+
+        if (isUnresolvable()) {
+            reportUnresolvable(currentIntervalStart, currentIntervalEnd);
+            return;
+        }
+
+        // Approximate bounds rank again, so before the top N selection of calculateAccuracy
+        double[][] bounds = intervalAnalyzer.isApproximate() && intervalAnalyzer.getTotalAccessCount() > 0
+                ? getApproximateBounds()
+                : null;
+
+        // Compare rankings and calculate accuracy
+        HitRatioStats hitRatios = TraceAnalyzer.calculateAccuracy(intervalAnalyzer, dramPercentage);
+        if (hasBounds() && bounds == null && hitRatios.getNumPagesAccessed() > 0) {
+            bounds = getSampledBounds(hitRatios);
+        }
+        if (!printInterval(currentIntervalStart, currentIntervalEnd, hitRatios, bounds)) {
+            return;
+        }
+        if (bounds != null) {
+            writeBounds(hitRatios, bounds);
+        }
+
+        // Uses the top N selection of calculateAccuracy, so before any other ranking
+        if (tieringSimulation != null) {
+            tieringSimulation.addInterval(intervalAnalyzer, Math.min(
+                    TraceAnalyzer.getDRAMPageCount(intervalAnalyzer, dramPercentage),
+                    intervalAnalyzer.getPageTable().size()));
+        }
+
+        if (hitRatioCurve != null) {
+            long[][] curve = intervalAnalyzer.getTopAccessCurves(
+                    hitRatioCurve.getTopNs(intervalAnalyzer.getTotalPageCount()));
+            hitRatioCurve.addInterval(currentIntervalStart, currentIntervalEnd, curve, hitRatios.getNumAccesses());
+        }
+    }
+
+    // Whether the interval's top N pages are more than an approximate run's
+    // table kept, so that every policy would select all of them
+    private boolean isUnresolvable() {
+        return intervalAnalyzer.getCountError() > 0 && TraceAnalyzer.getDRAMPageCount(intervalAnalyzer,
+                dramPercentage) >= intervalAnalyzer.getPageTable().size();
+    }
+
+    private void reportUnresolvable(long currentIntervalStart, long currentIntervalEnd) {
+        unresolvableIntervals++;
+        System.out.println(
+                label + "<Interval " + currentIntervalStart + " - " + currentIntervalEnd + ">");
+        System.out.println("Number of pages accessed: " + intervalAnalyzer.getTotalPageCount() + " (estimated)");
+        System.out.println("Total access count: " + intervalAnalyzer.getTotalAccessCount());
+        System.out.println("Unresolvable at this budget: the top "
+                + TraceAnalyzer.getDRAMPageCount(intervalAnalyzer, dramPercentage) + " pages are not all among the "
+                + intervalAnalyzer.getPageTable().size() + " tracked");
+    }
+
+    // Report an interval whose hit ratios were merged from the rank histograms of all shards
+    public void reportMergedInterval(long intervalStart, long intervalEnd, HitRatioStats hitRatios)
+            throws IOException {
+        printInterval(intervalStart, intervalEnd, hitRatios, null);
+    }
+
+    // Print an interval's hit ratios, with their bounds if any, and write them
+    // to the CSV. False if no pages were accessed.
+    private boolean printInterval(long currentIntervalStart, long currentIntervalEnd, HitRatioStats hitRatios,
+            double[][] bounds) throws IOException {
+        lastHitRatios = hitRatios;
+        lastIntervalStart = currentIntervalStart;
+        System.out.println(
+                label + "<Interval " + currentIntervalStart + " - " + currentIntervalEnd + ">");
+
+        // Print number of pages accessed in interval
+        long numberOfPagesAccessed = hitRatios.getNumPagesAccessed();
+        System.out.println("Number of pages accessed: " + numberOfPagesAccessed);
+
+        // Print total number of accesses in interval
+        long totalAccessCount = hitRatios.getNumAccesses();
+        System.out.println("Total access count: " + totalAccessCount);
+
+        // If number of pages accessed is bigger than 0, print hit ratios rounded to 3
+        // decimal places
+        if (numberOfPagesAccessed > 0) {
+            StringBuilder csvLine = new StringBuilder();
+            csvLine.append(currentIntervalStart).append(',').append(currentIntervalEnd).append(',')
+                    .append(numberOfPagesAccessed).append(',').append(totalAccessCount);
+            for (int p = 0; p < policies.size(); p++) {
+                double hitRatioRounded = BigDecimal.valueOf(hitRatios.getHitRatio(p))
+                        .setScale(3, RoundingMode.HALF_UP)
+                        .doubleValue();
+                if (bounds != null && hitRatios.isSampled()) {
+                    System.out.println(policies.get(p).getLabel() + " hit ratio: " + hitRatioRounded + " (approx. 95% band "
+                            + round(bounds[0][p]) + " - " + round(bounds[1][p]) + ")");
+                } else if (bounds != null && !Double.isNaN(bounds[0][p])) {
+                    System.out.println(policies.get(p).getLabel() + " hit ratio: " + hitRatioRounded + " (between "
+                            + round(bounds[0][p]) + " and " + round(bounds[1][p]) + ")");
+                } else if (bounds != null) {
+                    System.out.println(policies.get(p).getLabel() + " hit ratio: " + hitRatioRounded
+                            + " (unbounded estimate)");
+                } else {
+                    System.out.println(policies.get(p).getLabel() + " hit ratio: " + hitRatioRounded);
+                }
+                csvLine.append(',').append(hitRatios.getHitRatio(p));
+            }
+
+            // Write to CSV
+            getCsvWriter().write(csvLine.append('\n').toString());
+            // Each interval is visible as soon as it is written, e.g. while following a trace
+            csvWriter.flush();
+            return true;
+        }
+
+        // If no pages were accessed, don't print hit ratios and print a message
+        System.out.println("No pages accessed in this interval");
+        return false;
+    }
+
+    // Pages and accesses of the interval just reported, its growth in pages,
+    // and the time it took to scan and, since rankStartNanos, to rank
+    private void reportMetrics(long scanNanos, long rankStartNanos) throws IOException {
+        if (metrics == null) {
+            return;
+        }
+        long rankNanos = System.nanoTime() - rankStartNanos;
+        long pages = intervalAnalyzer.getTotalPageCount();
+        metrics.intervalCompleted(outputFilename, intervalAnalyzer.getIntervalStart(),
+                intervalAnalyzer.getIntervalEnd(), pages, pages - lastPageCount, intervalAnalyzer.getTotalAccessCount(),
+                scanNanos, rankNanos);
+        lastPageCount = pages;
+    }
+
+    private static double round(double hitRatio) {
+        return BigDecimal.valueOf(hitRatio).setScale(3, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    // Lower and upper bounds of the sampled hit ratio of every policy: its approximate 95% band
+    private double[][] getSampledBounds(HitRatioStats hitRatios) {
+        double[][] bounds = new double[2][policies.size()];
+        for (int p = 0; p < policies.size(); p++) {
+            double hitRatio = hitRatios.getHitRatio(p);
+            double interval = hitRatios.getErrorBand(p);
+            bounds[0][p] = Math.max(0, hitRatio - interval);
+            bounds[1][p] = Math.min(1, hitRatio + interval);
+        }
+        return bounds;
+    }
+
+    // Lower and upper bounds of the approximate hit ratio of every policy, NaN
+    // if it has none. Only the access count policy has: its top N pages are
+    // the ones with the most accesses, tracked access counts are short by at
+    // most the count error, and so is the count of any page not tracked. With
+    // N over the range of the distinct page estimate, within three standard
+    // errors, the hit ratio is at least the tracked counts of the fewest top
+    // pages, and at most those of the most plus the count error for each.
+    // Other policies rank by statistics pruning loses, with no such bound.
+    private double[][] getApproximateBounds() {
+        double[][] bounds = new double[2][policies.size()];
+        Arrays.fill(bounds[0], Double.NaN);
+        Arrays.fill(bounds[1], Double.NaN);
+        int p = policies.indexOf(RankingPolicies.BuiltIn.TOTAL_ACCESS);
+        if (p < 0) {
+            return bounds;
+        }
+
+        PageTable table = intervalAnalyzer.getPageTable();
+        long countError = table.getCountError();
+        double distinctPages = intervalAnalyzer.getTotalPageCount();
+        double minDistinctPages = distinctPages;
+        double maxDistinctPages = distinctPages;
+        if (countError > 0) {
+            minDistinctPages = Math.max(table.size(), distinctPages * (1 - 3 * DistinctCounter.STANDARD_ERROR));
+            maxDistinctPages = distinctPages * (1 + 3 * DistinctCounter.STANDARD_ERROR);
+        }
+        int minTopN = (int) Math.ceil(minDistinctPages * dramPercentage);
+        int maxTopN = (int) Math.ceil(maxDistinctPages * dramPercentage);
+
+        long[] topAccessCounts = intervalAnalyzer.getRankingEngine().getTopAccessCurve(table, p,
+                new int[] { minTopN, maxTopN });
+        double accesses = intervalAnalyzer.getTotalAccessCount();
+        bounds[0][p] = topAccessCounts[0] / accesses;
+        bounds[1][p] = Math.min(1, (topAccessCounts[1] + (double) maxTopN * countError) / accesses);
+        return bounds;
+    }
+
+    private void writeBounds(HitRatioStats hitRatios, double[][] bounds) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append(intervalAnalyzer.getIntervalStart()).append(',').append(intervalAnalyzer.getIntervalEnd())
+                .append(',').append(intervalAnalyzer.getPageTable().size())
+                .append(',').append(intervalAnalyzer.getCountError());
+        for (int p = 0; p < policies.size(); p++) {
+            if (Double.isNaN(bounds[0][p])) {
+                line.append(",,");
+                continue;
+            }
+            line.append(',').append(bounds[0][p]).append(',').append(bounds[1][p]);
+            totalLowerBoundHits[p] += bounds[0][p] * hitRatios.getNumAccesses();
+            totalUpperBoundHits[p] += bounds[1][p] * hitRatios.getNumAccesses();
+        }
+        totalAccesses += hitRatios.getNumAccesses();
+
+        // The exact run finished the same interval just before, unless it had no pages
+        if (exactRun != null) {
+            HitRatioStats exact = exactRun.lastIntervalStart == intervalAnalyzer.getIntervalStart()
+                    ? exactRun.lastHitRatios
+                    : null;
+            for (int p = 0; p < policies.size(); p++) {
+                line.append(',');
+                if (exact != null && exact.getNumPagesAccessed() > 0) {
+                    line.append(exact.getHitRatio(p));
+                }
+            }
+        }
+        getBoundsWriter().write(line.append('\n').toString());
+    }
+
+    // Close the output files and print the overall results
+    public void finish() throws IOException {
+        if (pendingIntervals != null) {
+            for (Future<?> pendingInterval : pendingIntervals) {
+                IntervalPipeline.await(pendingInterval);
+            }
+        }
+
+        if (shardHistograms != null) {
+            shardHistograms.commit();
+            shardHistograms.close();
+            System.out.println("Shard " + shardHistograms.getShardIndex() + " of " + shardHistograms.getShardCount()
+                    + (label.isEmpty() ? "" : " " + label.trim()) + " -> " + shardHistograms.getFile());
+            return;
+        }
+        getCsvWriter().close();
+
+        if (summaryCache != null) {
+            summaryCache.commit();
+            summaryCache.close();
+        }
+
+        if (!label.isEmpty()) {
+            System.out.println("\nConfiguration " + label.trim() + " -> " + outputFilename);
+        }
+        TraceAnalyzer.calculateOverallDRAMHitRatiosAndVariance(outputFilename, policies);
+
+        // Interval bounds weighted like the overall hit ratios: for sampled pages,
+        // a wider overall band than averaging the variances would give, as the
+        // same pages are sampled in every interval
+        if (hasBounds()) {
+            getBoundsWriter().close();
+            if (intervalAnalyzer.isApproximate()) {
+                System.out.println("\nBounds of the estimated hit ratios (at most "
+                        + intervalAnalyzer.getPageTable().getMaxPages() + " pages per table):");
+                if (unresolvableIntervals > 0) {
+                    System.out.println(unresolvableIntervals + " intervals unresolvable at this budget, "
+                            + "not reported: raise --approximate");
+                }
+            } else {
+                System.out.println("\nApproximate 95% bands of the sampled hit ratios ("
+                        + intervalAnalyzer.getSampleRate() * 100 + "% of pages, not confidence intervals):");
+            }
+            for (int p = 0; p < policies.size() && totalAccesses > 0; p++) {
+                if (intervalAnalyzer.isApproximate() && policies.get(p) != RankingPolicies.BuiltIn.TOTAL_ACCESS) {
+                    System.out.println(policies.get(p).getLabel() + ": unbounded");
+                    continue;
+                }
+                double lowerBound = totalLowerBoundHits[p] / totalAccesses;
+                double upperBound = totalUpperBoundHits[p] / totalAccesses;
+                System.out.println(policies.get(p).getLabel() + ": " + round(lowerBound) + " - " + round(upperBound));
+            }
+            System.out.println("Bounds written to " + boundsFilename);
+        }
+
+        if (pageSpill != null) {
+            pageSpill.close();
+            System.out.println("Intervals ranked from disk: " + pageSpill.getSpilledIntervals());
+        }
+
+        if (tieringSimulation != null) {
+            tieringSimulation.close();
+            tieringSimulation.printOverall();
+        }
+
+        if (hitRatioCurve != null) {
+            hitRatioCurve.close();
+            hitRatioCurve.writeOverall(curveFilenameBase + "-overall.csv");
+            System.out.println("Hit ratio curves written to " + curveFilenameBase + ".csv and "
+                    + curveFilenameBase + "-overall.csv");
+        }
+
+        if (coarserRun != null) {
+            coarserRun.finish();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trace writer producing the binary format described in {@link TraceFormat}.
+ * The header is written on {@link #close()}, so an interrupted write is never
+ * mistaken for a complete trace.
+ */
+public class BinaryTraceWriter implements TraceWriter {
+
+    private static final int WRITE_BUFFER_SIZE = 4 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private long recordCount;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public BinaryTraceWriter(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(TraceFormat.BYTE_ORDER);
+        channel.position(TraceFormat.HEADER_SIZE);
+    }
+
+    @Override
+    public void write(long timestamp, char accessType, long address) throws IOException {
+        writeEncoded(timestamp, TraceFormat.encodeAddress(address, accessType));
+    }
+
+    // Write a record whose address already carries the write bit
+    public void writeEncoded(long timestamp, long encodedAddress) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.putLong(timestamp);
+        buffer.putLong(encodedAddress);
+
+        if (recordCount == 0) {
+            firstTimestamp = timestamp;
+        }
+        lastTimestamp = timestamp;
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            TraceFormat.writeHeader(channel, new TraceFormat.Header(recordCount, firstTimestamp, lastTimestamp));
+        } finally {
+            channel.close();
+        }
+    }
+}
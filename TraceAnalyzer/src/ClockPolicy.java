@@ -0,0 +1,58 @@
+/**
+ * CLOCK-style access bits with aging: as if the hand of a CLOCK swept all
+ * pages at the end of every sub-interval, recording and clearing their
+ * referenced bit. Pages are ranked by their bit history read as a number,
+ * the most recent sweep being the most significant bit, so recently and
+ * repeatedly referenced pages come first. The last 63 sweeps of the interval
+ * are kept; histories merge by OR.
+ */
+public class ClockPolicy implements RankingPolicy {
+
+    private static final int HISTORY_BITS = 63;
+
+    private int lastSubIntervalIndex;
+
+    public ClockPolicy(String parameter) {
+        if (parameter != null) {
+            throw new IllegalArgumentException("The clock policy takes no parameter");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "clock";
+    }
+
+    @Override
+    public String getLabel() {
+        return "CLOCK";
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1;
+    }
+
+    @Override
+    public void beginInterval(long intervalStart, long intervalEnd, long subIntervalDuration) {
+        lastSubIntervalIndex = (int) ((intervalEnd - intervalStart - 1) / subIntervalDuration);
+    }
+
+    @Override
+    public void recordAccess(long[] state, int offset, long timestamp, int subIntervalIndex) {
+        int age = lastSubIntervalIndex - subIntervalIndex;
+        if (age < HISTORY_BITS) {
+            state[offset] |= 1L << (HISTORY_BITS - 1 - age);
+        }
+    }
+
+    @Override
+    public void mergeState(long[] state, int offset, long[] otherState, int otherOffset) {
+        state[offset] |= otherState[otherOffset];
+    }
+
+    @Override
+    public long getRankKey(PageTable table, int entry, long[] state, int offset) {
+        return -state[offset];
+    }
+}
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+
+/**
+ * Chunk of whole blocks from a block-compressed trace file, decoded record by
+ * record as it is scanned.
+ */
+public class CompressedTraceChunk extends TraceChunk {
+
+    private final byte[] data;
+    private final ByteBuffer headers;
+    private final int length;
+    private final Queue<byte[]> bufferPool;
+    private int position;
+
+    // Decoding state of the current block
+    private int blockRemaining;
+    private long previousTimestamp;
+    private long previousAddress;
+
+    public CompressedTraceChunk(byte[] data, int length, long lastTimestamp, Queue<byte[]> bufferPool) {
+        this.data = data;
+        this.headers = ByteBuffer.wrap(data).order(CompressedTraceFormat.BYTE_ORDER);
+        this.length = length;
+        this.byteLength = length;
+        this.bufferPool = bufferPool;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    @Override
+    protected boolean advance() {
+        while (blockRemaining == 0) {
+            if (position >= length) {
+                return false;
+            }
+            // Every block starts from its first timestamp and address 0
+            previousTimestamp = headers.getLong(position);
+            previousAddress = 0;
+            blockRemaining = headers.getInt(position + 16);
+            position += CompressedTraceFormat.BLOCK_HEADER_SIZE;
+        }
+
+        long timestampField = readVarLong();
+        long addressField = readVarLong();
+
+        timestamp = previousTimestamp + (timestampField >>> 1);
+        accessType = (timestampField & 1) != 0 ? 'W' : 'R';
+        address = previousAddress + CompressedTraceFormat.zigZagDecode(addressField);
+
+        previousTimestamp = timestamp;
+        previousAddress = address;
+        blockRemaining--;
+        return true;
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    protected void restart() {
+        position = 0;
+        blockRemaining = 0;
+    }
+
+    @Override
+    public void release() {
+        // Oversized blocks got their own buffer, which is not pooled
+        if (data.length == TextTraceChunkReader.CHUNK_SIZE) {
+            bufferPool.offer(data);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+
+/**
+ * Reads a block-compressed trace file in chunks of whole blocks.
+ *
+ * Blocks are only read here; they are decoded by the workers that scan the
+ * chunks. The block index is loaded up front, so seeking skips every block
+ * that ends before the requested timestamp without reading it.
+ */
+public class CompressedTraceChunkReader implements TraceChunkReader {
+
+    private final File file;
+    private final FileChannel channel;
+    private final Queue<byte[]> bufferPool;
+
+    // Block index
+    private final long[] blockOffsets;
+    private final long[] blockLastTimestamps;
+    private final long indexOffset;
+
+    private int nextBlock;
+
+    public CompressedTraceChunkReader(File file, Queue<byte[]> bufferPool) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.bufferPool = bufferPool;
+
+        this.indexOffset = CompressedTraceFormat.readHeaderBuffer(channel).getLong(40);
+        int blockCount = (int) ((channel.size() - indexOffset) / CompressedTraceFormat.INDEX_ENTRY_SIZE);
+        ByteBuffer index = ByteBuffer.allocate(blockCount * CompressedTraceFormat.INDEX_ENTRY_SIZE)
+                .order(CompressedTraceFormat.BYTE_ORDER);
+        readFully(index, indexOffset);
+
+        this.blockOffsets = new long[blockCount];
+        this.blockLastTimestamps = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            int entry = i * CompressedTraceFormat.INDEX_ENTRY_SIZE;
+            blockOffsets[i] = index.getLong(entry);
+            blockLastTimestamps[i] = index.getLong(entry + 16);
+        }
+    }
+
+    @Override
+    public TraceChunk nextChunk() throws IOException {
+        if (nextBlock >= blockOffsets.length) {
+            return null;
+        }
+
+        // As many whole blocks as fit in a chunk buffer, and at least one
+        int firstBlock = nextBlock;
+        long start = blockOffsets[firstBlock];
+        int endBlock = firstBlock + 1;
+        while (endBlock < blockOffsets.length
+                && getBlockEnd(endBlock) - start <= TextTraceChunkReader.CHUNK_SIZE) {
+            endBlock++;
+        }
+        int length = (int) (getBlockEnd(endBlock - 1) - start);
+        nextBlock = endBlock;
+
+        byte[] buffer = length <= TextTraceChunkReader.CHUNK_SIZE ? bufferPool.poll() : new byte[length];
+        if (buffer == null) {
+            buffer = new byte[TextTraceChunkReader.CHUNK_SIZE];
+        }
+        readFully(ByteBuffer.wrap(buffer, 0, length), start);
+
+        return new CompressedTraceChunk(buffer, length, blockLastTimestamps[endBlock - 1], bufferPool);
+    }
+
+    private long getBlockEnd(int block) {
+        return block + 1 < blockOffsets.length ? blockOffsets[block + 1] : indexOffset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Truncated compressed trace " + file);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void seek(long timestamp) throws IOException {
+        // First block that ends at or after the timestamp
+        int low = 0;
+        int high = blockLastTimestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLastTimestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        nextBlock = low;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Block-compressed trace format produced by {@link CompressedTraceWriter}.
+ *
+ * Records are grouped in blocks of up to {@link #BLOCK_RECORDS} records. Each
+ * record is stored as two varints relative to the previous record of its
+ * block: the timestamp delta shifted left by one with the write flag in bit
+ * 0, and the zig-zag encoded address delta. The first record of a block is
+ * relative to the block's first timestamp and to address 0, so every block
+ * decodes on its own.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header : magic (8) | version (4) | block records (4) | record count (8)
+ *            | first timestamp (8) | last timestamp (8) | index offset (8)
+ *   blocks : first timestamp (8) | last timestamp (8) | record count (4)
+ *            | payload length (4) | payload
+ *   index  : per block, offset (8) | first timestamp (8) | last timestamp (8)
+ *            | record count (8)
+ * </pre>
+ * The timestamps of the block index let readers skip every block outside the
+ * analyzed time range without reading it. Records must be sorted by timestamp.
+ */
+public final class CompressedTraceFormat {
+
+    public static final long MAGIC = 0x314B4C424D54504DL; // "MPTMBLK1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 48;
+    public static final int BLOCK_HEADER_SIZE = 24;
+    public static final int INDEX_ENTRY_SIZE = 32;
+    public static final int BLOCK_RECORDS = 1 << 16;
+
+    // Longest encoding of a record: two 10-byte varints
+    public static final int MAX_RECORD_SIZE = 20;
+
+    public static final ByteOrder BYTE_ORDER = TraceFormat.BYTE_ORDER;
+
+    private CompressedTraceFormat() {
+    }
+
+    // Check the magic number without assuming anything about the file contents
+    public static boolean isCompressedTrace(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).order(BYTE_ORDER);
+            channel.read(buffer, 0);
+            return buffer.getLong(0) == MAGIC;
+        }
+    }
+
+    // Read and validate the raw header
+    static ByteBuffer readHeaderBuffer(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("Truncated compressed trace header");
+            }
+        }
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a compressed trace file");
+        }
+        int version = buffer.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compressed trace version " + version);
+        }
+        return buffer;
+    }
+
+    public static TraceFormat.Header readHeader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = readHeaderBuffer(channel);
+            return new TraceFormat.Header(buffer.getLong(16), buffer.getLong(24), buffer.getLong(32));
+        }
+    }
+
+    static void writeHeader(FileChannel channel, TraceFormat.Header header, long indexOffset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        buffer.putLong(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(BLOCK_RECORDS);
+        buffer.putLong(header.getRecordCount());
+        buffer.putLong(header.getFirstTimestamp());
+        buffer.putLong(header.getLastTimestamp());
+        buffer.putLong(indexOffset);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    // Write value as an unsigned LEB128 varint, returning the new offset
+    static int putVarLong(byte[] data, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Trace writer producing the block-compressed format described in
+ * {@link CompressedTraceFormat}. The block index and the header are written
+ * on {@link #close()}, so an interrupted write is never mistaken for a
+ * complete trace.
+ */
+public class CompressedTraceWriter implements TraceWriter {
+
+    private final FileChannel channel;
+    private final ByteBuffer blockHeader;
+    private byte[] payload;
+    private int payloadLength;
+
+    // Current block
+    private int blockRecords;
+    private long blockFirstTimestamp;
+    private long previousTimestamp;
+    private long previousAddress;
+
+    // Block index
+    private long[] blockOffsets = new long[256];
+    private long[] blockFirstTimestamps = new long[256];
+    private long[] blockLastTimestamps = new long[256];
+    private long[] blockRecordCounts = new long[256];
+    private int blockCount;
+
+    private long position = CompressedTraceFormat.HEADER_SIZE;
+    private long recordCount;
+    private long firstTimestamp = Long.MAX_VALUE;
+
+    public CompressedTraceWriter(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.blockHeader = ByteBuffer.allocate(CompressedTraceFormat.BLOCK_HEADER_SIZE)
+                .order(CompressedTraceFormat.BYTE_ORDER);
+        this.payload = new byte[CompressedTraceFormat.BLOCK_RECORDS * 4];
+    }
+
+    @Override
+    public void write(long timestamp, char accessType, long address) throws IOException {
+        if (blockRecords == 0) {
+            blockFirstTimestamp = timestamp;
+            previousTimestamp = timestamp;
+            previousAddress = 0;
+            if (recordCount == 0) {
+                firstTimestamp = timestamp;
+            }
+        } else if (timestamp < previousTimestamp) {
+            throw new IOException("Compressed traces must be sorted by timestamp");
+        }
+
+        if (payloadLength > payload.length - CompressedTraceFormat.MAX_RECORD_SIZE) {
+            payload = Arrays.copyOf(payload, payload.length * 2);
+        }
+        long timestampField = ((timestamp - previousTimestamp) << 1) | (accessType == 'W' ? 1 : 0);
+        payloadLength = CompressedTraceFormat.putVarLong(payload, payloadLength, timestampField);
+        payloadLength = CompressedTraceFormat.putVarLong(payload, payloadLength,
+                CompressedTraceFormat.zigZagEncode(address - previousAddress));
+
+        previousTimestamp = timestamp;
+        previousAddress = address;
+        blockRecords++;
+        recordCount++;
+
+        if (blockRecords == CompressedTraceFormat.BLOCK_RECORDS) {
+            flushBlock();
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockCount == blockOffsets.length) {
+            int capacity = blockCount * 2;
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockFirstTimestamps = Arrays.copyOf(blockFirstTimestamps, capacity);
+            blockLastTimestamps = Arrays.copyOf(blockLastTimestamps, capacity);
+            blockRecordCounts = Arrays.copyOf(blockRecordCounts, capacity);
+        }
+        blockOffsets[blockCount] = position;
+        blockFirstTimestamps[blockCount] = blockFirstTimestamp;
+        blockLastTimestamps[blockCount] = previousTimestamp;
+        blockRecordCounts[blockCount] = blockRecords;
+        blockCount++;
+
+        blockHeader.clear();
+        blockHeader.putLong(blockFirstTimestamp);
+        blockHeader.putLong(previousTimestamp);
+        blockHeader.putInt(blockRecords);
+        blockHeader.putInt(payloadLength);
+        blockHeader.flip();
+        write(blockHeader);
+        write(ByteBuffer.wrap(payload, 0, payloadLength));
+
+        blockRecords = 0;
+        payloadLength = 0;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (blockRecords > 0) {
+                flushBlock();
+            }
+
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate(blockCount * CompressedTraceFormat.INDEX_ENTRY_SIZE)
+                    .order(CompressedTraceFormat.BYTE_ORDER);
+            for (int i = 0; i < blockCount; i++) {
+                index.putLong(blockOffsets[i]);
+                index.putLong(blockFirstTimestamps[i]);
+                index.putLong(blockLastTimestamps[i]);
+                index.putLong(blockRecordCounts[i]);
+            }
+            index.flip();
+            write(index);
+
+            long lastTimestamp = recordCount > 0 ? previousTimestamp : Long.MIN_VALUE;
+            CompressedTraceFormat.writeHeader(channel,
+                    new TraceFormat.Header(recordCount, firstTimestamp, lastTimestamp), indexOffset);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Exponential-decay scores: every access adds 2^(-age / half_life) to its
+ * page's score, where age is the time from the access to the end of the
+ * interval, and pages are ranked by score. The half life is given in
+ * sub-intervals (default 1), e.g. {@code decay:4}. Scores are fixed-point
+ * sums, so they do not depend on the order the accesses are added in.
+ */
+public class DecayPolicy implements RankingPolicy {
+
+    // Score of an access at the very end of the interval
+    private static final double ONE = 1L << 32;
+
+    private final String parameter;
+    private final double halfLifeSubIntervals;
+
+    private long intervalEnd;
+    private double decayPerTick;
+
+    public DecayPolicy(String parameter) {
+        this.parameter = parameter;
+        this.halfLifeSubIntervals = parameter == null ? 1 : Double.parseDouble(parameter);
+        if (!(halfLifeSubIntervals > 0)) {
+            throw new IllegalArgumentException("The decay half life must be positive");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return parameter == null ? "decay" : "decay_" + parameter;
+    }
+
+    @Override
+    public String getLabel() {
+        return parameter == null ? "Decay" : "Decay-" + parameter;
+    }
+
+    @Override
+    public int getStateSize() {
+        return 1;
+    }
+
+    @Override
+    public void beginInterval(long intervalStart, long intervalEnd, long subIntervalDuration) {
+        this.intervalEnd = intervalEnd;
+        this.decayPerTick = Math.log(2) / (halfLifeSubIntervals * subIntervalDuration);
+    }
+
+    @Override
+    public void recordAccess(long[] state, int offset, long timestamp, int subIntervalIndex) {
+        state[offset] += (long) (ONE * Math.exp(-(intervalEnd - timestamp) * decayPerTick));
+    }
+
+    @Override
+    public void mergeState(long[] state, int offset, long[] otherState, int otherOffset) {
+        state[offset] += otherState[otherOffset];
+    }
+
+    @Override
+    public long getRankKey(PageTable table, int entry, long[] state, int offset) {
+        return -state[offset];
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer, single-consumer ring of fixed-size frames, without
+ * locks.
+ *
+ * The frames are allocated once and reused: the producer claims the next
+ * free frame, fills it and publishes it, and the consumer peeks at the oldest
+ * published frame and consumes it once done. Each side only writes its own
+ * position, with an ordered store that makes the frame's contents visible
+ * before the position, so the two sides never wait on each other unless the
+ * ring is full or empty.
+ */
+public class FrameRing {
+
+    private final byte[][] frames;
+    private final int mask;
+
+    // Next frame to consume, and next frame to fill
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Each side's last read of the other's position, so it only reads it again when needed
+    private long cachedHead;
+    private long cachedTail;
+
+    // capacity is rounded up to a power of two
+    public FrameRing(int capacity, int frameSize) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.frames = new byte[size][frameSize];
+        this.mask = size - 1;
+    }
+
+    // Producer: the frame to fill next, or null if the ring is full
+    public byte[] claim() {
+        long position = tail.get();
+        if (position - cachedHead == frames.length) {
+            cachedHead = head.get();
+            if (position - cachedHead == frames.length) {
+                return null;
+            }
+        }
+        return frames[(int) position & mask];
+    }
+
+    // Producer: hand the claimed frame to the consumer
+    public void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    // Consumer: the oldest published frame, or null if the ring is empty
+    public byte[] peek() {
+        long position = head.get();
+        if (position == cachedTail) {
+            cachedTail = tail.get();
+            if (position == cachedTail) {
+                return null;
+            }
+        }
+        return frames[(int) position & mask];
+    }
+
+    // Consumer: give the peeked frame back to the producer
+    public void consume() {
+        head.lazySet(head.get() + 1);
+    }
+
+    // Frames published and not consumed yet, from any thread
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
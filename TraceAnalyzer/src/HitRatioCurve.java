@@ -0,0 +1,81 @@
+import java.io.*;
+import java.util.List;
+
+/**
+ * Hit ratio as a function of DRAM capacity, for every page-ranking policy.
+ *
+ * Capacities are evenly spaced fractions {@code j / points} of the pages
+ * accessed in an interval, for j = 1..points. Per-interval curves are written
+ * to a CSV file as they are computed; the overall curve weighs each interval
+ * by its number of accesses, like the overall hit ratios of the main CSV.
+ */
+public class HitRatioCurve implements Closeable {
+
+    private final String policyColumns;
+    private final int points;
+    private final BufferedWriter csvWriter;
+
+    // Access-weighted hits per capacity and policy, over all intervals
+    private final double[][] totalHits;
+    private long totalAccessCount;
+
+    public HitRatioCurve(String outputFilename, int points, List<RankingPolicy> policies) throws IOException {
+        this.policyColumns = AnalysisRun.getPolicyColumns(policies);
+        this.points = points;
+        this.totalHits = new double[points][policies.size()];
+        this.csvWriter = new BufferedWriter(new FileWriter(outputFilename));
+        csvWriter.write("interval_start_timestamp,interval_end_timestamp,dram_percentage,total_access_count,"
+                + policyColumns + "\n");
+    }
+
+    // Number of top pages for each capacity of the curve, in ascending order
+    public int[] getTopNs(long pageCount) {
+        int[] topNs = new int[points];
+        for (int j = 1; j <= points; j++) {
+            topNs[j - 1] = (int) ((pageCount * j + points - 1) / points);
+        }
+        return topNs;
+    }
+
+    // Record one interval, given the output of RankingEngine.getTopAccessCurves for getTopNs
+    public void addInterval(long intervalStart, long intervalEnd, long[][] topAccessCounts, long intervalAccessCount)
+            throws IOException {
+        for (int j = 0; j < points; j++) {
+            StringBuilder line = new StringBuilder();
+            line.append(intervalStart).append(',').append(intervalEnd).append(',')
+                    .append(getCapacity(j)).append(',').append(intervalAccessCount);
+
+            for (int p = 0; p < topAccessCounts.length; p++) {
+                double hitRatio = (double) topAccessCounts[p][j] / intervalAccessCount;
+                totalHits[j][p] += intervalAccessCount * hitRatio;
+                line.append(',').append(hitRatio);
+            }
+
+            csvWriter.write(line.append('\n').toString());
+        }
+        totalAccessCount += intervalAccessCount;
+    }
+
+    // Write the access-weighted curve over all intervals
+    public void writeOverall(String outputFilename) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilename))) {
+            writer.write("dram_percentage," + policyColumns + "\n");
+            for (int j = 0; j < points; j++) {
+                StringBuilder line = new StringBuilder().append(getCapacity(j));
+                for (double hits : totalHits[j]) {
+                    line.append(',').append(hits / totalAccessCount);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    private double getCapacity(int j) {
+        return (double) (j + 1) / points;
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvWriter.close();
+    }
+}
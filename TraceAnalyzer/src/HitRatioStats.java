@@ -1,52 +1,39 @@
 public class HitRatioStats {
     long numPagesAccessed;
     long numAccesses;
-    double actualHitRatio;
-    double estimatedHitRatio;
-    double ptsHitRatio;
-    double microChronosHitRatio;
+    double[] hitRatios; // Indexed like the interval analyzer's policies
+    double[] errorBands; // Half-widths of the approximate 95% bands, if the hit ratios are sampled
 
-    public HitRatioStats(double actualHitRatio, double estimatedHitRatio, double ptsHitRatio,
-            double microChronosHitRatio,
-            long numPagesAccessed, long numAccesses) {
-        this.actualHitRatio = actualHitRatio;
-        this.estimatedHitRatio = estimatedHitRatio;
-        this.ptsHitRatio = ptsHitRatio;
-        this.microChronosHitRatio = microChronosHitRatio;
-        this.numPagesAccessed = numPagesAccessed;
-        this.numAccesses = numAccesses;
-    }
-
-    public double getActualHitRatio() {
-        return actualHitRatio;
+    public HitRatioStats(double[] hitRatios, long numPagesAccessed, long numAccesses) {
+        this(hitRatios, null, numPagesAccessed, numAccesses);
     }
 
-    public void setActualHitRatio(double actualHitRatio) {
-        this.actualHitRatio = actualHitRatio;
-    }
-
-    public double getEstimatedHitRatio() {
-        return estimatedHitRatio;
+    public HitRatioStats(double[] hitRatios, double[] errorBands, long numPagesAccessed, long numAccesses) {
+        this.hitRatios = hitRatios;
+        this.errorBands = errorBands;
+        this.numPagesAccessed = numPagesAccessed;
+        this.numAccesses = numAccesses;
     }
 
-    public void setEstimatedHitRatio(double estimatedHitRatio) {
-        this.estimatedHitRatio = estimatedHitRatio;
+    public double getHitRatio(int policy) {
+        return hitRatios[policy];
     }
 
-    public double getPTSHitRatio() {
-        return ptsHitRatio;
+    public void setHitRatio(int policy, double hitRatio) {
+        this.hitRatios[policy] = hitRatio;
     }
 
-    public void setPTSHitRatio(double ptsHitRatio) {
-        this.ptsHitRatio = ptsHitRatio;
+    public boolean isSampled() {
+        return errorBands != null;
     }
 
-    public double getMicroChronosHitRatio() {
-        return microChronosHitRatio;
+    // Half-width of the approximate 95% band of a sampled hit ratio, see TraceAnalyzer.getSampledAccuracy()
+    public double getErrorBand(int policy) {
+        return errorBands[policy];
     }
 
-    public void setMicroChronosHitRatio(double microChronosHitRatio) {
-        this.microChronosHitRatio = microChronosHitRatio;
+    public int getPolicyCount() {
+        return hitRatios.length;
     }
 
     public long getNumPagesAccessed() {
@@ -1,214 +1,283 @@
-import java.io.*;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 
+/**
+ * Page statistics of the current interval of one (interval window, sub-interval)
+ * configuration. Records are fed in by a {@link TraceScanner}.
+ */
 public class IntervalAnalyzer {
 
-    private List<File> traceFiles;
     private long intervalStart;
     private long intervalEnd;
-    private Map<Long, PageStats> pageStatsMap;
-    private Map<File, Long> filePositions;
-    private int lineLength = -1;
     private long subIntervalDuration; // Duration of each sub-interval for PTS scoring
 
-    // MicroChronos sub-intervals end times
-    private List<Long> microChronosSubIntervalEndTimes;
+    // Merged page statistics of the current interval
+    private PageTable pageTable;
 
-    public IntervalAnalyzer(List<File> traceFiles, long subIntervalDuration) {
-        this.traceFiles = traceFiles;
-        this.subIntervalDuration = subIntervalDuration;
-        this.pageStatsMap = new ConcurrentHashMap<>();
-        this.filePositions = new ConcurrentHashMap<>();
-        this.microChronosSubIntervalEndTimes = new ArrayList<>();
+    // Workers aggregate into their own table and the tables are merged at
+    // the end of the interval, so workers never contend on a shared map
+    private ForkJoinPool workerPool;
+    private List<PageTable> workerPageTables;
+    private ThreadLocal<PageTable> workerPageTable;
 
-        // Initialize file positions to the start of each file
-        for (File file : traceFiles) {
-            filePositions.put(file, 0L);
-        }
+    // Page bound of every table in approximate mode, or 0
+    private volatile int maxPages;
+
+    // Fraction of the pages the analyzer is fed, see TraceScanner.setSampleRate()
+    private double sampleRate = 1;
+
+    // Where worker tables go once they reach spillPages pages, if they may
+    // not fit in memory, and whether the current interval was ranked from there
+    private PageSpill pageSpill;
+    private int spillPages;
+    private boolean spilled;
+
+    // MicroChronos sub-interval lookup for the current interval
+    private MicroChronosBuckets microChronosBuckets;
+
+    // Policies evaluated on every interval, and their ranking
+    private List<RankingPolicy> policies;
+    private RankingEngine rankingEngine;
+
+    public IntervalAnalyzer(long subIntervalDuration, ForkJoinPool workerPool) {
+        this(subIntervalDuration, workerPool, RankingPolicies.builtIn());
+    }
 
-        // Get the length of the first line in the first file
-        if (!traceFiles.isEmpty()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(traceFiles.get(0)))) {
-                lineLength = reader.readLine().length() + 1; // +1 for the newline character
-            } catch (IOException e) {
-                e.printStackTrace();
+    public IntervalAnalyzer(long subIntervalDuration, ForkJoinPool workerPool, List<RankingPolicy> policies) {
+        this.subIntervalDuration = subIntervalDuration;
+        this.policies = policies;
+        this.pageTable = new PageTable(policies);
+        this.microChronosBuckets = new MicroChronosBuckets();
+
+        this.workerPool = workerPool;
+        this.workerPageTables = new CopyOnWriteArrayList<>();
+        this.workerPageTable = ThreadLocal.withInitial(() -> {
+            PageTable table = new PageTable(policies);
+            if (maxPages > 0) {
+                table.setMaxPages(maxPages);
             }
+            table.reset(getPTSSubIntervalCount());
+            workerPageTables.add(table);
+            return table;
+        });
+        this.rankingEngine = new RankingEngine(workerPool, policies);
+    }
+
+    // Bound every page table to maxPages pages (see PageTable.setMaxPages()),
+    // making page counts and access counts estimates
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+        pageTable.setMaxPages(maxPages);
+        for (PageTable table : workerPageTables) {
+            table.setMaxPages(maxPages);
         }
     }
 
-    public void analyzeInterval(long intervalStart, long intervalEnd) throws IOException {
-        this.intervalStart = intervalStart;
-        this.intervalEnd = intervalEnd;
-        this.pageStatsMap.clear();
+    public boolean isApproximate() {
+        return maxPages > 0;
+    }
 
-        // Compute MicroChronos sub-interval ends
-        computeMicroChronosSubIntervals();
+    // Only a fraction of the pages is fed to the analyzer, so hit ratios are estimates
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<Future<Void>> futures = new ArrayList<>();
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    // Keep the page statistics of an interval within a memory budget, spilling
+    // worker tables that reach their share of it; ranking stays exact
+    public void enableSpill(PageSpill pageSpill, long memoryBudgetBytes) {
+        long bytesPerPage = PageTable.getBytesPerPage(getPTSSubIntervalCount(), policies);
+        long pages = memoryBudgetBytes / ((workerPool.getParallelism() + 1) * bytesPerPage);
+        this.pageSpill = pageSpill;
+        this.spillPages = (int) Math.max(16, Long.highestOneBit(Math.min(pages, 1 << 30)));
+    }
 
-        for (File file : traceFiles) {
-            futures.add(executor.submit(() -> {
-                analyzeFile(file);
-                return null;
-            }));
+    // Start a new interval, reusing the tables of the previous one
+    public void beginInterval(long intervalStart, long intervalEnd) throws IOException {
+        this.intervalStart = intervalStart;
+        this.intervalEnd = intervalEnd;
+        if (pageSpill != null) {
+            pageSpill.clear();
+            spilled = false;
         }
 
-        for (Future<Void> future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+        int ptsSubIntervalCount = getPTSSubIntervalCount();
+        pageTable.reset(ptsSubIntervalCount);
+        for (PageTable table : workerPageTables) {
+            table.reset(ptsSubIntervalCount);
         }
 
-        executor.shutdown();
-    }
+        // Compute MicroChronos sub-interval ends
+        microChronosBuckets.configure(intervalStart, intervalEnd, subIntervalDuration);
 
-    private void computeMicroChronosSubIntervals() {
-        long minSubIntervalDuration = subIntervalDuration / 32;
-        if (minSubIntervalDuration == 0) {
-            minSubIntervalDuration = 1; // Ensure minimum duration is at least 1 tick
+        for (RankingPolicy policy : policies) {
+            policy.beginInterval(intervalStart, intervalEnd, subIntervalDuration);
         }
+    }
 
-        long currentSubIntervalDuration = subIntervalDuration;
-        long cumulativeTime = intervalStart;
-
-        while (currentSubIntervalDuration >= minSubIntervalDuration) {
-            cumulativeTime += currentSubIntervalDuration;
-            if (cumulativeTime >= intervalEnd) {
-                microChronosSubIntervalEndTimes.add(intervalEnd);
-                return;
-            } else {
-                microChronosSubIntervalEndTimes.add(cumulativeTime);
+    // Merge what the workers aggregated once all records of the interval were
+    // scanned, from disk if it did not fit in memory
+    public void endInterval() throws IOException {
+        if (pageSpill != null) {
+            long pages = 0;
+            for (PageTable table : workerPageTables) {
+                pages += table.size();
             }
-            currentSubIntervalDuration /= 2;
-            if (currentSubIntervalDuration == 0) {
-                currentSubIntervalDuration = 1; // Avoid division by zero
+            if (pageSpill.hasSpilled() || pages > spillPages) {
+                for (PageTable table : workerPageTables) {
+                    pageSpill.spill(table);
+                }
+                pageSpill.rank(pageTable, getPTSSubIntervalCount());
+                spilled = true;
+                return;
             }
         }
+        mergeWorkerPageTables();
+    }
 
-        // Fill the remaining interval with sub-intervals of minSubIntervalDuration
-        while (cumulativeTime < intervalEnd) {
-            cumulativeTime += minSubIntervalDuration;
-            if (cumulativeTime >= intervalEnd) {
-                microChronosSubIntervalEndTimes.add(intervalEnd);
-                break;
-            } else {
-                microChronosSubIntervalEndTimes.add(cumulativeTime);
-            }
-        }
+    public long getIntervalStart() {
+        return intervalStart;
     }
 
-    private int getMicroChronosIntervalIndex(long timestamp) {
-        int index = Collections.binarySearch(microChronosSubIntervalEndTimes, timestamp);
-        if (index >= 0) {
-            return index;
-        } else {
-            return -index - 1;
-        }
+    public long getIntervalEnd() {
+        return intervalEnd;
     }
 
-    private void analyzeFile(File file) throws IOException {
-        long filePosition = filePositions.get(file);
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            // Skip lines until reaching the last position
-            long bytesToSkip = filePosition * lineLength;
+    public long getSubIntervalDuration() {
+        return subIntervalDuration;
+    }
 
-            // To avoid bad math or lines with different lengths, we skip a
-            // bit less than the calculated bytes
-            // This is a trade-off between performance and accuracy
-            bytesToSkip -= (bytesToSkip / 100);
+    private int getPTSSubIntervalCount() {
+        return (int) ((intervalEnd - intervalStart + subIntervalDuration - 1) / subIntervalDuration);
+    }
 
-            reader.skip(bytesToSkip);
+    // Page table of the calling worker thread for the current interval
+    public PageTable getWorkerPageTable() {
+        return workerPageTable.get();
+    }
 
-            // Skip to the next line
-            reader.readLine();
+    // Record an access of the current interval into a worker's page table
+    public void recordAccess(PageTable table, long pageId, long timestamp) {
+        // Calculate PTS sub-interval index
+        int ptsSubIntervalIndex = (int) ((timestamp - intervalStart) / subIntervalDuration);
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
+        // Calculate MicroChronos interval index
+        int microChronosIntervalIndex = microChronosBuckets.indexOf(timestamp);
 
-                // Check if line is empty or has the wrong number of parts
-                if (parts.length != 3) {
-                    continue;
-                }
+        table.recordAccess(pageId, timestamp, ptsSubIntervalIndex, microChronosIntervalIndex);
+        if (pageSpill != null && table.size() >= spillPages) {
+            pageSpill.spill(table);
+            table.reset(getPTSSubIntervalCount());
+        }
+    }
 
-                long timestamp = Long.parseLong(parts[0], 16);
+    // Merge the worker tables pairwise in parallel, then into the interval's table
+    private void mergeWorkerPageTables() {
+        List<PageTable> tables = new ArrayList<>(workerPageTables);
+        if (tables.isEmpty()) {
+            return;
+        }
+        PageTable merged = workerPool.invoke(new MergeTask(tables, 0, tables.size()));
+        pageTable.mergeFrom(merged);
+    }
 
-                if (timestamp > intervalEnd) {
-                    break;
-                }
+    private static class MergeTask extends RecursiveTask<PageTable> {
+        private static final long serialVersionUID = 1L;
 
-                if (timestamp >= intervalStart) {
-                    long address = Long.parseLong(parts[2], 16);
-                    // We are considering 4KB pages, so we mask the lower 12 bits to get the page ID
-                    long pageId = address >>> 12;
-
-                    pageStatsMap.compute(pageId, (k, v) -> {
-                        if (v == null) {
-                            v = new PageStats(pageId);
-                        }
-                        v.incrementAccessCount();
-                        if (timestamp < v.getFirstAccessTime()) {
-                            v.setFirstAccessTime(timestamp);
-                        }
-
-                        // Calculate PTS sub-interval index
-                        int ptsSubIntervalIndex = (int) ((timestamp - intervalStart) / subIntervalDuration);
-                        v.incrementPTSScore(ptsSubIntervalIndex);
-
-                        // Calculate MicroChronos interval index
-                        int microChronosIntervalIndex = getMicroChronosIntervalIndex(timestamp);
-                        // Only set it if it's the earliest interval
-                        if (v.getMicroChronosIntervalIndex() == Integer.MAX_VALUE
-                                || microChronosIntervalIndex < v.getMicroChronosIntervalIndex()) {
-                            v.setMicroChronosIntervalIndex(microChronosIntervalIndex);
-                        }
-
-                        return v;
-                    });
-
-                    filePosition++;
-                }
-            }
+        private final List<PageTable> tables;
+        private final int from;
+        private final int to;
+
+        MergeTask(List<PageTable> tables, int from, int to) {
+            this.tables = tables;
+            this.from = from;
+            this.to = to;
+        }
 
-            filePositions.put(file, filePosition);
+        @Override
+        protected PageTable compute() {
+            if (to - from == 1) {
+                return tables.get(from);
+            }
+            int mid = (from + to) >>> 1;
+            MergeTask right = new MergeTask(tables, mid, to);
+            right.fork();
+            PageTable left = new MergeTask(tables, from, mid).compute();
+            left.mergeFrom(right.join());
+            return left;
         }
     }
 
-    public List<PageStats> getHotPagesByFirstAccess() {
-        List<PageStats> hotPages = new ArrayList<>(pageStatsMap.values());
-        hotPages.sort(Comparator.comparingLong(PageStats::getFirstAccessTime));
-        return hotPages;
+    public PageTable getPageTable() {
+        return pageTable;
+    }
+
+    // Ranking of the current interval, for selections beyond the top N access counts
+    public RankingEngine getRankingEngine() {
+        return rankingEngine;
+    }
+
+    public ForkJoinPool getWorkerPool() {
+        return workerPool;
     }
 
-    public List<PageStats> getHotPagesByTotalAccess() {
-        List<PageStats> hotPages = new ArrayList<>(pageStatsMap.values());
-        hotPages.sort(Comparator.comparingLong(PageStats::getAccessCount).reversed());
-        return hotPages;
+    public List<RankingPolicy> getPolicies() {
+        return policies;
     }
 
-    public List<PageStats> getHotPagesByPTSScore() {
-        List<PageStats> hotPages = new ArrayList<>(pageStatsMap.values());
-        hotPages.sort(Comparator.comparingLong(PageStats::getPTSScore).reversed());
-        return hotPages;
+    // Access count sum of the top N pages of the interval for each policy,
+    // indexed like getPolicies()
+    public long[] getTopAccessCounts(int topN) throws IOException {
+        if (spilled) {
+            return pageSpill.getTopAccessCounts(topN);
+        }
+        return rankingEngine.getTopAccessCounts(pageTable, topN);
     }
 
-    public List<PageStats> getHotPagesByMicroChronos() {
-        List<PageStats> hotPages = new ArrayList<>(pageStatsMap.values());
-        hotPages.sort(Comparator.comparingInt(PageStats::getMicroChronosIntervalIndex));
-        return hotPages;
+    // Squared access count sums of the top N pages of the interval for each
+    // policy, as selected by the last getTopAccessCounts(topN) call
+    public double[] getTopSquaredAccessCounts(int topN) {
+        return rankingEngine.getTopSquaredAccessCounts(pageTable, topN);
+    }
+
+    // Squared access count sum of all pages of the interval
+    public double getSquaredAccessCount() {
+        double sum = 0;
+        for (int entry = 0; entry < pageTable.size(); entry++) {
+            double accessCount = pageTable.getAccessCount(entry);
+            sum += accessCount * accessCount;
+        }
+        return sum;
+    }
+
+    // Access count sums of the top topNs[j] pages of the interval for each policy,
+    // indexed by [policy][j]
+    public long[][] getTopAccessCurves(int[] topNs) {
+        return rankingEngine.getTopAccessCurves(pageTable, topNs);
     }
 
     // Get total number of accesses in the interval
     public long getTotalAccessCount() {
-        return pageStatsMap.values().stream().mapToLong(PageStats::getAccessCount).sum();
+        if (spilled) {
+            return pageSpill.getAccessCount();
+        }
+        return pageTable.getTotalAccessCount();
     }
 
-    // Get total pages accessed in the interval
+    // Get total pages accessed in the interval, estimated in approximate mode
     public long getTotalPageCount() {
-        return pageStatsMap.size();
+        if (spilled) {
+            return pageSpill.getPageCount();
+        }
+        return pageTable.getDistinctPageCount();
+    }
+
+    // Most accesses a page's access count may be short of in approximate mode
+    public long getCountError() {
+        return pageTable.getCountError();
     }
 }
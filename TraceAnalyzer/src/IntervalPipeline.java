@@ -0,0 +1,79 @@
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges, ranks and reports finished intervals on a thread of its own, so
+ * that the scan of the trace moves on to the next interval meanwhile (see
+ * {@link AnalysisRun#enablePipeline}).
+ *
+ * Intervals are completed in the order they are submitted, whichever run
+ * they belong to, so the output is the same as when every interval is
+ * completed before the scan goes on. Each run has at most one interval in
+ * flight, which bounds the queue to the number of runs.
+ */
+public class IntervalPipeline implements Closeable {
+
+    // Work on a finished interval
+    public interface Stage {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService ranker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interval-ranker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Stages submitted and not run yet
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public Future<?> submit(Stage stage) {
+        pending.incrementAndGet();
+        return ranker.submit(() -> {
+            try {
+                stage.run();
+            } finally {
+                pending.decrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    // Wait until a submitted stage has run, rethrowing what it threw
+    public static void await(Future<?> stage) throws IOException {
+        if (stage == null) {
+            return;
+        }
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an interval");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Wait until every interval submitted so far has been completed
+    public void drain() throws IOException {
+        await(submit(() -> {
+        }));
+    }
+
+    @Override
+    public void close() {
+        ranker.shutdown();
+    }
+}
@@ -0,0 +1,76 @@
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * A custom JDK Flight Recorder event type, defined at run time.
+ *
+ * The analyzer is built for Java 8, whose API has no {@code jdk.jfr}, so the
+ * event type is created through {@code jdk.jfr.EventFactory} by reflection.
+ * On runtimes without JFR, {@link #create} returns null and nothing is
+ * recorded. Events are only built while a recording is on, e.g. with
+ * {@code java -XX:StartFlightRecording=filename=analysis.jfr ...}.
+ */
+public final class JfrEvent {
+
+    private static final String CATEGORY = "TraceAnalyzer";
+
+    private final Object factory;
+    private final Method newEvent;
+    private final Method set;
+    private final Method shouldCommit;
+    private final Method commit;
+
+    private JfrEvent(Object factory) throws ReflectiveOperationException {
+        this.factory = factory;
+        this.newEvent = factory.getClass().getMethod("newEvent");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        this.set = eventClass.getMethod("set", int.class, Object.class);
+        this.shouldCommit = eventClass.getMethod("shouldCommit");
+        this.commit = eventClass.getMethod("commit");
+    }
+
+    // Event type "traceanalyzer.<name>" with the given fields (long, double or
+    // String), or null if this runtime has no JFR
+    public static JfrEvent create(String name, String label, String[] fieldNames, Class<?>[] fieldTypes) {
+        try {
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class,
+                    List.class);
+
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Name"), "traceanalyzer." + name));
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Label"), label));
+            annotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Category"), new String[] { CATEGORY }));
+
+            List<Object> fields = new ArrayList<>();
+            for (int i = 0; i < fieldNames.length; i++) {
+                fields.add(valueDescriptor.newInstance(fieldTypes[i], fieldNames[i], Collections.emptyList()));
+            }
+
+            Object factory = factoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, fields);
+            return new JfrEvent(factory);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Record an event with these field values, in the order of the fields, if a recording is on
+    public void commit(Object... values) {
+        try {
+            Object event = newEvent.invoke(factory);
+            if (!(Boolean) shouldCommit.invoke(event)) {
+                return;
+            }
+            for (int i = 0; i < values.length; i++) {
+                set.invoke(event, i, values[i]);
+            }
+            commit.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            // Events are best effort, the analysis goes on without them
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * LRU-K (O'Neil et al., 1993): pages are ranked by the time of their K-th
+ * most recent access in the interval, latest first. Pages accessed fewer than
+ * K times come after all others, ordered by their most recent access, like
+ * LRU. Each page keeps its K most recent access times, latest first, which
+ * merge by keeping the K latest of both tables.
+ */
+public class LruKPolicy implements RankingPolicy {
+
+    private final int k;
+
+    public LruKPolicy(String parameter) {
+        this.k = parameter == null ? 2 : Integer.parseInt(parameter);
+        if (k < 1 || k > 16) {
+            throw new IllegalArgumentException("LRU-K needs 1 <= K <= 16");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "lru_" + k;
+    }
+
+    @Override
+    public String getLabel() {
+        return "LRU-" + k;
+    }
+
+    @Override
+    public int getStateSize() {
+        return k;
+    }
+
+    // Timestamps are positive, so 0 marks an empty slot
+    @Override
+    public void recordAccess(long[] state, int offset, long timestamp, int subIntervalIndex) {
+        insert(state, offset, timestamp);
+    }
+
+    @Override
+    public void mergeState(long[] state, int offset, long[] otherState, int otherOffset) {
+        for (int i = 0; i < k && otherState[otherOffset + i] != 0; i++) {
+            insert(state, offset, otherState[otherOffset + i]);
+        }
+    }
+
+    // Insert a timestamp into the latest-first list, dropping the oldest one
+    private void insert(long[] state, int offset, long timestamp) {
+        int last = offset + k - 1;
+        if (state[last] != 0 && timestamp <= state[last]) {
+            return;
+        }
+        int i = last;
+        while (i > offset && (state[i - 1] == 0 || state[i - 1] < timestamp)) {
+            state[i] = state[i - 1];
+            i--;
+        }
+        state[i] = timestamp;
+    }
+
+    @Override
+    public long getRankKey(PageTable table, int entry, long[] state, int offset) {
+        long kthLatest = state[offset + k - 1];
+        if (kthLatest != 0) {
+            return -kthLatest;
+        }
+        // Infinite backward K-distance: after every page with a K-th access
+        return Long.MAX_VALUE - state[offset];
+    }
+}
@@ -0,0 +1,41 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Chunk of fixed-width binary records inside a memory-mapped window.
+ */
+public class MappedTraceChunk extends TraceChunk {
+
+    private final ByteBuffer window;
+    private final int firstRecord;
+    private final int endRecord;
+    private int record;
+
+    public MappedTraceChunk(ByteBuffer window, int firstRecord, int recordCount) {
+        this.window = window;
+        this.firstRecord = firstRecord;
+        this.endRecord = firstRecord + recordCount;
+        this.record = firstRecord;
+        this.byteLength = recordCount * TraceFormat.RECORD_SIZE;
+        this.lastTimestamp = window.getLong((endRecord - 1) * TraceFormat.RECORD_SIZE);
+    }
+
+    @Override
+    protected boolean advance() {
+        if (record >= endRecord) {
+            return false;
+        }
+
+        int position = record * TraceFormat.RECORD_SIZE;
+        long encodedAddress = window.getLong(position + 8);
+        timestamp = window.getLong(position);
+        address = TraceFormat.decodeAddress(encodedAddress);
+        accessType = TraceFormat.decodeAccessType(encodedAddress);
+        record++;
+        return true;
+    }
+
+    @Override
+    protected void restart() {
+        record = firstRecord;
+    }
+}
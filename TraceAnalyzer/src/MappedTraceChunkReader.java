@@ -0,0 +1,79 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits a binary trace file into chunks that point straight into
+ * memory-mapped windows of the file, without copying any record.
+ */
+public class MappedTraceChunkReader implements TraceChunkReader {
+
+    private static final int CHUNK_RECORDS = TextTraceChunkReader.CHUNK_SIZE / TraceFormat.RECORD_SIZE;
+    private static final long WINDOW_RECORDS = 64L * CHUNK_RECORDS;
+
+    private final FileChannel channel;
+    private final long recordCount;
+
+    private MappedByteBuffer window;
+    private long windowFirstRecord;
+    private long windowRecords;
+    private long nextRecord;
+
+    public MappedTraceChunkReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        TraceFormat.readHeader(channel);
+        // Trust the file length over the header so a truncated conversion is still readable
+        this.recordCount = (channel.size() - TraceFormat.HEADER_SIZE) / TraceFormat.RECORD_SIZE;
+    }
+
+    @Override
+    public TraceChunk nextChunk() throws IOException {
+        if (nextRecord >= recordCount) {
+            return null;
+        }
+
+        if (window == null || nextRecord >= windowFirstRecord + windowRecords) {
+            windowFirstRecord = nextRecord;
+            windowRecords = Math.min(WINDOW_RECORDS, recordCount - nextRecord);
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    TraceFormat.HEADER_SIZE + windowFirstRecord * TraceFormat.RECORD_SIZE,
+                    windowRecords * TraceFormat.RECORD_SIZE);
+            window.order(TraceFormat.BYTE_ORDER);
+        }
+
+        int first = (int) (nextRecord - windowFirstRecord);
+        int count = (int) Math.min(CHUNK_RECORDS, windowFirstRecord + windowRecords - nextRecord);
+        nextRecord += count;
+
+        return new MappedTraceChunk(window, first, count);
+    }
+
+    @Override
+    public void seek(long timestamp) throws IOException {
+        // Binary search for the first record with a timestamp >= the given one
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(TraceFormat.BYTE_ORDER);
+        long low = 0;
+        long high = recordCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            buffer.clear();
+            channel.read(buffer, TraceFormat.HEADER_SIZE + mid * TraceFormat.RECORD_SIZE);
+            if (buffer.getLong(0) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        nextRecord = low;
+        window = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trace cursor over the binary format described in {@link TraceFormat}.
+ *
+ * Records are read straight out of memory-mapped windows of the file, so
+ * there is no parsing and no copying between the page cache and the analyzer.
+ */
+public class MappedTraceCursor implements TraceCursor {
+
+    // Size of each mapped window; a multiple of the record size
+    private static final long WINDOW_SIZE = (256L << 20) / TraceFormat.RECORD_SIZE * TraceFormat.RECORD_SIZE;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long recordCount;
+
+    private MappedByteBuffer window;
+    private long windowFirstRecord;
+    private int windowRecords;
+
+    // Index of the current (not yet consumed) record
+    private long recordIndex = -1;
+    private long timestamp;
+    private long encodedAddress;
+
+    public MappedTraceCursor(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        TraceFormat.readHeader(channel);
+        // Trust the file length over the header so a truncated conversion is still readable
+        this.recordCount = (channel.size() - TraceFormat.HEADER_SIZE) / TraceFormat.RECORD_SIZE;
+
+        advance();
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean hasRecord() {
+        return recordIndex < recordCount;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long getAddress() {
+        return TraceFormat.decodeAddress(encodedAddress);
+    }
+
+    @Override
+    public char getAccessType() {
+        return TraceFormat.decodeAccessType(encodedAddress);
+    }
+
+    @Override
+    public void advance() throws IOException {
+        recordIndex++;
+        if (recordIndex >= recordCount) {
+            recordIndex = recordCount;
+            return;
+        }
+
+        long offsetInWindow = recordIndex - windowFirstRecord;
+        if (window == null || offsetInWindow >= windowRecords) {
+            mapWindow(recordIndex);
+            offsetInWindow = 0;
+        }
+
+        int position = (int) offsetInWindow * TraceFormat.RECORD_SIZE;
+        timestamp = window.getLong(position);
+        encodedAddress = window.getLong(position + 8);
+    }
+
+    private void mapWindow(long firstRecord) throws IOException {
+        long start = TraceFormat.HEADER_SIZE + firstRecord * TraceFormat.RECORD_SIZE;
+        long length = Math.min(WINDOW_SIZE, (recordCount - firstRecord) * TraceFormat.RECORD_SIZE);
+
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        window.order(TraceFormat.BYTE_ORDER);
+        windowFirstRecord = firstRecord;
+        windowRecords = (int) (length / TraceFormat.RECORD_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        recordIndex = recordCount;
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Closed-form MicroChronos sub-interval lookup.
+ *
+ * MicroChronos splits an interval into sub-intervals of halving duration
+ * (D, D/2, D/4, ...) down to a minimum of D/32, then fills the rest of the
+ * interval with sub-intervals of that minimum duration. Bucket {@code k}
+ * covers timestamps in {@code (end[k-1], end[k]]}, the first bucket also
+ * covering the interval start.
+ *
+ * The halving phase has a handful of buckets and is kept in a small
+ * primitive array; the fixed-duration tail is resolved with one division.
+ */
+public class MicroChronosBuckets {
+
+    // End timestamps of the halving-phase buckets (at most 64 for any duration)
+    private final long[] halvingEnds = new long[64];
+    private int halvingCount;
+
+    // Tail of fixed-duration buckets starting after the last halving bucket
+    private long tailStart;
+    private long tailDuration;
+    private int bucketCount;
+
+    public void configure(long intervalStart, long intervalEnd, long subIntervalDuration) {
+        long minSubIntervalDuration = subIntervalDuration / 32;
+        if (minSubIntervalDuration == 0) {
+            minSubIntervalDuration = 1; // Ensure minimum duration is at least 1 tick
+        }
+
+        long currentSubIntervalDuration = subIntervalDuration;
+        long cumulativeTime = intervalStart;
+        halvingCount = 0;
+
+        // Once the halving duration reaches zero the remaining buckets all
+        // last one tick, which is exactly the tail with a 1-tick minimum
+        while (currentSubIntervalDuration >= minSubIntervalDuration && currentSubIntervalDuration > 0
+                && halvingCount < halvingEnds.length) {
+            cumulativeTime += currentSubIntervalDuration;
+            if (cumulativeTime >= intervalEnd) {
+                halvingEnds[halvingCount++] = intervalEnd;
+                tailStart = intervalEnd;
+                tailDuration = minSubIntervalDuration;
+                bucketCount = halvingCount;
+                return;
+            }
+            halvingEnds[halvingCount++] = cumulativeTime;
+            currentSubIntervalDuration /= 2;
+        }
+
+        tailStart = cumulativeTime;
+        tailDuration = minSubIntervalDuration;
+        bucketCount = halvingCount + (int) ((intervalEnd - tailStart + tailDuration - 1) / tailDuration);
+    }
+
+    public int indexOf(long timestamp) {
+        if (timestamp <= tailStart) {
+            for (int i = 0; i < halvingCount; i++) {
+                if (timestamp <= halvingEnds[i]) {
+                    return i;
+                }
+            }
+        }
+
+        // First tail bucket whose end (tailStart + j * tailDuration) is >= timestamp
+        long j = (timestamp - tailStart + tailDuration - 1) / tailDuration;
+        return (int) Math.max(0, Math.min(halvingCount + j - 1, bucketCount - 1));
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+}
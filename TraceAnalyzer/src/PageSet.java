@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * Set of page IDs in a primitive open-addressing table, for sets that change
+ * a little at a time, such as the pages resident in DRAM from one interval
+ * to the next. Removal shifts the following entries back instead of leaving
+ * tombstones, so lookups stay fast however many pages come and go.
+ */
+public class PageSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int slotMask;
+    private int size;
+
+    public PageSet() {
+        this.slots = new long[16];
+        this.slotMask = slots.length - 1;
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long pageId) {
+        int slot = (int) PageTable.mix(pageId) & slotMask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == pageId) {
+                return true;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return false;
+    }
+
+    // False if the page was already in the set
+    public boolean add(long pageId) {
+        // Keep the load factor at or below 1/2
+        if (2 * (size + 1) > slots.length) {
+            rehash(slots.length * 2);
+        }
+        int slot = (int) PageTable.mix(pageId) & slotMask;
+        while (slots[slot] != EMPTY) {
+            if (slots[slot] == pageId) {
+                return false;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        slots[slot] = pageId;
+        size++;
+        return true;
+    }
+
+    // False if the page was not in the set
+    public boolean remove(long pageId) {
+        int slot = (int) PageTable.mix(pageId) & slotMask;
+        while (slots[slot] != pageId) {
+            if (slots[slot] == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+
+        // Move back any later entry of the probe run that the hole would hide
+        int hole = slot;
+        slot = (slot + 1) & slotMask;
+        while (slots[slot] != EMPTY) {
+            int home = (int) PageTable.mix(slots[slot]) & slotMask;
+            if (((slot - home) & slotMask) >= ((slot - hole) & slotMask)) {
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        slots[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    // Copy the page IDs of the set into pageIds, which must hold size() of them
+    public void toArray(long[] pageIds) {
+        int count = 0;
+        for (long pageId : slots) {
+            if (pageId != EMPTY) {
+                pageIds[count++] = pageId;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldSlots = slots;
+        slots = new long[capacity];
+        slotMask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+        for (long pageId : oldSlots) {
+            if (pageId != EMPTY) {
+                int slot = (int) PageTable.mix(pageId) & slotMask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & slotMask;
+                }
+                slots[slot] = pageId;
+            }
+        }
+    }
+}
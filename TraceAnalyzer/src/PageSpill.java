@@ -0,0 +1,420 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Disk spill of the page statistics of an interval that does not fit in memory.
+ *
+ * Workers spill their page table whenever it reaches its share of the memory
+ * budget, and start over with an empty one. Pages are written to one of
+ * {@value #PARTITION_COUNT} partition files by a hash of their ID, through
+ * write buffers in one direct (off-heap) arena, so every statistic of a page
+ * ends up in the same partition. At the end of the interval, each partition
+ * in turn is merged into a single page table, which gives the exact
+ * statistics of its pages, and ranked: the key of every page for every
+ * policy goes to a rank file, along with its tie-break key and access count.
+ *
+ * The top N pages of every policy are then selected from the rank file
+ * without holding it in memory, in the same order as {@link RankingEngine}
+ * (policy key, then page ID hash): each pass over the file counts the pages
+ * and accesses of {@value #HISTOGRAM_BUCKETS} key ranges, which narrows the
+ * range holding the N-th page down until its pages fit in memory and are
+ * selected directly. Results are exactly those of an in-memory ranking.
+ */
+public class PageSpill implements Closeable {
+
+    private static final int PARTITION_BITS = 6;
+    private static final int PARTITION_COUNT = 1 << PARTITION_BITS;
+    private static final int PARTITION_BUFFER_BYTES = 1 << 16;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final int HISTOGRAM_BITS = 12;
+    private static final int HISTOGRAM_BUCKETS = 1 << HISTOGRAM_BITS;
+
+    private final File directory;
+    private final List<RankingPolicy> policies;
+    private final int candidateLimit;
+
+    // Partition files and their write buffers, slices of the arena
+    private final FileChannel[] partitionChannels;
+    private final ByteBuffer[] partitionBuffers;
+    private final FileChannel rankChannel;
+    private final ByteBuffer readBuffer;
+
+    // State of the current interval
+    private boolean spilled;
+    private IOException failure;
+    private long pageCount;
+    private long accessCount;
+    private long[] minKeys;
+    private long[] maxKeys;
+
+    private int spilledIntervals;
+
+    // Spill into files in the directory, created if needed; candidateLimit is
+    // the most pages of a key range selected in memory
+    public PageSpill(File directory, List<RankingPolicy> policies, int candidateLimit) throws IOException {
+        this.directory = directory;
+        this.policies = policies;
+        this.candidateLimit = candidateLimit;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spill directory " + directory);
+        }
+
+        ByteBuffer arena = ByteBuffer.allocateDirect(PARTITION_COUNT * PARTITION_BUFFER_BYTES + READ_BUFFER_BYTES);
+        this.partitionChannels = new FileChannel[PARTITION_COUNT];
+        this.partitionBuffers = new ByteBuffer[PARTITION_COUNT];
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            partitionChannels[i] = new RandomAccessFile(new File(directory, "partition-" + i), "rw").getChannel();
+            arena.limit((i + 1) * PARTITION_BUFFER_BYTES).position(i * PARTITION_BUFFER_BYTES);
+            partitionBuffers[i] = arena.slice();
+        }
+        arena.limit(arena.capacity()).position(PARTITION_COUNT * PARTITION_BUFFER_BYTES);
+        this.readBuffer = arena.slice();
+        this.rankChannel = new RandomAccessFile(new File(directory, "ranks"), "rw").getChannel();
+    }
+
+    // Whether any page of the current interval was spilled
+    public boolean hasSpilled() {
+        return spilled;
+    }
+
+    // Write every page of the table to its partition. Workers may spill
+    // concurrently; a failure is reported by rank().
+    public synchronized void spill(PageTable table) {
+        if (table.size() == 0 || failure != null) {
+            return;
+        }
+        spilled = true;
+        int entryBytes = table.getEntryBytes();
+        try {
+            for (int entry = 0; entry < table.size(); entry++) {
+                int partition = (int) (PageTable.mix(table.getPageId(entry)) >>> (64 - PARTITION_BITS));
+                ByteBuffer buffer = partitionBuffers[partition];
+                if (buffer.remaining() < entryBytes) {
+                    flush(buffer, partitionChannels[partition]);
+                }
+                table.writeEntry(entry, buffer);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Merge and rank every partition, using the table as scratch space
+    public void rank(PageTable table, int ptsSubIntervalCount) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        spilledIntervals++;
+        pageCount = 0;
+        accessCount = 0;
+        minKeys = new long[policies.size()];
+        maxKeys = new long[policies.size()];
+        Arrays.fill(minKeys, Long.MAX_VALUE);
+        Arrays.fill(maxKeys, Long.MIN_VALUE);
+
+        ByteBuffer rankBuffer = partitionBuffers[0];
+        int rankBytes = 8 * (2 + policies.size());
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            FileChannel channel = partitionChannels[partition];
+            flush(partitionBuffers[partition], channel);
+
+            table.reset(ptsSubIntervalCount);
+            int entryBytes = table.getEntryBytes();
+            channel.position(0);
+            readBuffer.clear();
+            int read;
+            do {
+                read = channel.read(readBuffer);
+                readBuffer.flip();
+                while (readBuffer.remaining() >= entryBytes) {
+                    table.mergeEntry(readBuffer);
+                }
+                readBuffer.compact();
+            } while (read >= 0);
+            channel.truncate(0);
+
+            // Partition 0's write buffer is free from now on
+            long[] states = table.getPolicyStates();
+            for (int entry = 0; entry < table.size(); entry++) {
+                if (rankBuffer.remaining() < rankBytes) {
+                    flush(rankBuffer, rankChannel);
+                }
+                rankBuffer.putLong(table.getAccessCount(entry));
+                rankBuffer.putLong(PageTable.mix(table.getPageId(entry)));
+                for (int p = 0; p < policies.size(); p++) {
+                    long key = policies.get(p).getRankKey(table, entry, states, table.getStateOffset(p, entry));
+                    rankBuffer.putLong(key);
+                    minKeys[p] = Math.min(minKeys[p], key);
+                    maxKeys[p] = Math.max(maxKeys[p], key);
+                }
+            }
+            pageCount += table.size();
+            accessCount += table.getTotalAccessCount();
+        }
+        flush(rankBuffer, rankChannel);
+        table.reset(ptsSubIntervalCount);
+    }
+
+    // Number of distinct pages of the ranked interval
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    // Access count sum of the top N pages of the ranked interval for each policy
+    public long[] getTopAccessCounts(int topN) throws IOException {
+        int policyCount = policies.size();
+        long[] topAccessCounts = new long[policyCount];
+        if (topN >= pageCount) {
+            Arrays.fill(topAccessCounts, accessCount);
+            return topAccessCounts;
+        }
+
+        Selection[] selections = new Selection[policyCount];
+        for (int p = 0; p < policyCount; p++) {
+            selections[p] = new Selection(topN, minKeys[p], maxKeys[p]);
+        }
+        int remaining = topN > 0 ? policyCount : 0;
+        while (remaining > 0) {
+            scanRanks(selections);
+            remaining = 0;
+            for (Selection selection : selections) {
+                if (!selection.done) {
+                    selection.resolve(candidateLimit);
+                    remaining += selection.done ? 0 : 1;
+                }
+            }
+        }
+        for (int p = 0; p < policyCount; p++) {
+            topAccessCounts[p] = selections[p].accessSum;
+        }
+        return topAccessCounts;
+    }
+
+    // Feed every page of the rank file to the selections still running
+    private void scanRanks(Selection[] selections) throws IOException {
+        int rankBytes = 8 * (2 + selections.length);
+        rankChannel.position(0);
+        readBuffer.clear();
+        int read;
+        do {
+            read = rankChannel.read(readBuffer);
+            readBuffer.flip();
+            while (readBuffer.remaining() >= rankBytes) {
+                long count = readBuffer.getLong();
+                long tieKey = readBuffer.getLong();
+                for (Selection selection : selections) {
+                    long key = readBuffer.getLong();
+                    if (!selection.done) {
+                        selection.add(key, tieKey, count);
+                    }
+                }
+            }
+            readBuffer.compact();
+        } while (read >= 0);
+    }
+
+    // Start a new interval, emptying the files of the previous one
+    public void clear() throws IOException {
+        spilled = false;
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            partitionBuffers[i].clear();
+            partitionChannels[i].truncate(0);
+        }
+        rankChannel.truncate(0);
+    }
+
+    // Number of intervals that did not fit in memory
+    public int getSpilledIntervals() {
+        return spilledIntervals;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    // Close and delete the spill files
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            partitionChannels[i].close();
+            new File(directory, "partition-" + i).delete();
+        }
+        rankChannel.close();
+        new File(directory, "ranks").delete();
+        directory.delete();
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Selection of the top N pages of one policy. Keys are compared as
+     * unsigned offsets from the low end of the current range, so that a range
+     * is a start and a width and a page is in it with one comparison. Once the
+     * range is down to a single policy key, it narrows on the tie-break key.
+     */
+    private static final class Selection {
+        // Pages still to select in the current range, and the accesses of the selected ones
+        long needed;
+        long accessSum;
+        boolean done;
+
+        // Current range, in the policy key or, for fixedKey, in the tie-break key
+        boolean tieBreaking;
+        long fixedKey;
+        long low;
+        long width;
+        int shift;
+
+        // Pages and accesses per bucket of the range
+        final long[] pages = new long[HISTOGRAM_BUCKETS];
+        final long[] accesses = new long[HISTOGRAM_BUCKETS];
+
+        // Pages of the range, once there are few enough of them
+        long[] candidateKeys;
+        long[] candidateTieKeys;
+        long[] candidateCounts;
+        int candidateCount;
+
+        Selection(long topN, long minKey, long maxKey) {
+            this.needed = topN;
+            this.low = minKey ^ Long.MIN_VALUE;
+            this.width = (maxKey ^ Long.MIN_VALUE) - low;
+            setShift();
+        }
+
+        private void setShift() {
+            shift = Math.max(0, 64 - Long.numberOfLeadingZeros(width) - HISTOGRAM_BITS);
+        }
+
+        void add(long key, long tieKey, long count) {
+            long offset;
+            if (tieBreaking) {
+                if (key != fixedKey) {
+                    return;
+                }
+                offset = (tieKey ^ Long.MIN_VALUE) - low;
+            } else {
+                offset = (key ^ Long.MIN_VALUE) - low;
+            }
+            if (Long.compareUnsigned(offset, width) > 0) {
+                return;
+            }
+
+            if (candidateKeys != null) {
+                candidateKeys[candidateCount] = key;
+                candidateTieKeys[candidateCount] = tieKey;
+                candidateCounts[candidateCount++] = count;
+            } else {
+                int bucket = (int) (offset >>> shift);
+                pages[bucket]++;
+                accesses[bucket] += count;
+            }
+        }
+
+        // Narrow the range down to the bucket of the N-th page, or select among the candidates
+        void resolve(int candidateLimit) {
+            if (candidateKeys != null) {
+                selectSmallest((int) needed);
+                for (int i = 0; i < needed; i++) {
+                    accessSum += candidateCounts[i];
+                }
+                done = true;
+                return;
+            }
+
+            int bucket = 0;
+            while (pages[bucket] < needed) {
+                needed -= pages[bucket];
+                accessSum += accesses[bucket];
+                bucket++;
+            }
+            if (pages[bucket] == needed) {
+                accessSum += accesses[bucket];
+                done = true;
+                return;
+            }
+
+            long bucketLow = low + ((long) bucket << shift);
+            long rangeLeft = low + width - bucketLow;
+            long bucketWidth = shift == 0 ? 0 : (1L << shift) - 1;
+            low = bucketLow;
+            width = Long.compareUnsigned(bucketWidth, rangeLeft) < 0 ? bucketWidth : rangeLeft;
+
+            if (pages[bucket] <= candidateLimit) {
+                int count = (int) pages[bucket];
+                candidateKeys = new long[count];
+                candidateTieKeys = new long[count];
+                candidateCounts = new long[count];
+            } else if (width == 0 && !tieBreaking) {
+                // A single policy key left: narrow on the tie-break key, over its whole range
+                tieBreaking = true;
+                fixedKey = low ^ Long.MIN_VALUE;
+                low = 0;
+                width = -1L;
+            }
+            setShift();
+            Arrays.fill(pages, 0L);
+            Arrays.fill(accesses, 0L);
+        }
+
+        // Move the k smallest candidates, by key then tie-break key, to the front
+        private void selectSmallest(int k) {
+            int left = 0;
+            int right = candidateCount - 1;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                long pivotKey = candidateKeys[mid];
+                long pivotTieKey = candidateTieKeys[mid];
+                int i = left;
+                int j = right;
+                while (i <= j) {
+                    while (less(candidateKeys[i], candidateTieKeys[i], pivotKey, pivotTieKey)) {
+                        i++;
+                    }
+                    while (less(pivotKey, pivotTieKey, candidateKeys[j], candidateTieKeys[j])) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (k <= j) {
+                    right = j;
+                } else if (k >= i) {
+                    left = i;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        private static boolean less(long key, long tieKey, long otherKey, long otherTieKey) {
+            return key != otherKey ? key < otherKey : tieKey < otherTieKey;
+        }
+
+        private void swap(int a, int b) {
+            long key = candidateKeys[a];
+            candidateKeys[a] = candidateKeys[b];
+            candidateKeys[b] = key;
+            long tieKey = candidateTieKeys[a];
+            candidateTieKeys[a] = candidateTieKeys[b];
+            candidateTieKeys[b] = tieKey;
+            long count = candidateCounts[a];
+            candidateCounts[a] = candidateCounts[b];
+            candidateCounts[b] = count;
+        }
+    }
+}
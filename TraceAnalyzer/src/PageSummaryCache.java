@@ -0,0 +1,173 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Persistent per-interval page summaries of one analysis configuration.
+ *
+ * After an interval is merged, its compact page summary (page ID, access
+ * count, first access tick, PTS sub-interval bitset, MicroChronos
+ * sub-interval and ranking policy state of every page) is appended to a
+ * cache file. A later run with the same trace directory, analyzed range,
+ * interval window, sub-interval duration and ranking policies finds that
+ * file and ranks every interval straight from it, without scanning the trace
+ * at all.
+ *
+ * Cache files are named after the trace directory and a hash of a key
+ * describing the configuration, and the full key is stored in the file to
+ * be checked on load. The key includes the name, size and modification time
+ * of every trace file, so a changed trace invalidates its summaries. A file
+ * only appears under its final name once all its intervals were written.
+ */
+public class PageSummaryCache implements Closeable {
+
+    private static final long MAGIC = 0x314D55534D54504DL; // "MPTMSUM1"
+
+    private final File file;
+    private final File tempFile;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    // Bounds of the interval returned by the last nextInterval()
+    private long intervalStart;
+    private long intervalEnd;
+
+    private PageSummaryCache(File file, File tempFile, DataInputStream in, DataOutputStream out) {
+        this.file = file;
+        this.tempFile = tempFile;
+        this.in = in;
+        this.out = out;
+    }
+
+    // Key of an analysis configuration: anything that changes the summaries
+    public static String getKey(File traceDir, List<File> traceFiles, long analysisStartTimestamp,
+            long analysisEndTimestamp, long intervalWindowTicks, long ptsWindowTicks, List<RankingPolicy> policies,
+            double sampleRate) throws IOException {
+        List<File> files = new ArrayList<>(traceFiles);
+        files.sort(Comparator.comparing(File::getName));
+
+        StringBuilder key = new StringBuilder(traceDir.getCanonicalPath());
+        key.append('|').append(analysisStartTimestamp).append('|').append(analysisEndTimestamp)
+                .append('|').append(intervalWindowTicks).append('|').append(ptsWindowTicks);
+        // Sampled summaries only hold the sampled pages
+        if (sampleRate < 1) {
+            key.append("|sample:").append(sampleRate);
+        }
+        // Policies with their own state store it in the summaries
+        for (RankingPolicy policy : policies) {
+            key.append('|').append(policy.getName());
+        }
+        for (File file : files) {
+            key.append('|').append(file.getName()).append(':').append(file.length())
+                    .append(':').append(file.lastModified());
+        }
+        return key.toString();
+    }
+
+    public static File getFile(File cacheDir, File traceDir, String key) {
+        // 64-bit FNV-1a of the key
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return new File(cacheDir, traceDir.getAbsoluteFile().getName() + "-" + String.format("%016x", hash) + ".summary");
+    }
+
+    // Cached summaries of the configuration, or null if there are none or they are stale
+    public static PageSummaryCache open(File file, String key) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readLong() == MAGIC && readKey(in).equals(key)) {
+                return new PageSummaryCache(file, null, in, null);
+            }
+        } catch (EOFException e) {
+            // Truncated or foreign file: ignore it like a stale one
+        }
+        in.close();
+        return null;
+    }
+
+    // Start writing the summaries of the configuration; they replace any
+    // existing ones when the cache is committed
+    public static PageSummaryCache create(File file, String key) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+
+        // Write to a temporary file first so a concurrent or aborted run never leaves a partial cache
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+        out.writeLong(MAGIC);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        return new PageSummaryCache(file, tempFile, null, out);
+    }
+
+    // The key has an entry per trace file, so it may not fit writeUTF()
+    private static String readKey(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 1 << 26) {
+            return "";
+        }
+        byte[] keyBytes = new byte[length];
+        in.readFully(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    public void writeInterval(long intervalStart, long intervalEnd, PageTable pageTable) throws IOException {
+        out.writeBoolean(true);
+        out.writeLong(intervalStart);
+        out.writeLong(intervalEnd);
+        pageTable.writeTo(out);
+    }
+
+    // Mark the summaries complete and move them to their final name
+    public void commit() throws IOException {
+        out.writeBoolean(false);
+        out.close();
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    // Move to the next cached interval; false after the last one
+    public boolean nextInterval() throws IOException {
+        if (!in.readBoolean()) {
+            return false;
+        }
+        intervalStart = in.readLong();
+        intervalEnd = in.readLong();
+        return true;
+    }
+
+    public long getIntervalStart() {
+        return intervalStart;
+    }
+
+    public long getIntervalEnd() {
+        return intervalEnd;
+    }
+
+    // Load the pages of the current cached interval into the table
+    public void readPageTable(PageTable pageTable) throws IOException {
+        pageTable.readFrom(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        if (out != null) {
+            out.close();
+            // Not committed: drop the partial summaries
+            tempFile.delete();
+        }
+    }
+}
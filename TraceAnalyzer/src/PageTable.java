@@ -0,0 +1,631 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-interval page statistics keyed by primitive page ID.
+ *
+ * Pages are stored densely in insertion order across parallel primitive
+ * arrays (struct-of-arrays), with an open-addressing index mapping a page ID
+ * to its dense entry. Recording an access allocates nothing, and the storage
+ * is kept and reused across intervals by {@link #reset(int)}.
+ *
+ * PTS sub-intervals in which a page was accessed are tracked as a bitset of
+ * {@code ptsWords} longs per page, and the state of the ranking policies
+ * that keep their own (see {@link RankingPolicy}) in a block of longs per
+ * page, each policy at a fixed offset in the block. Not thread-safe: each worker aggregates
+ * into its own table and tables are combined with {@link #mergeFrom(PageTable)}.
+ *
+ * A table can be bounded to a number of pages ({@link #setMaxPages(int)}).
+ * When it is full, it keeps half of them: every policy keeps the pages it
+ * ranks hottest, as many for each policy as fit together, and the rest are
+ * dropped. A dropped page that is accessed again starts over. Next to the
+ * access counts, each page then has a Misra-Gries counter, by which the
+ * access count policy's share is kept: the largest counter dropped is
+ * subtracted from every counter, and summed up as {@link #getCountError()}.
+ * Access counts are lower bounds, short of the true counts by at most the
+ * count error, any page not in the table was accessed at most that many
+ * times, and the number of distinct pages is estimated.
+ */
+public class PageTable {
+
+    private static final int EMPTY = -1;
+    private static final int DEFAULT_CAPACITY = 1 << 12;
+
+    // Open-addressing index: slot -> dense entry index, or EMPTY
+    private int[] slots;
+    private int slotMask;
+
+    // Dense per-page statistics, valid for entries [0, size)
+    private long[] pageIds;
+    private long[] accessCounts;
+    private long[] firstAccessTimes;
+    private int[] ptsScores;
+    private int[] microChronosIndexes;
+    private long[] ptsBits;
+    private int ptsWords;
+    private int size;
+
+    private long totalAccessCount;
+
+    // Bounded tables only: page bound (0 if unbounded), Misra-Gries counters
+    // and the sum of the counts subtracted from them, distinct pages, and the
+    // ranking and scratch space of pruning
+    private int maxPages;
+    private long[] summaryCounts;
+    private long countError;
+    private DistinctCounter distinctPages;
+    private RankingEngine pruneEngine;
+    private int[] pruneEntries;
+    private byte[] pruneSteps;
+
+    // Pruning keeps every policy's hottest pages in this many steps, from an
+    // equal share of the kept pages each to all of them, up to the last step
+    // whose pages fit
+    private static final int PRUNE_STEPS = 32;
+
+    // The policies, in the order of their state offsets; pruning ranks by the
+    // same, except for the access count policy, by the Misra-Gries counters
+    private final List<RankingPolicy> policies;
+
+    // Per-page policy state: stateSize longs per entry, policy p's at stateOffsets[p]
+    private final RankingPolicy[] statefulPolicies;
+    private final int[] statefulOffsets;
+    private final int[] stateOffsets;
+    private final int stateSize;
+    private long[] policyStates;
+    private long[] entryStates; // Policy state of a page read by mergeEntry()
+
+    public PageTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PageTable(int expectedPages) {
+        this(expectedPages, RankingPolicies.builtIn());
+    }
+
+    public PageTable(List<RankingPolicy> policies) {
+        this(DEFAULT_CAPACITY, policies);
+    }
+
+    public PageTable(int expectedPages, List<RankingPolicy> policies) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(expectedPages, 8) - 1) << 1);
+        this.slots = new int[capacity * 2];
+        this.slotMask = slots.length - 1;
+        Arrays.fill(slots, EMPTY);
+
+        this.pageIds = new long[capacity];
+        this.accessCounts = new long[capacity];
+        this.firstAccessTimes = new long[capacity];
+        this.ptsScores = new int[capacity];
+        this.microChronosIndexes = new int[capacity];
+        this.ptsWords = 1;
+        this.ptsBits = new long[capacity];
+
+        this.policies = policies;
+        this.stateOffsets = new int[policies.size()];
+        int statefulCount = 0;
+        int offset = 0;
+        for (int p = 0; p < policies.size(); p++) {
+            stateOffsets[p] = offset;
+            offset += policies.get(p).getStateSize();
+            if (policies.get(p).getStateSize() > 0) {
+                statefulCount++;
+            }
+        }
+        this.stateSize = offset;
+        this.policyStates = new long[capacity * stateSize];
+        this.statefulPolicies = new RankingPolicy[statefulCount];
+        this.statefulOffsets = new int[statefulCount];
+        for (int p = 0, i = 0; p < policies.size(); p++) {
+            if (policies.get(p).getStateSize() > 0) {
+                statefulPolicies[i] = policies.get(p);
+                statefulOffsets[i++] = stateOffsets[p];
+            }
+        }
+    }
+
+    // Clear all pages, keeping the allocated storage for the next interval
+    public void reset(int ptsSubIntervalCount) {
+        Arrays.fill(slots, EMPTY);
+
+        int words = Math.max(1, (ptsSubIntervalCount + 63) >>> 6);
+        if (words != ptsWords) {
+            ptsWords = words;
+            ptsBits = new long[pageIds.length * ptsWords];
+        } else {
+            Arrays.fill(ptsBits, 0, size * ptsWords, 0L);
+        }
+
+        size = 0;
+        totalAccessCount = 0;
+        countError = 0;
+        if (distinctPages != null) {
+            distinctPages.clear();
+        }
+    }
+
+    // Bound the table to maxPages pages, a power of two of at least 16
+    public void setMaxPages(int maxPages) {
+        if (maxPages < 16 || Integer.bitCount(maxPages) != 1) {
+            throw new IllegalArgumentException("Page bound must be a power of two of at least 16: " + maxPages);
+        }
+        this.maxPages = maxPages;
+        if (distinctPages == null) {
+            distinctPages = new DistinctCounter();
+            summaryCounts = Arrays.copyOf(accessCounts, pageIds.length);
+            List<RankingPolicy> prunePolicies = new ArrayList<>(policies);
+            prunePolicies.replaceAll(policy -> policy == RankingPolicies.BuiltIn.TOTAL_ACCESS ? SUMMARY_COUNT : policy);
+            pruneEngine = new RankingEngine(null, prunePolicies);
+        }
+    }
+
+    // Ranks by the Misra-Gries counters, in place of the access counts when pruning
+    private static final RankingPolicy SUMMARY_COUNT = new RankingPolicy() {
+        @Override
+        public String getName() {
+            return "summary_count";
+        }
+
+        @Override
+        public String getLabel() {
+            return "Summary count";
+        }
+
+        @Override
+        public long getRankKey(PageTable table, int entry, long[] state, int offset) {
+            return -table.summaryCounts[entry];
+        }
+    };
+
+    // Bytes of the storage of a page, given the number of PTS sub-intervals and the policies
+    public static long getBytesPerPage(int ptsSubIntervalCount, List<RankingPolicy> policies) {
+        // ID, count, first access, two ints, PTS bitset and two index slots
+        long bytes = 8 * 3 + 4 * 2 + 8L * Math.max(1, (ptsSubIntervalCount + 63) >>> 6) + 4 * 2;
+        for (RankingPolicy policy : policies) {
+            bytes += 8L * policy.getStateSize();
+        }
+        return bytes;
+    }
+
+    // Bytes of the storage of a page of a bounded table
+    public static long getBoundedBytesPerPage(int ptsSubIntervalCount, List<RankingPolicy> policies) {
+        // Misra-Gries counter, and the pruning's keys and order per policy,
+        // tie-break key, entries and steps
+        return getBytesPerPage(ptsSubIntervalCount, policies) + 8 + 12L * policies.size() + 8 + 4 + 1;
+    }
+
+    public void recordAccess(long pageId, long timestamp, int ptsSubIntervalIndex, int microChronosIndex) {
+        int entry = findOrInsert(pageId);
+
+        accessCounts[entry]++;
+        totalAccessCount++;
+        if (summaryCounts != null) {
+            summaryCounts[entry]++;
+            distinctPages.add(pageId);
+        }
+
+        if (timestamp < firstAccessTimes[entry]) {
+            firstAccessTimes[entry] = timestamp;
+        }
+
+        // Only count a PTS sub-interval the first time the page is seen in it
+        int word = entry * ptsWords + (ptsSubIntervalIndex >>> 6);
+        long bit = 1L << ptsSubIntervalIndex;
+        if ((ptsBits[word] & bit) == 0) {
+            ptsBits[word] |= bit;
+            ptsScores[entry]++;
+        }
+
+        // Keep the earliest MicroChronos sub-interval
+        if (microChronosIndex < microChronosIndexes[entry]) {
+            microChronosIndexes[entry] = microChronosIndex;
+        }
+
+        for (int i = 0; i < statefulPolicies.length; i++) {
+            statefulPolicies[i].recordAccess(policyStates, entry * stateSize + statefulOffsets[i], timestamp,
+                    ptsSubIntervalIndex);
+        }
+    }
+
+    // Fold another table's pages into this one (sums, minima and PTS bitset union)
+    public void mergeFrom(PageTable other) {
+        aggregateFrom(other, 0);
+    }
+
+    // Fold another table's pages into this one as pages 2^pageShiftDelta times
+    // larger: every statistic of a large page is the merge of its small pages'
+    public void aggregateFrom(PageTable other, int pageShiftDelta) {
+        for (int i = 0; i < other.size; i++) {
+            int entry = findOrInsert(other.pageIds[i] >>> pageShiftDelta);
+
+            accessCounts[entry] += other.accessCounts[i];
+            if (summaryCounts != null) {
+                summaryCounts[entry] += other.summaryCounts != null ? other.summaryCounts[i] : other.accessCounts[i];
+            }
+
+            if (other.firstAccessTimes[i] < firstAccessTimes[entry]) {
+                firstAccessTimes[entry] = other.firstAccessTimes[i];
+            }
+
+            if (other.microChronosIndexes[i] < microChronosIndexes[entry]) {
+                microChronosIndexes[entry] = other.microChronosIndexes[i];
+            }
+
+            int score = 0;
+            int base = entry * ptsWords;
+            int otherBase = i * other.ptsWords;
+            for (int w = 0; w < ptsWords; w++) {
+                if (w < other.ptsWords) {
+                    ptsBits[base + w] |= other.ptsBits[otherBase + w];
+                }
+                score += Long.bitCount(ptsBits[base + w]);
+            }
+            ptsScores[entry] = score;
+
+            for (int p = 0; p < statefulPolicies.length; p++) {
+                statefulPolicies[p].mergeState(policyStates, entry * stateSize + statefulOffsets[p],
+                        other.policyStates, i * other.stateSize + other.statefulOffsets[p]);
+            }
+        }
+
+        totalAccessCount += other.totalAccessCount;
+        countError += other.countError;
+        if (distinctPages != null && other.distinctPages != null && pageShiftDelta == 0) {
+            distinctPages.mergeFrom(other.distinctPages);
+        }
+    }
+
+    // Write the pages of the table: page ID, access count, first access time,
+    // MicroChronos sub-interval, PTS bitset and policy state of each page
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(ptsWords);
+        out.writeInt(stateSize);
+        out.writeLong(totalAccessCount);
+        for (int entry = 0; entry < size; entry++) {
+            out.writeLong(pageIds[entry]);
+            out.writeLong(accessCounts[entry]);
+            out.writeLong(firstAccessTimes[entry]);
+            out.writeInt(microChronosIndexes[entry]);
+            for (int w = 0; w < ptsWords; w++) {
+                out.writeLong(ptsBits[entry * ptsWords + w]);
+            }
+            for (int i = 0; i < stateSize; i++) {
+                out.writeLong(policyStates[entry * stateSize + i]);
+            }
+        }
+    }
+
+    // Replace the pages of the table with ones written by writeTo(), keeping
+    // the allocated storage; PTS scores are recomputed from the bitsets
+    public void readFrom(DataInputStream in) throws IOException {
+        int pages = in.readInt();
+        int words = in.readInt();
+        int policyStateSize = in.readInt();
+        if (pages < 0 || words < 1 || policyStateSize != stateSize) {
+            throw new IOException("Corrupt page table");
+        }
+        reset(words << 6);
+        while (pageIds.length < pages) {
+            grow();
+        }
+
+        totalAccessCount = in.readLong();
+        for (int i = 0; i < pages; i++) {
+            int entry = findOrInsert(in.readLong());
+            accessCounts[entry] = in.readLong();
+            if (summaryCounts != null) {
+                summaryCounts[entry] = accessCounts[entry];
+            }
+            firstAccessTimes[entry] = in.readLong();
+            microChronosIndexes[entry] = in.readInt();
+            int score = 0;
+            for (int w = 0; w < ptsWords; w++) {
+                long bits = in.readLong();
+                ptsBits[entry * ptsWords + w] = bits;
+                score += Long.bitCount(bits);
+            }
+            ptsScores[entry] = score;
+            for (int j = 0; j < stateSize; j++) {
+                policyStates[entry * stateSize + j] = in.readLong();
+            }
+        }
+    }
+
+    // Bytes of a page written by writeEntry()
+    public int getEntryBytes() {
+        return 8 * 3 + 4 + 8 * ptsWords + 8 * stateSize;
+    }
+
+    // Write the statistics of a page, in the format of writeTo()
+    public void writeEntry(int entry, ByteBuffer out) {
+        out.putLong(pageIds[entry]);
+        out.putLong(accessCounts[entry]);
+        out.putLong(firstAccessTimes[entry]);
+        out.putInt(microChronosIndexes[entry]);
+        for (int w = 0; w < ptsWords; w++) {
+            out.putLong(ptsBits[entry * ptsWords + w]);
+        }
+        for (int i = 0; i < stateSize; i++) {
+            out.putLong(policyStates[entry * stateSize + i]);
+        }
+    }
+
+    // Fold a page written by writeEntry() of a table with the same PTS
+    // sub-intervals and policies into this one, like mergeFrom()
+    public void mergeEntry(ByteBuffer in) {
+        int entry = findOrInsert(in.getLong());
+
+        long accessCount = in.getLong();
+        accessCounts[entry] += accessCount;
+        totalAccessCount += accessCount;
+
+        long firstAccessTime = in.getLong();
+        if (firstAccessTime < firstAccessTimes[entry]) {
+            firstAccessTimes[entry] = firstAccessTime;
+        }
+
+        int microChronosIndex = in.getInt();
+        if (microChronosIndex < microChronosIndexes[entry]) {
+            microChronosIndexes[entry] = microChronosIndex;
+        }
+
+        int score = 0;
+        for (int w = 0; w < ptsWords; w++) {
+            ptsBits[entry * ptsWords + w] |= in.getLong();
+            score += Long.bitCount(ptsBits[entry * ptsWords + w]);
+        }
+        ptsScores[entry] = score;
+
+        if (stateSize > 0) {
+            if (entryStates == null) {
+                entryStates = new long[stateSize];
+            }
+            for (int i = 0; i < stateSize; i++) {
+                entryStates[i] = in.getLong();
+            }
+            for (int p = 0; p < statefulPolicies.length; p++) {
+                statefulPolicies[p].mergeState(policyStates, entry * stateSize + statefulOffsets[p],
+                        entryStates, statefulOffsets[p]);
+            }
+        }
+    }
+
+    // Entry of the page, or -1 if it was not accessed
+    public int indexOf(long pageId) {
+        int slot = hash(pageId) & slotMask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (pageIds[entry] == pageId) {
+                return entry;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private int findOrInsert(long pageId) {
+        int slot = hash(pageId) & slotMask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == EMPTY) {
+                break;
+            }
+            if (pageIds[entry] == pageId) {
+                return entry;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+
+        if (maxPages > 0 && size >= maxPages) {
+            prune();
+            return findOrInsert(pageId);
+        }
+        if (size == pageIds.length) {
+            grow();
+            return findOrInsert(pageId);
+        }
+
+        int entry = size++;
+        slots[slot] = entry;
+        pageIds[entry] = pageId;
+        accessCounts[entry] = 0;
+        if (summaryCounts != null) {
+            summaryCounts[entry] = 0;
+        }
+        firstAccessTimes[entry] = Long.MAX_VALUE;
+        ptsScores[entry] = 0;
+        microChronosIndexes[entry] = Integer.MAX_VALUE;
+        if (stateSize > 0) {
+            Arrays.fill(policyStates, entry * stateSize, (entry + 1) * stateSize, 0L);
+        }
+        return entry;
+    }
+
+    // Double the dense storage and rebuild the index; only happens while the
+    // table is still warming up to the largest interval seen so far
+    private void grow() {
+        int capacity = pageIds.length * 2;
+        pageIds = Arrays.copyOf(pageIds, capacity);
+        accessCounts = Arrays.copyOf(accessCounts, capacity);
+        if (summaryCounts != null) {
+            summaryCounts = Arrays.copyOf(summaryCounts, capacity);
+        }
+        firstAccessTimes = Arrays.copyOf(firstAccessTimes, capacity);
+        ptsScores = Arrays.copyOf(ptsScores, capacity);
+        microChronosIndexes = Arrays.copyOf(microChronosIndexes, capacity);
+        ptsBits = Arrays.copyOf(ptsBits, capacity * ptsWords);
+        policyStates = Arrays.copyOf(policyStates, capacity * stateSize);
+
+        slots = new int[capacity * 2];
+        slotMask = slots.length - 1;
+        rebuildIndex();
+    }
+
+    // Pruning of a full bounded table, down to at most maxPages / 2 pages:
+    // the pages every policy ranks hottest, in the largest of PRUNE_STEPS
+    // ascending shares that fit together. The largest Misra-Gries counter
+    // dropped is subtracted from the kept ones. The access count policy's share
+    // is at least maxPages / 2 / policies pages, all with counters of at least
+    // that much, so the count error grows by at most the interval's accesses
+    // divided by that share.
+    private void prune() {
+        int kept = maxPages / 2;
+        int share = Math.max(1, kept / policies.size());
+        int[] steps = new int[PRUNE_STEPS];
+        for (int j = 0; j < PRUNE_STEPS; j++) {
+            steps[j] = share + (int) ((long) (kept - share) * j / (PRUNE_STEPS - 1));
+        }
+        if (pruneEntries == null || pruneEntries.length < kept) {
+            pruneEntries = new int[kept];
+        }
+        if (pruneSteps == null || pruneSteps.length < size) {
+            pruneSteps = new byte[pageIds.length];
+        }
+
+        // Earliest step at which any policy ranks each page hottest
+        Arrays.fill(pruneSteps, 0, size, (byte) PRUNE_STEPS);
+        for (int p = 0; p < policies.size(); p++) {
+            pruneEngine.getTopAccessCurve(this, p, steps);
+            pruneEngine.copyTopEntries(p, kept, pruneEntries);
+            for (int i = 0, j = 0; i < kept; i++) {
+                while (i >= steps[j]) {
+                    j++;
+                }
+                int entry = pruneEntries[i];
+                if (j < pruneSteps[entry]) {
+                    pruneSteps[entry] = (byte) j;
+                }
+            }
+        }
+
+        // Last step whose pages fit
+        int[] stepCounts = new int[PRUNE_STEPS + 1];
+        for (int entry = 0; entry < size; entry++) {
+            stepCounts[pruneSteps[entry]]++;
+        }
+        int lastStep = 0;
+        for (int j = 0, count = 0; j < PRUNE_STEPS; j++) {
+            count += stepCounts[j];
+            if (count > kept) {
+                break;
+            }
+            lastStep = j;
+        }
+
+        long threshold = 0;
+        for (int entry = 0; entry < size; entry++) {
+            if (pruneSteps[entry] > lastStep) {
+                threshold = Math.max(threshold, summaryCounts[entry]);
+            }
+        }
+
+        int count = 0;
+        for (int entry = 0; entry < size; entry++) {
+            if (pruneSteps[entry] > lastStep) {
+                continue;
+            }
+            if (count != entry) {
+                pageIds[count] = pageIds[entry];
+                accessCounts[count] = accessCounts[entry];
+                firstAccessTimes[count] = firstAccessTimes[entry];
+                ptsScores[count] = ptsScores[entry];
+                microChronosIndexes[count] = microChronosIndexes[entry];
+                System.arraycopy(ptsBits, entry * ptsWords, ptsBits, count * ptsWords, ptsWords);
+                System.arraycopy(policyStates, entry * stateSize, policyStates, count * stateSize, stateSize);
+            }
+            summaryCounts[count++] = Math.max(0, summaryCounts[entry] - threshold);
+        }
+        Arrays.fill(ptsBits, count * ptsWords, size * ptsWords, 0L);
+        size = count;
+        countError += threshold;
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(slots, EMPTY);
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hash(pageIds[entry]) & slotMask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = entry;
+        }
+    }
+
+    private static int hash(long pageId) {
+        return (int) mix(pageId);
+    }
+
+    // Murmur3 finalizer: page IDs are highly sequential, so spread them out
+    public static long mix(long pageId) {
+        long h = pageId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Number of distinct pages in the table
+    public int size() {
+        return size;
+    }
+
+    public long getTotalAccessCount() {
+        return totalAccessCount;
+    }
+
+    // Page bound of the table, or 0 if unbounded
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    // Number of distinct pages accessed: size() unless a bounded table dropped
+    // pages, in which case it is estimated
+    public long getDistinctPageCount() {
+        return countError == 0 ? size : Math.max(size, distinctPages.estimate());
+    }
+
+    // Most accesses an access count may be short of, and most accesses of a
+    // page not in the table; 0 unless a bounded table dropped pages
+    public long getCountError() {
+        return countError;
+    }
+
+    public long getPageId(int entry) {
+        return pageIds[entry];
+    }
+
+    public long getAccessCount(int entry) {
+        return accessCounts[entry];
+    }
+
+    public long getFirstAccessTime(int entry) {
+        return firstAccessTimes[entry];
+    }
+
+    public int getPTSScore(int entry) {
+        return ptsScores[entry];
+    }
+
+    public int getMicroChronosIntervalIndex(int entry) {
+        return microChronosIndexes[entry];
+    }
+
+    // State of all policies, see getStateOffset()
+    public long[] getPolicyStates() {
+        return policyStates;
+    }
+
+    // Offset of the state of the policy at the given index of the table's policies, for the entry
+    public int getStateOffset(int policy, int entry) {
+        return entry * stateSize + stateOffsets[policy];
+    }
+}
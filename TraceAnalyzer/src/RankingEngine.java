@@ -0,0 +1,238 @@
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Computes, for every page-ranking policy, the sum of the access counts of
+ * the top N pages of an interval.
+ *
+ * Only the membership of the top N matters for the hit ratio, not their
+ * order, so each policy runs a quickselect over primitive key arrays instead
+ * of sorting every page. Several N can be selected in one multi-select pass,
+ * which yields a whole hit-ratio-vs-capacity curve. Pages are ordered by the policy's key, hottest
+ * first, with ties broken by a hash of the page ID. The hash is a bijection,
+ * so the order is total and the selected set is deterministic.
+ *
+ * The policies (see {@link RankingPolicy}) are selected in parallel. Key
+ * arrays are kept and reused across intervals.
+ */
+public class RankingEngine {
+
+    private final ForkJoinPool pool;
+
+    // Policies in the order of the tables' policies
+    private final RankingPolicy[] policies;
+
+    // Per-policy sort keys (lower is hotter) and entry order, plus the shared tie-break keys
+    private final long[][] keys;
+    private final int[][] orders;
+    private long[] tieKeys = new long[0];
+
+    public RankingEngine(ForkJoinPool pool) {
+        this(pool, RankingPolicies.builtIn());
+    }
+
+    public RankingEngine(ForkJoinPool pool, List<RankingPolicy> policies) {
+        this.pool = pool;
+        this.policies = policies.toArray(new RankingPolicy[0]);
+        this.keys = new long[this.policies.length][0];
+        this.orders = new int[this.policies.length][0];
+    }
+
+    // Access count sum of the top N pages of the table for each policy, indexed like the policies
+    public long[] getTopAccessCounts(PageTable table, int topN) {
+        long[][] curves = getTopAccessCurves(table, new int[] { topN });
+        long[] topAccessCounts = new long[policies.length];
+        for (int p = 0; p < policies.length; p++) {
+            topAccessCounts[p] = curves[p][0];
+        }
+        return topAccessCounts;
+    }
+
+    // Access count sums of the top topNs[j] pages for each policy, indexed by
+    // [policy][j]. topNs must be in ascending order.
+    public long[][] getTopAccessCurves(PageTable table, int[] topNs) {
+        int size = prepare(table);
+
+        long[][] curves = new long[policies.length][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[policies.length];
+        for (int policy = 0; policy < policies.length; policy++) {
+            int p = policy;
+            tasks[p] = pool.submit(() -> {
+                fillKeys(p, table, keys[p], size);
+                curves[p] = selectTopAccessCounts(table, keys[p], orders[p], size, topNs);
+            });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        return curves;
+    }
+
+    // Access count sums of the top topNs[j] pages for a single policy, on the calling thread
+    public long[] getTopAccessCurve(PageTable table, int policy, int[] topNs) {
+        int size = prepare(table);
+        fillKeys(policy, table, keys[policy], size);
+        return selectTopAccessCounts(table, keys[policy], orders[policy], size, topNs);
+    }
+
+    // Copy the entries of the top N pages of a policy, as selected by the last
+    // getTopAccessCounts(table, topN) call, into entries
+    public void copyTopEntries(int policy, int topN, int[] entries) {
+        System.arraycopy(orders[policy], 0, entries, 0, topN);
+    }
+
+    // Rank key and tie-break key of an entry of the last ranked table, in the
+    // order pages are ranked by: the key first, then the tie-break key
+    public long getRankKey(int policy, int entry) {
+        return keys[policy][entry];
+    }
+
+    public long getTieKey(int entry) {
+        return tieKeys[entry];
+    }
+
+    // Sum of the squared access counts of the top N pages of every policy, as
+    // selected by the last getTopAccessCounts(table, topN) call
+    public double[] getTopSquaredAccessCounts(PageTable table, int topN) {
+        int count = Math.min(topN, table.size());
+        double[] sums = new double[policies.length];
+        for (int p = 0; p < policies.length; p++) {
+            for (int i = 0; i < count; i++) {
+                double accessCount = table.getAccessCount(orders[p][i]);
+                sums[p] += accessCount * accessCount;
+            }
+        }
+        return sums;
+    }
+
+    // Rearrange entries[0, count) of the last ranked table so that the first k
+    // are the hottest of them for the policy
+    public void selectHottest(int policy, int[] entries, int count, int k) {
+        if (k > 0 && k < count) {
+            multiSelect(keys[policy], entries, 0, count - 1, new int[] { k }, 0, 1);
+        }
+    }
+
+    // Size the key arrays for the table and compute its tie-break keys
+    private int prepare(PageTable table) {
+        int size = table.size();
+        ensureCapacity(size);
+
+        for (int entry = 0; entry < size; entry++) {
+            tieKeys[entry] = PageTable.mix(table.getPageId(entry));
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int size) {
+        if (tieKeys.length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, tieKeys.length * 2);
+        tieKeys = new long[capacity];
+        for (int p = 0; p < policies.length; p++) {
+            keys[p] = new long[capacity];
+            orders[p] = new int[capacity];
+        }
+    }
+
+    private void fillKeys(int policy, PageTable table, long[] key, int size) {
+        RankingPolicy rankingPolicy = policies[policy];
+        long[] states = table.getPolicyStates();
+        for (int entry = 0; entry < size; entry++) {
+            key[entry] = rankingPolicy.getRankKey(table, entry, states, table.getStateOffset(policy, entry));
+        }
+    }
+
+    private long[] selectTopAccessCounts(PageTable table, long[] key, int[] order, int size, int[] topNs) {
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // Clamp the requested sizes to the number of pages
+        int[] ks = new int[topNs.length];
+        for (int j = 0; j < topNs.length; j++) {
+            ks[j] = Math.min(topNs[j], size);
+        }
+        multiSelect(key, order, 0, size - 1, ks, 0, ks.length);
+
+        // order[0..ks[j]) now holds the ks[j] hottest pages for every j, so one
+        // prefix sum over the largest of them yields every requested total
+        long[] sums = new long[ks.length];
+        long sum = 0;
+        int next = 0;
+        for (int j = 0; j < ks.length; j++) {
+            for (; next < ks[j]; next++) {
+                sum += table.getAccessCount(order[next]);
+            }
+            sums[j] = sum;
+        }
+        return sums;
+    }
+
+    // Rearrange order[from..to] so that, for every k in ks[kFrom..kTo), the
+    // entries before position k are the k hottest ones. Only partitions that
+    // contain a requested position are refined further.
+    private void multiSelect(long[] key, int[] order, int from, int to, int[] ks, int kFrom, int kTo) {
+        while (from < to && kFrom < kTo) {
+            int mid = (from + to) >>> 1;
+            // Median of three as pivot, to avoid quadratic behaviour on presorted keys
+            if (less(key, order[mid], order[from])) {
+                swap(order, mid, from);
+            }
+            if (less(key, order[to], order[from])) {
+                swap(order, to, from);
+            }
+            if (less(key, order[to], order[mid])) {
+                swap(order, to, mid);
+            }
+            int pivot = order[mid];
+
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (less(key, order[i], pivot)) {
+                    i++;
+                }
+                while (less(key, pivot, order[j])) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(order, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Now order[from..j] <= pivot <= order[i..to]. Positions up to j still
+            // need the left side, positions past i the right side; any position
+            // in between is already a valid boundary.
+            int leftEnd = kFrom;
+            while (leftEnd < kTo && ks[leftEnd] <= j) {
+                leftEnd++;
+            }
+            int rightStart = leftEnd;
+            while (rightStart < kTo && ks[rightStart] <= i) {
+                rightStart++;
+            }
+
+            multiSelect(key, order, from, j, ks, kFrom, leftEnd);
+            from = i;
+            kFrom = rightStart;
+        }
+    }
+
+    private boolean less(long[] key, int a, int b) {
+        if (key[a] != key[b]) {
+            return key[a] < key[b];
+        }
+        return tieKeys[a] < tieKeys[b];
+    }
+
+    private static void swap(int[] order, int a, int b) {
+        int tmp = order[a];
+        order[a] = order[b];
+        order[b] = tmp;
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Registry of the page-ranking policies an analysis can evaluate.
+ *
+ * The four built-in policies are always evaluated, in this order, followed
+ * by the extra policies requested with {@code --policies}, given as
+ * {@code name} or {@code name:parameter}. An extra policy is either one of
+ * the registered names or the class name of a {@link RankingPolicy} with a
+ * public constructor taking no arguments, so new policies can be tried by
+ * putting their class on the classpath.
+ */
+public final class RankingPolicies {
+
+    private RankingPolicies() {
+    }
+
+    // The built-in policies, ranking by the statistics every page table keeps
+    public enum BuiltIn implements RankingPolicy {
+        TOTAL_ACCESS("actual_accesses", "Actual"),
+        FIRST_ACCESS("estimated", "Estimated"),
+        PTS("pts", "PTS"),
+        MICROCHRONOS("microchronos", "MicroChronos");
+
+        private final String name;
+        private final String label;
+
+        BuiltIn(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public long getRankKey(PageTable table, int entry, long[] state, int offset) {
+            switch (this) {
+                case TOTAL_ACCESS:
+                    return -table.getAccessCount(entry);
+                case FIRST_ACCESS:
+                    return table.getFirstAccessTime(entry);
+                case PTS:
+                    return -table.getPTSScore(entry);
+                default:
+                    return table.getMicroChronosIntervalIndex(entry);
+            }
+        }
+    }
+
+    // Extra policies by name; the factory receives the parameter after the colon, or null
+    private static final Map<String, Function<String, RankingPolicy>> FACTORIES = new LinkedHashMap<>();
+
+    static {
+        register("lru", LruKPolicy::new);
+        register("clock", ClockPolicy::new);
+        register("decay", DecayPolicy::new);
+    }
+
+    public static synchronized void register(String name, Function<String, RankingPolicy> factory) {
+        FACTORIES.put(name, factory);
+    }
+
+    public static synchronized Set<String> getNames() {
+        return new LinkedHashSet<>(FACTORIES.keySet());
+    }
+
+    // The built-in policies only
+    public static List<RankingPolicy> builtIn() {
+        return new ArrayList<RankingPolicy>(Arrays.asList(BuiltIn.values()));
+    }
+
+    // New instances of the built-in policies followed by the given extra ones.
+    // Throws IllegalArgumentException for unknown or duplicate policies.
+    public static synchronized List<RankingPolicy> create(List<String> specs) {
+        List<RankingPolicy> policies = builtIn();
+        Set<String> names = new HashSet<>();
+        for (RankingPolicy policy : policies) {
+            names.add(policy.getName());
+        }
+
+        for (String spec : specs) {
+            int colon = spec.indexOf(':');
+            String name = colon < 0 ? spec : spec.substring(0, colon);
+            String parameter = colon < 0 ? null : spec.substring(colon + 1);
+
+            RankingPolicy policy;
+            Function<String, RankingPolicy> factory = FACTORIES.get(name);
+            if (factory != null) {
+                policy = factory.apply(parameter);
+            } else {
+                policy = load(name);
+            }
+
+            if (!names.add(policy.getName())) {
+                throw new IllegalArgumentException("Duplicate ranking policy: " + policy.getName());
+            }
+            policies.add(policy);
+        }
+        return policies;
+    }
+
+    private static RankingPolicy load(String className) {
+        try {
+            Object policy = Class.forName(className).getConstructor().newInstance();
+            if (policy instanceof RankingPolicy) {
+                return (RankingPolicy) policy;
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Reported below like any other unknown name
+        }
+        throw new IllegalArgumentException("Unknown ranking policy: " + className
+                + " (available: " + String.join(", ", FACTORIES.keySet()) + ")");
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * A page-ranking policy: in every interval, the pages it ranks hottest are
+ * the ones assumed to be in DRAM, and its hit ratio is the fraction of the
+ * interval's accesses that go to them.
+ *
+ * A policy ranks pages by a key, lower being hotter, computed from the
+ * statistics every {@link PageTable} keeps (access count, first access time,
+ * PTS score and MicroChronos sub-interval) and from optional state of its
+ * own: {@link #getStateSize()} longs per page, all zero when a page is first
+ * accessed in an interval and updated by {@link #recordAccess} for each of
+ * its accesses. Every registered policy is updated during the same pass over
+ * the trace.
+ *
+ * Accesses are aggregated by several workers in parallel, each into its own
+ * page table and in no particular order, and the tables are merged at the
+ * end of the interval. A policy's state must therefore not depend on the
+ * order or the split of the accesses, and the all-zero state must leave the
+ * other side unchanged in {@link #mergeState}. One instance is shared by all
+ * workers of an analysis configuration, so the update hooks must only read
+ * the fields set by {@link #beginInterval}.
+ *
+ * Policies are created by name through {@link RankingPolicies}.
+ */
+public interface RankingPolicy {
+
+    // Column prefix in the CSV output, e.g. "pts" for pts_dram_hit_ratio
+    String getName();
+
+    // Name in the console output, e.g. "PTS"
+    String getLabel();
+
+    // Longs of state kept per page
+    default int getStateSize() {
+        return 0;
+    }
+
+    // Called before the accesses of every interval are recorded
+    default void beginInterval(long intervalStart, long intervalEnd, long subIntervalDuration) {
+    }
+
+    // Update state[offset, offset + getStateSize()) for one access of the page
+    default void recordAccess(long[] state, int offset, long timestamp, int subIntervalIndex) {
+    }
+
+    // Fold the state of the same page from another table into state[offset, ...)
+    default void mergeState(long[] state, int offset, long[] otherState, int otherOffset) {
+    }
+
+    // Ranking key of a page of the table, lower is hotter; its state is state[offset, ...)
+    long getRankKey(PageTable table, int entry, long[] state, int offset);
+}
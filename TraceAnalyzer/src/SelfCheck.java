@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks of the parts of the analyzer whose results must be exactly those of
+ * another implementation, on random intervals: the top N selection of
+ * spilled intervals against {@link RankingEngine}, the merge of shard
+ * histograms against the unsharded interval, and the records read back from
+ * a compressed trace against those written. Run by {@code make check};
+ * prints the outcome of every check and exits with status 1 if any failed.
+ *
+ * Pages are drawn from a skewed range, so that access counts and the other
+ * rank keys tie often and the tie-break order matters, and every extra
+ * ranking policy is registered, so that policy state is merged too.
+ */
+public class SelfCheck {
+
+    private static final int ROUNDS = 20;
+
+    // Interval of the random accesses, and its sub-interval duration
+    private static final long INTERVAL_START = 1_000_000;
+    private static final long INTERVAL_END = 2_000_000;
+    private static final long SUB_INTERVAL = 100_000;
+
+    private static final double[] DRAM_PERCENTAGES = { 0, 0.001, 0.05, 0.2, 0.5, 0.999, 1 };
+
+    private static final int MAX_SHARDS = 5;
+
+    // Shard windows wide enough to cover every page with single-page bins
+    private static final double FULL_WINDOW_DEVIATIONS = 1e9;
+
+    private static final int CODEC_ROUNDS = 6;
+    private static final int CODEC_SEEKS = 8;
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.out.println("Usage: java SelfCheck [seed]");
+            return;
+        }
+        long seed = args.length == 1 ? Long.parseLong(args[0]) : 1;
+        SplittableRandom random = new SplittableRandom(seed);
+        ForkJoinPool workerPool = new ForkJoinPool(2);
+
+        try {
+            checkSpillSelection(random, workerPool);
+            checkShardMerge(random, workerPool);
+            checkCompressedRoundTrip(random);
+        } catch (IOException e) {
+            e.printStackTrace();
+            failures++;
+        } finally {
+            workerPool.shutdown();
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " checks failed (seed " + seed + ")");
+            System.exit(1);
+        }
+        System.out.println("All checks passed (seed " + seed + ")");
+    }
+
+    // Spilled intervals, merged from many small spills and selected from the
+    // rank file in several narrowing passes, against an in-memory ranking
+    private static void checkSpillSelection(SplittableRandom random, ForkJoinPool workerPool) throws IOException {
+        File directory = Files.createTempDirectory("selfcheck-spill").toFile();
+        List<RankingPolicy> policies = createPolicies();
+        String mismatch = null;
+        try (PageSpill pageSpill = new PageSpill(directory, policies, 16 + random.nextInt(256))) {
+            for (int round = 0; round < ROUNDS && mismatch == null; round++) {
+                long[][] accesses = randomAccesses(random);
+
+                IntervalAnalyzer expected = new IntervalAnalyzer(SUB_INTERVAL, workerPool, policies);
+                record(expected, accesses, 0, 1);
+
+                // A budget of a few pages, so that the worker table spills every 16 pages
+                IntervalAnalyzer spilled = new IntervalAnalyzer(SUB_INTERVAL, workerPool, policies);
+                spilled.enableSpill(pageSpill, 1);
+                record(spilled, accesses, 0, 1);
+
+                for (double dramPercentage : DRAM_PERCENTAGES) {
+                    int topN = TraceAnalyzer.getDRAMPageCount(expected, dramPercentage);
+                    long[] expectedCounts = expected.getTopAccessCounts(topN);
+                    long[] spilledCounts = spilled.getTopAccessCounts(topN);
+                    if (!Arrays.equals(expectedCounts, spilledCounts)) {
+                        mismatch = "round " + round + ", top " + topN + " of " + expected.getTotalPageCount()
+                                + " pages: " + Arrays.toString(spilledCounts) + " instead of "
+                                + Arrays.toString(expectedCounts);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            directory.delete();
+        }
+        report("Spilled top N selection", mismatch);
+    }
+
+    // Histograms of the shards of an interval, merged by ShardCoordinator,
+    // against the unsharded interval: the merged top N access counts must be
+    // exact, or the cutoff reported as falling in a coarse bin, which single
+    // pages covering every shard rule out. Histograms binned around another
+    // DRAM percentage put the cutoff among coarse bins.
+    private static void checkShardMerge(SplittableRandom random, ForkJoinPool workerPool) throws IOException {
+        File directory = Files.createTempDirectory("selfcheck-shards").toFile();
+        List<String> policySpecs = new ArrayList<>(RankingPolicies.getNames());
+        List<RankingPolicy> policies = RankingPolicies.create(policySpecs);
+        ShardHistograms.Bins[][] bins = new ShardHistograms.Bins[policies.size()][MAX_SHARDS];
+        for (ShardHistograms.Bins[] policyBins : bins) {
+            for (int s = 0; s < MAX_SHARDS; s++) {
+                policyBins[s] = new ShardHistograms.Bins();
+            }
+        }
+        String mismatch = null;
+        try {
+            for (int round = 0; round < ROUNDS && mismatch == null; round++) {
+                long[][] accesses = randomAccesses(random);
+                int shardCount = 1 + random.nextInt(MAX_SHARDS);
+                boolean fullWindow = random.nextBoolean();
+                double windowDeviations = fullWindow ? FULL_WINDOW_DEVIATIONS
+                        : ShardHistograms.DEFAULT_WINDOW_DEVIATIONS;
+
+                IntervalAnalyzer expected = new IntervalAnalyzer(SUB_INTERVAL, workerPool, policies);
+                record(expected, accesses, 0, 1);
+
+                for (double dramPercentage : DRAM_PERCENTAGES) {
+                    double binPercentage = fullWindow || random.nextBoolean() ? dramPercentage
+                            : DRAM_PERCENTAGES[random.nextInt(DRAM_PERCENTAGES.length)];
+                    File[] files = new File[shardCount];
+                    for (int s = 0; s < shardCount; s++) {
+                        IntervalAnalyzer shard = new IntervalAnalyzer(SUB_INTERVAL, workerPool, policies);
+                        record(shard, accesses, s, shardCount);
+                        files[s] = ShardHistograms.getFile(directory, "selfcheck", s, shardCount);
+                        ShardHistograms histograms = ShardHistograms.create(files[s], s, shardCount, 0,
+                                "selfcheck", 0, 0, binPercentage, 0, 0, INTERVAL_START, false, policySpecs,
+                                windowDeviations);
+                        try {
+                            histograms.writeInterval(shard);
+                            histograms.commit();
+                        } finally {
+                            histograms.close();
+                        }
+                    }
+                    for (int s = 0; s < shardCount; s++) {
+                        try (ShardHistograms histograms = ShardHistograms.open(files[s])) {
+                            histograms.nextInterval();
+                            for (int p = 0; p < policies.size(); p++) {
+                                histograms.readBins(bins[p][s]);
+                            }
+                        }
+                        files[s].delete();
+                    }
+
+                    int topN = TraceAnalyzer.getDRAMPageCount(expected, dramPercentage);
+                    long[] expectedCounts = expected.getTopAccessCounts(topN);
+                    for (int p = 0; p < policies.size(); p++) {
+                        long merged = ShardCoordinator.getTopAccessCount(Arrays.copyOf(bins[p], shardCount), topN);
+                        if (merged == expectedCounts[p] || (merged < 0 && !fullWindow)) {
+                            continue;
+                        }
+                        mismatch = "round " + round + ", " + policies.get(p).getLabel() + " top " + topN + " of "
+                                + expected.getTotalPageCount() + " pages in " + shardCount + " shards: " + merged
+                                + " instead of " + expectedCounts[p];
+                        break;
+                    }
+                    if (mismatch != null) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            directory.delete();
+        }
+        report("Merged shard top N access counts", mismatch);
+    }
+
+    // Random sorted records, spanning several blocks or exactly filling them,
+    // written to a compressed trace and read back whole and from random seeks
+    private static void checkCompressedRoundTrip(SplittableRandom random) throws IOException {
+        File file = File.createTempFile("selfcheck", ".trace");
+        Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+        String mismatch = null;
+        try {
+            for (int round = 0; round < CODEC_ROUNDS && mismatch == null; round++) {
+                int count = round == 0 ? 1
+                        : round == 1 ? CompressedTraceFormat.BLOCK_RECORDS
+                        : 1 + random.nextInt(3 * CompressedTraceFormat.BLOCK_RECORDS);
+                long[] timestamps = new long[count];
+                long[] addresses = new long[count];
+                char[] accessTypes = new char[count];
+                randomRecords(random, timestamps, addresses, accessTypes);
+
+                try (CompressedTraceWriter writer = new CompressedTraceWriter(file)) {
+                    for (int i = 0; i < count; i++) {
+                        writer.write(timestamps[i], accessTypes[i], addresses[i]);
+                    }
+                }
+
+                TraceFormat.Header header = CompressedTraceFormat.readHeader(file);
+                if (header.getRecordCount() != count || header.getFirstTimestamp() != timestamps[0]
+                        || header.getLastTimestamp() != timestamps[count - 1]) {
+                    mismatch = "round " + round + ": header of " + header.getRecordCount() + " records from "
+                            + header.getFirstTimestamp() + " to " + header.getLastTimestamp() + " instead of "
+                            + count + " from " + timestamps[0] + " to " + timestamps[count - 1];
+                    break;
+                }
+
+                for (int seek = 0; seek <= CODEC_SEEKS && mismatch == null; seek++) {
+                    // First a whole read, then seeks to random timestamps around the records
+                    long timestamp = seek == 0 ? Long.MIN_VALUE
+                            : timestamps[0] - 1 + random.nextLong(timestamps[count - 1] - timestamps[0] + 3);
+                    mismatch = readRecords(file, bufferPool, timestamp, timestamps, addresses, accessTypes);
+                    if (mismatch != null) {
+                        mismatch = "round " + round + ", " + count + " records, seek to " + timestamp + ": "
+                                + mismatch;
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        report("Compressed trace round trip", mismatch);
+    }
+
+    // Sorted timestamps with equal and widely spaced neighbours, and
+    // addresses jumping both ways, up to the whole range of a long
+    private static void randomRecords(SplittableRandom random, long[] timestamps, long[] addresses,
+            char[] accessTypes) {
+        long timestamp = random.nextLong(1L << 40);
+        long address = random.nextLong();
+        for (int i = 0; i < timestamps.length; i++) {
+            int kind = random.nextInt(16);
+            timestamp += kind == 0 ? 0 : kind == 1 ? random.nextLong(1L << 40) : random.nextInt(1000);
+            address = kind == 2 ? random.nextLong() : kind < 8 ? address + 64 * (random.nextInt(64) - 32)
+                    : random.nextLong(1L << 48);
+            timestamps[i] = timestamp;
+            addresses[i] = address;
+            accessTypes[i] = random.nextBoolean() ? 'R' : 'W';
+        }
+    }
+
+    // Read the records from a seek to the timestamp, each chunk twice with a
+    // rewind in between; they must be the written ones from at or before
+    // the first record at or after the timestamp. Null if they are.
+    private static String readRecords(File file, Queue<byte[]> bufferPool, long timestamp, long[] timestamps,
+            long[] addresses, char[] accessTypes) throws IOException {
+        int end = timestamps.length;
+        int firstAtOrAfter = 0;
+        while (firstAtOrAfter < end && timestamps[firstAtOrAfter] < timestamp) {
+            firstAtOrAfter++;
+        }
+
+        int start = -1;
+        int next = 0;
+        try (CompressedTraceChunkReader reader = new CompressedTraceChunkReader(file, bufferPool)) {
+            reader.seek(timestamp);
+            TraceChunk chunk;
+            while ((chunk = reader.nextChunk()) != null) {
+                int chunkStart = next;
+                for (int pass = 0; pass < 2; pass++) {
+                    next = chunkStart;
+                    while (chunk.next()) {
+                        if (start < 0) {
+                            // The seek may land before the timestamp, but only on a record boundary
+                            start = Math.min(firstAtOrAfter, end - 1);
+                            while (start > 0 && (timestamps[start] != chunk.getTimestamp()
+                                    || addresses[start] != chunk.getAddress())) {
+                                start--;
+                            }
+                            next = chunkStart = start;
+                        }
+                        if (next >= end || chunk.getTimestamp() != timestamps[next]
+                                || chunk.getAddress() != addresses[next]
+                                || chunk.getAccessType() != accessTypes[next]) {
+                            chunk.release();
+                            return "record " + next + " read as " + chunk.getAccessType() + " "
+                                    + chunk.getTimestamp() + " " + chunk.getAddress();
+                        }
+                        next++;
+                    }
+                    chunk.rewind();
+                }
+                chunk.release();
+            }
+        }
+        if (start > firstAtOrAfter || (start < 0 && firstAtOrAfter < end)) {
+            return "records from " + start + " read instead of from " + firstAtOrAfter;
+        }
+        if (start >= 0 && next != end) {
+            return "only records " + start + " to " + next + " of " + end + " read";
+        }
+        return null;
+    }
+
+    // The built-in policies and every registered extra one
+    private static List<RankingPolicy> createPolicies() {
+        return RankingPolicies.create(new ArrayList<>(RankingPolicies.getNames()));
+    }
+
+    // Page IDs and timestamps of the accesses of a random interval, of a
+    // random size, drawn from a range of pages with a few much hotter ones
+    private static long[][] randomAccesses(SplittableRandom random) {
+        int count = 1 + random.nextInt(20_000);
+        int pages = 1 + random.nextInt(5_000);
+        long[][] accesses = new long[2][count];
+        for (int i = 0; i < count; i++) {
+            int page = random.nextInt(pages);
+            accesses[0][i] = random.nextInt(4) == 0 ? page % 8 : page;
+            accesses[1][i] = INTERVAL_START + random.nextLong(INTERVAL_END - INTERVAL_START);
+        }
+        return accesses;
+    }
+
+    // Scan the accesses of a shard's pages into the analyzer as one interval
+    private static void record(IntervalAnalyzer analyzer, long[][] accesses, int shardIndex, int shardCount)
+            throws IOException {
+        analyzer.beginInterval(INTERVAL_START, INTERVAL_END);
+        PageTable table = analyzer.getWorkerPageTable();
+        for (int i = 0; i < accesses[0].length; i++) {
+            if (TraceScanner.getShard(accesses[0][i], shardCount) == shardIndex) {
+                analyzer.recordAccess(table, accesses[0][i], accesses[1][i]);
+            }
+        }
+        analyzer.endInterval();
+    }
+
+    // Print the outcome of a check, null meaning it passed
+    private static void report(String check, String mismatch) {
+        if (mismatch == null) {
+            System.out.println(check + ": ok");
+        } else {
+            System.out.println(check + ": FAILED, " + mismatch);
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Merges the rank histograms of N shard workers (see {@link ShardHistograms})
+ * into the results a single analysis of all pages would have written.
+ *
+ * Every worker is a {@code TraceAnalyzer --shard <i>/<n>} process that reads
+ * the whole trace but only keeps the pages of its shard, so it needs about
+ * 1/N of the memory. Workers can run anywhere the shard directory is shared,
+ * or be started here as local processes. For every interval and policy, the
+ * histograms are merged in rank order up to the global top N, exactly as
+ * calculateAccuracy selects it, and the interval is reported the usual way:
+ * same console output, same CSVs in output/, same overall hit ratios.
+ *
+ * Every cutoff is checked to fall between bins before any interval is
+ * reported. If one falls inside a coarse bin, local workers are run again
+ * with a wider window of single pages; otherwise the merge fails, naming the
+ * interval, the policy and the window.
+ */
+public class ShardCoordinator {
+
+    // A top N cutoff fell inside a coarse bin of a shard
+    private static class CutoffException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final double windowDeviations;
+
+        CutoffException(String message, double windowDeviations) {
+            super(message);
+            this.windowDeviations = windowDeviations;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            return;
+        }
+        int shardCount = Integer.parseInt(args[0]);
+        File shardDir = new File(args[1]);
+        if (shardCount < 1) {
+            printUsage();
+            return;
+        }
+
+        try {
+            if (args.length > 2) {
+                // Widen the window of single pages until every cutoff falls between bins
+                List<String> analyzerArgs = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+                while (true) {
+                    runWorkers(shardCount, shardDir, analyzerArgs);
+                    try {
+                        check(shardCount, shardDir);
+                        break;
+                    } catch (CutoffException e) {
+                        double windowDeviations = e.windowDeviations * 4;
+                        System.out.println(e.getMessage());
+                        System.out.println("Running the shard workers again with --shard-window " + windowDeviations);
+                        // The last --shard-window given to TraceAnalyzer is the one it uses
+                        analyzerArgs.add("--shard-window");
+                        analyzerArgs.add(Double.toString(windowDeviations));
+                    }
+                }
+                report(shardCount, shardDir);
+            } else {
+                check(shardCount, shardDir);
+                report(shardCount, shardDir);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java ShardCoordinator <shards> <shard_dir> [<TraceAnalyzer arguments...>]");
+        System.out.println("  With TraceAnalyzer arguments, runs the shard workers as local processes (with this JVM's");
+        System.out.println("  options, logging to <shard_dir>/worker-<i>.log) before merging. Without, merges the");
+        System.out.println("  shards that workers run with --shard <i>/<shards>:<shard_dir> wrote.");
+    }
+
+    // Run a worker process per shard with the analyzer arguments, and wait
+    // for all of them; fails if any of them did
+    private static void runWorkers(int shardCount, File shardDir, List<String> analyzerArgs)
+            throws IOException, InterruptedException {
+        shardDir.mkdirs();
+        // Histograms of an earlier analysis would be merged too
+        File[] stale = shardDir.listFiles(file -> file.getName().contains(".shard-"));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<Process> workers = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("TraceAnalyzer");
+            command.addAll(analyzerArgs);
+            command.add("--shard");
+            command.add(shard + "/" + shardCount + ":" + shardDir.getPath());
+            workers.add(new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(new File(shardDir, "worker-" + shard + ".log")).start());
+        }
+        System.out.println("Running " + shardCount + " shard workers, logging to " + shardDir);
+        int[] exitStatuses = new int[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            exitStatuses[shard] = workers.get(shard).waitFor();
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (exitStatuses[shard] != 0) {
+                throw new IOException("Shard worker " + shard + " failed with exit status " + exitStatuses[shard]
+                        + ", see " + new File(shardDir, "worker-" + shard + ".log"));
+            }
+        }
+    }
+
+    // Check that every cutoff of every configuration's shards falls between
+    // bins, without reporting anything
+    static void check(int shardCount, File shardDir) throws IOException {
+        merge(shardCount, shardDir, false);
+    }
+
+    // Merge every configuration's shards, reporting their intervals in the
+    // order a single analysis does: by interval end, then configuration
+    static void report(int shardCount, File shardDir) throws IOException {
+        merge(shardCount, shardDir, true);
+    }
+
+    private static void merge(int shardCount, File shardDir, boolean report) throws IOException {
+        File[] files = shardDir.listFiles(file -> file.getName().endsWith("-of-" + shardCount));
+        if (files == null || files.length == 0) {
+            throw new FileNotFoundException("No histograms of " + shardCount + " shards in " + shardDir);
+        }
+        Arrays.sort(files);
+
+        // Shards of every configuration, by the configuration's base name
+        Map<String, ShardHistograms[]> configurations = new HashMap<>();
+        List<MergedRun> runs = new ArrayList<>();
+        try {
+            for (File file : files) {
+                String baseName = file.getName().substring(0, file.getName().lastIndexOf(".shard-"));
+                ShardHistograms histograms = ShardHistograms.open(file);
+                ShardHistograms[] shards = configurations.computeIfAbsent(baseName,
+                        name -> new ShardHistograms[shardCount]);
+                if (histograms.getShardCount() != shardCount || shards[histograms.getShardIndex()] != null) {
+                    histograms.close();
+                    throw new IOException("Unexpected shard " + file);
+                }
+                shards[histograms.getShardIndex()] = histograms;
+            }
+
+            for (Map.Entry<String, ShardHistograms[]> configuration : configurations.entrySet()) {
+                ShardHistograms[] shards = configuration.getValue();
+                for (int shard = 0; shard < shardCount; shard++) {
+                    if (shards[shard] == null) {
+                        throw new FileNotFoundException("Missing shard " + shard + " of " + configuration.getKey()
+                                + " (see " + new File(shardDir, "worker-" + shard + ".log") + ")");
+                    }
+                    if (!shards[shard].getConfiguration().equals(shards[0].getConfiguration())) {
+                        throw new IOException("Shards of " + configuration.getKey()
+                                + " are of different analyses: " + shards[0].getFile() + ", " + shards[shard].getFile());
+                    }
+                }
+                runs.add(new MergedRun(configuration.getKey(), shards, report));
+            }
+            runs.sort(Comparator.comparingInt(run -> run.shards[0].getRunIndex()));
+
+            // Load every run's first interval, then report the earliest ending one at a time
+            List<MergedRun> pending = new ArrayList<>();
+            for (MergedRun run : runs) {
+                if (run.nextInterval()) {
+                    pending.add(run);
+                }
+            }
+            while (!pending.isEmpty()) {
+                MergedRun next = pending.get(0);
+                for (MergedRun run : pending) {
+                    if (run.getIntervalEnd() < next.getIntervalEnd()) {
+                        next = run;
+                    }
+                }
+                next.mergeInterval();
+                if (!next.nextInterval()) {
+                    pending.remove(next);
+                }
+            }
+
+            if (report) {
+                for (MergedRun run : runs) {
+                    run.analysisRun.finish();
+                }
+            }
+        } finally {
+            for (ShardHistograms[] shards : configurations.values()) {
+                for (ShardHistograms histograms : shards) {
+                    if (histograms != null) {
+                        histograms.close();
+                    }
+                }
+            }
+        }
+    }
+
+    // Access count sum of the global top N pages of a policy, from the bins of
+    // every shard. Bins are taken in order of their last page across shards
+    // until N pages are; the last one taken is the cutoff, so it must be the
+    // Nth page exactly, and every shard's next bin must start after it.
+    // -1 if the cutoff falls inside a coarse bin instead.
+    static long getTopAccessCount(ShardHistograms.Bins[] shards, long topN) {
+        int[] next = new int[shards.length];
+        long pages = 0;
+        long accesses = 0;
+        int cutoffShard = -1;
+        int cutoffBin = -1;
+        while (pages < topN) {
+            // Shard whose next bin ends first
+            int shard = -1;
+            for (int s = 0; s < shards.length; s++) {
+                if (next[s] < shards[s].count && (shard < 0 || ranksBefore(shards[s].lastKeys[next[s]],
+                        shards[s].lastTieKeys[next[s]], shards[shard].lastKeys[next[shard]],
+                        shards[shard].lastTieKeys[next[shard]]))) {
+                    shard = s;
+                }
+            }
+            if (shard < 0) {
+                break;
+            }
+            int bin = next[shard]++;
+            if (pages + shards[shard].pages[bin] > topN) {
+                return -1;
+            }
+            pages += shards[shard].pages[bin];
+            accesses += shards[shard].accesses[bin];
+            cutoffShard = shard;
+            cutoffBin = bin;
+        }
+
+        // No bin left out may hold pages ranked before the cutoff
+        if (cutoffShard >= 0) {
+            long cutoffKey = shards[cutoffShard].lastKeys[cutoffBin];
+            long cutoffTieKey = shards[cutoffShard].lastTieKeys[cutoffBin];
+            for (int s = 0; s < shards.length; s++) {
+                if (next[s] < shards[s].count && ranksBefore(shards[s].firstKeys[next[s]],
+                        shards[s].firstTieKeys[next[s]], cutoffKey, cutoffTieKey)) {
+                    return -1;
+                }
+            }
+        }
+        return accesses;
+    }
+
+    // Rank order of RankingEngine: by key, then tie-break key
+    private static boolean ranksBefore(long key, long tieKey, long otherKey, long otherTieKey) {
+        if (key != otherKey) {
+            return key < otherKey;
+        }
+        return tieKey < otherTieKey;
+    }
+
+    // The shards of one configuration, read interval by interval, and the run
+    // reporting their merge unless only checking it
+    private static class MergedRun {
+
+        private final String baseName;
+        private final ShardHistograms[] shards;
+        private final AnalysisRun analysisRun;
+        private final List<RankingPolicy> policies;
+        private final int policyCount;
+        private final double dramPercentage;
+        private final ShardHistograms.Bins[] bins;
+
+        MergedRun(String baseName, ShardHistograms[] shards, boolean report) throws IOException {
+            this.baseName = baseName;
+            this.shards = shards;
+            ShardHistograms header = shards[0];
+            this.policies = RankingPolicies.create(header.getPolicySpecs());
+            this.analysisRun = !report ? null : new AnalysisRun(header.getWorkloadName(),
+                    header.getIntervalWindowMs(), header.getPtsIntervalDurationMs(), header.getDramPercentage(), 0,
+                    header.getIntervalWindowTicks(), header.getPtsWindowTicks(), header.getStartTimestamp(), policies,
+                    ForkJoinPool.commonPool(), TraceScanner.PAGE_SHIFT, 0, "output", header.isLabelled());
+            this.policyCount = policies.size();
+            this.dramPercentage = header.getDramPercentage();
+            this.bins = new ShardHistograms.Bins[shards.length];
+            for (int s = 0; s < shards.length; s++) {
+                bins[s] = new ShardHistograms.Bins();
+            }
+        }
+
+        // Move every shard to the next interval, the same one; false after the last one
+        boolean nextInterval() throws IOException {
+            boolean hasInterval = shards[0].nextInterval();
+            for (int s = 1; s < shards.length; s++) {
+                if (shards[s].nextInterval() != hasInterval || (hasInterval
+                        && shards[s].getIntervalStart() != shards[0].getIntervalStart())) {
+                    throw new IOException("Shards " + shards[0].getFile() + " and " + shards[s].getFile()
+                            + " have different intervals");
+                }
+            }
+            return hasInterval;
+        }
+
+        long getIntervalEnd() {
+            return shards[0].getIntervalEnd();
+        }
+
+        // Merge the current interval of every shard and report it (if
+        // reporting), like calculateAccuracy
+        void mergeInterval() throws IOException {
+            long pageCount = 0;
+            long accessCount = 0;
+            for (ShardHistograms shard : shards) {
+                pageCount += shard.getPageCount();
+                accessCount += shard.getAccessCount();
+            }
+
+            // We look at the top DRAM percentage of pages
+            int topN = (int) Math.ceil(pageCount * dramPercentage);
+            double[] hitRatios = new double[policyCount];
+            for (int p = 0; p < policyCount; p++) {
+                for (int s = 0; s < shards.length; s++) {
+                    shards[s].readBins(bins[s]);
+                }
+                long topAccessCount = getTopAccessCount(bins, topN);
+                if (topAccessCount < 0) {
+                    throw newCutoffException(p, topN);
+                }
+                hitRatios[p] = (double) topAccessCount / accessCount;
+            }
+
+            if (analysisRun == null) {
+                return;
+            }
+            analysisRun.reportMergedInterval(shards[0].getIntervalStart(), shards[0].getIntervalEnd(),
+                    new HitRatioStats(hitRatios, pageCount, accessCount));
+        }
+
+        // The current interval's cutoff of a policy fell inside a coarse bin
+        private CutoffException newCutoffException(int policy, int topN) {
+            double windowDeviations = 0;
+            for (ShardHistograms shard : shards) {
+                windowDeviations = Math.max(windowDeviations, shard.getWindowDeviations());
+            }
+            return new CutoffException("The top " + topN + " cutoff of " + policies.get(policy).getLabel()
+                    + " in interval " + shards[0].getIntervalStart() + " - " + shards[0].getIntervalEnd() + " of "
+                    + baseName + " falls inside a coarse bin; run the shard workers with a --shard-window above "
+                    + windowDeviations, windowDeviations);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Per-interval rank histograms of one shard of an analysis configuration,
+ * written by a worker that only analyzes the pages of its shard (see
+ * {@link TraceScanner#setShard}), and merged with the other shards' by a
+ * {@link ShardCoordinator} into the hit ratios of all pages.
+ *
+ * For every policy, the worker ranks its pages the way calculateAccuracy
+ * does, and writes them as bins of consecutive ranks, each with its page
+ * count, access count sum and the (rank key, tie-break key) of its first and
+ * last page. Pages are assigned to shards by hash, so every shard holds about
+ * its share of the global top N: bins are single pages within a margin of
+ * that share, where the global cutoff falls, and a few coarse bins before
+ * and after it. A histogram thus grows with the square root of the shard's
+ * pages rather than with the pages, and the coordinator finds the global
+ * cutoff exactly as long as it falls between bins, which it checks. How many
+ * standard deviations the single pages cover is a setting of the workers,
+ * for the coordinator to widen if a cutoff falls inside a coarse bin.
+ *
+ * Like the page summary cache, a file only appears under its final name
+ * once all its intervals were written.
+ */
+public class ShardHistograms implements Closeable {
+
+    private static final long MAGIC = 0x324452485354504DL; // "MPTSHRD2"
+
+    // Coarse bins before and after the single pages around the expected cutoff
+    private static final int COARSE_BINS = 16;
+
+    // The share of the global top N of a shard deviates from its expected
+    // share by about the square root of it (a binomial standard deviation);
+    // single pages cover many times that by default
+    public static final double DEFAULT_WINDOW_DEVIATIONS = 8;
+    private static final int MIN_MARGIN = 64;
+
+    // Bins of one policy of one shard in an interval, in rank order
+    public static class Bins {
+        int count;
+        long[] firstKeys = new long[0];
+        long[] firstTieKeys = new long[0];
+        long[] lastKeys = new long[0];
+        long[] lastTieKeys = new long[0];
+        int[] pages = new int[0];
+        long[] accesses = new long[0];
+
+        void read(DataInputStream in) throws IOException {
+            count = in.readInt();
+            if (firstKeys.length < count) {
+                int capacity = Math.max(count, firstKeys.length * 2);
+                firstKeys = new long[capacity];
+                firstTieKeys = new long[capacity];
+                lastKeys = new long[capacity];
+                lastTieKeys = new long[capacity];
+                pages = new int[capacity];
+                accesses = new long[capacity];
+            }
+            for (int b = 0; b < count; b++) {
+                pages[b] = in.readInt();
+                firstKeys[b] = in.readLong();
+                firstTieKeys[b] = in.readLong();
+                // A single page is its own first and last page
+                lastKeys[b] = pages[b] > 1 ? in.readLong() : firstKeys[b];
+                lastTieKeys[b] = pages[b] > 1 ? in.readLong() : firstTieKeys[b];
+                accesses[b] = in.readLong();
+            }
+        }
+    }
+
+    private final File file;
+    private final File tempFile;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    // Shard and configuration, as in the header
+    private int shardIndex;
+    private int shardCount;
+    private int runIndex;
+    private String workloadName;
+    private long intervalWindowMs;
+    private float ptsIntervalDurationMs;
+    private double dramPercentage;
+    private long intervalWindowTicks;
+    private long ptsWindowTicks;
+    private long startTimestamp;
+    private boolean labelled;
+    private List<String> policySpecs = new ArrayList<>();
+
+    // Standard deviations covered by single pages around the expected cutoff
+    private double windowDeviations;
+
+    // Interval returned by the last nextInterval()
+    private long intervalStart;
+    private long intervalEnd;
+    private long pageCount;
+    private long accessCount;
+
+    // Ranked entries of the interval being written
+    private int[] entries = new int[0];
+
+    private ShardHistograms(File file, File tempFile, DataInputStream in, DataOutputStream out) {
+        this.file = file;
+        this.tempFile = tempFile;
+        this.in = in;
+        this.out = out;
+    }
+
+    // File of a shard of the configuration whose output CSV is named baseName.csv
+    public static File getFile(File shardDir, String baseName, int shardIndex, int shardCount) {
+        return new File(shardDir, baseName + ".shard-" + shardIndex + "-of-" + shardCount);
+    }
+
+    // Start writing the histograms of a shard of the configuration, the
+    // runIndex-th of the analysis, created with RankingPolicies.create(policySpecs),
+    // with single pages within windowDeviations around the expected cutoff
+    public static ShardHistograms create(File file, int shardIndex, int shardCount, int runIndex,
+            String workloadName, long intervalWindowMs, float ptsIntervalDurationMs, double dramPercentage,
+            long intervalWindowTicks, long ptsWindowTicks, long startTimestamp, boolean labelled,
+            List<String> policySpecs, double windowDeviations) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+        ShardHistograms histograms = new ShardHistograms(file, tempFile, null, out);
+        histograms.shardIndex = shardIndex;
+        histograms.shardCount = shardCount;
+        histograms.runIndex = runIndex;
+        histograms.workloadName = workloadName;
+        histograms.intervalWindowMs = intervalWindowMs;
+        histograms.ptsIntervalDurationMs = ptsIntervalDurationMs;
+        histograms.dramPercentage = dramPercentage;
+        histograms.intervalWindowTicks = intervalWindowTicks;
+        histograms.ptsWindowTicks = ptsWindowTicks;
+        histograms.startTimestamp = startTimestamp;
+        histograms.labelled = labelled;
+        histograms.policySpecs = new ArrayList<>(policySpecs);
+        histograms.windowDeviations = windowDeviations;
+
+        out.writeLong(MAGIC);
+        out.writeInt(shardIndex);
+        out.writeInt(shardCount);
+        out.writeInt(runIndex);
+        out.writeUTF(workloadName);
+        out.writeLong(intervalWindowMs);
+        out.writeFloat(ptsIntervalDurationMs);
+        out.writeDouble(dramPercentage);
+        out.writeLong(intervalWindowTicks);
+        out.writeLong(ptsWindowTicks);
+        out.writeLong(startTimestamp);
+        out.writeBoolean(labelled);
+        out.writeInt(policySpecs.size());
+        for (String spec : policySpecs) {
+            out.writeUTF(spec);
+        }
+        out.writeDouble(windowDeviations);
+        return histograms;
+    }
+
+    // Histograms written by a worker, positioned before the first interval
+    public static ShardHistograms open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        ShardHistograms histograms = new ShardHistograms(file, null, in, null);
+        try {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a shard histogram file: " + file);
+            }
+            histograms.shardIndex = in.readInt();
+            histograms.shardCount = in.readInt();
+            histograms.runIndex = in.readInt();
+            histograms.workloadName = in.readUTF();
+            histograms.intervalWindowMs = in.readLong();
+            histograms.ptsIntervalDurationMs = in.readFloat();
+            histograms.dramPercentage = in.readDouble();
+            histograms.intervalWindowTicks = in.readLong();
+            histograms.ptsWindowTicks = in.readLong();
+            histograms.startTimestamp = in.readLong();
+            histograms.labelled = in.readBoolean();
+            int policies = in.readInt();
+            for (int p = 0; p < policies; p++) {
+                histograms.policySpecs.add(in.readUTF());
+            }
+            histograms.windowDeviations = in.readDouble();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return histograms;
+    }
+
+    // Ends of the bins of a shard of this many pages: single pages within the
+    // margin around its expected share of the top N, coarse bins elsewhere
+    static int[] getBinEnds(int pages, double dramPercentage, double windowDeviations) {
+        int expected = (int) Math.ceil(pages * dramPercentage);
+        int margin = (int) Math.min(pages, windowDeviations * Math.sqrt(expected) + MIN_MARGIN);
+        int windowStart = Math.max(0, expected - margin);
+        int windowEnd = Math.min(pages, expected + margin);
+
+        int[] ends = new int[2 * COARSE_BINS + windowEnd - windowStart];
+        int count = 0;
+        for (int b = 1; b <= COARSE_BINS; b++) {
+            int end = (int) ((long) windowStart * b / COARSE_BINS);
+            if (end > (count > 0 ? ends[count - 1] : 0)) {
+                ends[count++] = end;
+            }
+        }
+        for (int end = windowStart + 1; end <= windowEnd; end++) {
+            ends[count++] = end;
+        }
+        for (int b = 1; b <= COARSE_BINS; b++) {
+            int end = windowEnd + (int) ((long) (pages - windowEnd) * b / COARSE_BINS);
+            if (end > (count > 0 ? ends[count - 1] : 0)) {
+                ends[count++] = end;
+            }
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    // Rank the pages of the analyzer's merged interval for every policy and
+    // write their bins
+    public void writeInterval(IntervalAnalyzer analyzer) throws IOException {
+        PageTable table = analyzer.getPageTable();
+        RankingEngine rankingEngine = analyzer.getRankingEngine();
+        int pages = table.size();
+        if (entries.length < pages) {
+            entries = new int[Math.max(pages, entries.length * 2)];
+        }
+
+        out.writeBoolean(true);
+        out.writeLong(analyzer.getIntervalStart());
+        out.writeLong(analyzer.getIntervalEnd());
+        out.writeLong(analyzer.getTotalPageCount());
+        out.writeLong(analyzer.getTotalAccessCount());
+
+        int[] binEnds = getBinEnds(pages, dramPercentage, windowDeviations);
+        for (int p = 0; p < analyzer.getPolicies().size(); p++) {
+            // Entries are partitioned at every bin end, in no order within a bin
+            long[] accessSums = rankingEngine.getTopAccessCurve(table, p, binEnds);
+            rankingEngine.copyTopEntries(p, pages, entries);
+
+            out.writeInt(binEnds.length);
+            int binStart = 0;
+            long previousSum = 0;
+            for (int b = 0; b < binEnds.length; b++) {
+                int first = entries[binStart];
+                int last = first;
+                for (int i = binStart + 1; i < binEnds[b]; i++) {
+                    int entry = entries[i];
+                    if (ranksBefore(rankingEngine, p, entry, first)) {
+                        first = entry;
+                    }
+                    if (ranksBefore(rankingEngine, p, last, entry)) {
+                        last = entry;
+                    }
+                }
+                out.writeInt(binEnds[b] - binStart);
+                out.writeLong(rankingEngine.getRankKey(p, first));
+                out.writeLong(rankingEngine.getTieKey(first));
+                if (first != last) {
+                    out.writeLong(rankingEngine.getRankKey(p, last));
+                    out.writeLong(rankingEngine.getTieKey(last));
+                }
+                out.writeLong(accessSums[b] - previousSum);
+                binStart = binEnds[b];
+                previousSum = accessSums[b];
+            }
+        }
+    }
+
+    private static boolean ranksBefore(RankingEngine rankingEngine, int policy, int a, int b) {
+        long keyA = rankingEngine.getRankKey(policy, a);
+        long keyB = rankingEngine.getRankKey(policy, b);
+        if (keyA != keyB) {
+            return keyA < keyB;
+        }
+        return rankingEngine.getTieKey(a) < rankingEngine.getTieKey(b);
+    }
+
+    // Mark the histograms complete and move them to their final name
+    public void commit() throws IOException {
+        out.writeBoolean(false);
+        out.close();
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    // Move to the next interval; false after the last one. Its bins are then
+    // read policy by policy.
+    public boolean nextInterval() throws IOException {
+        if (!in.readBoolean()) {
+            return false;
+        }
+        intervalStart = in.readLong();
+        intervalEnd = in.readLong();
+        pageCount = in.readLong();
+        accessCount = in.readLong();
+        return true;
+    }
+
+    // Read the bins of the interval's next policy
+    public void readBins(Bins bins) throws IOException {
+        bins.read(in);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getRunIndex() {
+        return runIndex;
+    }
+
+    public String getWorkloadName() {
+        return workloadName;
+    }
+
+    public long getIntervalWindowMs() {
+        return intervalWindowMs;
+    }
+
+    public float getPtsIntervalDurationMs() {
+        return ptsIntervalDurationMs;
+    }
+
+    public double getDramPercentage() {
+        return dramPercentage;
+    }
+
+    public long getIntervalWindowTicks() {
+        return intervalWindowTicks;
+    }
+
+    public long getPtsWindowTicks() {
+        return ptsWindowTicks;
+    }
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public boolean isLabelled() {
+        return labelled;
+    }
+
+    public List<String> getPolicySpecs() {
+        return policySpecs;
+    }
+
+    public double getWindowDeviations() {
+        return windowDeviations;
+    }
+
+    // Everything in the header but the shard index, the same for every shard of the configuration
+    public String getConfiguration() {
+        return shardCount + "|" + runIndex + "|" + workloadName + "|" + intervalWindowMs + "|"
+                + ptsIntervalDurationMs + "|" + dramPercentage + "|" + intervalWindowTicks + "|" + ptsWindowTicks
+                + "|" + startTimestamp + "|" + labelled + "|" + policySpecs;
+    }
+
+    public long getIntervalStart() {
+        return intervalStart;
+    }
+
+    public long getIntervalEnd() {
+        return intervalEnd;
+    }
+
+    public long getPageCount() {
+        return pageCount;
+    }
+
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        if (out != null) {
+            out.close();
+            // Not committed: drop the partial histograms
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.Queue;
+
+/**
+ * Chunk of whole lines from a text trace file, parsed in place by
+ * {@link TextTraceFormat} without allocating anything per record.
+ */
+public class TextTraceChunk extends TraceChunk {
+
+    private final byte[] data;
+    private final int length;
+    private final Queue<byte[]> bufferPool;
+    private final long[] record = new long[2];
+    private int position;
+
+    public TextTraceChunk(byte[] data, int length, Queue<byte[]> bufferPool) {
+        this.data = data;
+        this.length = length;
+        this.byteLength = length;
+        this.bufferPool = bufferPool;
+        this.lastTimestamp = findLastTimestamp();
+    }
+
+    @Override
+    protected boolean advance() {
+        while (position < length) {
+            int lineEnd = TextTraceFormat.parseNextLine(data, position, length, record);
+            if (lineEnd >= 0) {
+                position = lineEnd + 1;
+                timestamp = record[0];
+                address = TraceFormat.decodeAddress(record[1]);
+                accessType = TraceFormat.decodeAccessType(record[1]);
+                return true;
+            }
+            // Skip the malformed line, ending at -lineEnd - 1
+            position = -lineEnd;
+        }
+        return false;
+    }
+
+    @Override
+    protected void restart() {
+        position = 0;
+    }
+
+    @Override
+    public void release() {
+        bufferPool.offer(data);
+    }
+
+    // Parse one line into the current record; false if it is malformed
+    private boolean parseLine(int start, int end) {
+        if (!TextTraceFormat.parseLine(data, start, end, record)) {
+            return false;
+        }
+
+        timestamp = record[0];
+        address = TraceFormat.decodeAddress(record[1]);
+        accessType = TraceFormat.decodeAccessType(record[1]);
+        return true;
+    }
+
+    // Timestamp of the last well-formed line, scanning backwards from the end
+    private long findLastTimestamp() {
+        int end = length;
+        while (end > 0) {
+            int lineEnd = data[end - 1] == '\n' ? end - 1 : end;
+            int lineStart = lineEnd;
+            while (lineStart > 0 && data[lineStart - 1] != '\n') {
+                lineStart--;
+            }
+            if (parseLine(lineStart, lineEnd)) {
+                return timestamp;
+            }
+            end = lineStart;
+        }
+        return Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+
+/**
+ * Reads a text trace file in large line-aligned chunks.
+ *
+ * Each chunk ends on a newline; the partial line at the end of a read is
+ * carried over to the start of the next chunk.
+ */
+public class TextTraceChunkReader implements TraceChunkReader {
+
+    public static final int CHUNK_SIZE = 4 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final Queue<byte[]> bufferPool;
+
+    // Partial line left over from the previous chunk
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    private boolean endOfFile;
+
+    public TextTraceChunkReader(File file, Queue<byte[]> bufferPool) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public TraceChunk nextChunk() throws IOException {
+        if (endOfFile && carryLength == 0) {
+            return null;
+        }
+
+        byte[] buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = new byte[CHUNK_SIZE];
+        }
+
+        System.arraycopy(carry, 0, buffer, 0, carryLength);
+        int length = carryLength;
+        carryLength = 0;
+
+        ByteBuffer target = ByteBuffer.wrap(buffer, length, buffer.length - length);
+        while (!endOfFile && target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                endOfFile = true;
+            }
+        }
+        length = target.position();
+
+        if (length == 0) {
+            bufferPool.offer(buffer);
+            return null;
+        }
+
+        int end = length;
+        if (!endOfFile) {
+            // Cut after the last complete line and keep the rest for the next chunk
+            end = lastNewline(buffer, length) + 1;
+            if (end == 0) {
+                throw new IOException("Line longer than " + CHUNK_SIZE + " bytes in " + file);
+            }
+
+            carryLength = length - end;
+            if (carry.length < carryLength) {
+                carry = new byte[carryLength];
+            }
+            System.arraycopy(buffer, end, carry, 0, carryLength);
+        }
+
+        return new TextTraceChunk(buffer, end, bufferPool);
+    }
+
+    @Override
+    public void seek(long timestamp) throws IOException {
+        channel.position(TraceIndex.loadOrBuild(file).findOffset(timestamp));
+        carryLength = 0;
+        endOfFile = false;
+    }
+
+    private static int lastNewline(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
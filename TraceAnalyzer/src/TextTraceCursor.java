@@ -0,0 +1,75 @@
+import java.io.*;
+import java.util.ArrayDeque;
+
+/**
+ * Trace cursor over MyPinTool's text format ({@code hex_ts,R|W,hex_addr} per line),
+ * reading the file in chunks that are parsed in place.
+ */
+public class TextTraceCursor implements TraceCursor {
+
+    private final File file;
+    private final TextTraceChunkReader reader;
+    private TraceChunk chunk;
+
+    // Current (not yet consumed) record
+    private long timestamp;
+    private long address;
+    private char accessType;
+    private boolean exhausted;
+
+    public TextTraceCursor(File file) throws IOException {
+        this.file = file;
+        this.reader = new TextTraceChunkReader(file, new ArrayDeque<>());
+        advance();
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean hasRecord() {
+        return !exhausted;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long getAddress() {
+        return address;
+    }
+
+    @Override
+    public char getAccessType() {
+        return accessType;
+    }
+
+    // Move to the next well-formed record, or mark the cursor as exhausted
+    @Override
+    public void advance() throws IOException {
+        while (chunk == null || !chunk.next()) {
+            if (chunk != null) {
+                chunk.release();
+            }
+            chunk = reader.nextChunk();
+            if (chunk == null) {
+                exhausted = true;
+                return;
+            }
+        }
+
+        timestamp = chunk.getTimestamp();
+        accessType = chunk.getAccessType();
+        address = chunk.getAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        exhausted = true;
+        reader.close();
+    }
+}
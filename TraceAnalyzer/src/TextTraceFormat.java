@@ -0,0 +1,115 @@
+/**
+ * MyPinTool's text trace format: one {@code hex_ts,R|W,hex_addr} line per
+ * record.
+ *
+ * Lines are parsed straight from the bytes of the file, without decoding
+ * them to strings or allocating anything. A line is accepted under the same
+ * rule as {@code line.split(",").length == 3}: exactly three fields once
+ * trailing empty fields are dropped, where the access type may be empty (and
+ * is then a read). Lines whose timestamp or address isn't a non-empty
+ * hexadecimal number are skipped as malformed too.
+ */
+public final class TextTraceFormat {
+
+    private TextTraceFormat() {
+    }
+
+    // Value of each ASCII byte as a hex digit, or -1
+    private static final byte[] HEX_VALUES = new byte[256];
+
+    static {
+        java.util.Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int digit = 0; digit < 16; digit++) {
+            HEX_VALUES["0123456789abcdef".charAt(digit)] = (byte) digit;
+            HEX_VALUES["0123456789ABCDEF".charAt(digit)] = (byte) digit;
+        }
+    }
+
+    // Parse the line starting at data[start], ending at the next newline or at
+    // limit. Returns the index of that line end, or -(index) - 1 if the line is
+    // malformed. Well-formed lines are parsed in a single pass.
+    public static int parseNextLine(byte[] data, int start, int limit, long[] record) {
+        int i = start;
+        long timestamp = 0;
+        int digit;
+        while (i < limit && (digit = HEX_VALUES[data[i] & 0xFF]) >= 0) {
+            timestamp = (timestamp << 4) | digit;
+            i++;
+        }
+        // Fast path for hex_ts,R|W,hex_addr followed by the line end
+        if (i > start && i + 2 < limit && data[i] == ',' && data[i + 2] == ','
+                && (data[i + 1] == 'R' || data[i + 1] == 'W')) {
+            byte accessType = data[i + 1];
+            int addressStart = i + 3;
+            i = addressStart;
+            long address = 0;
+            while (i < limit && (digit = HEX_VALUES[data[i] & 0xFF]) >= 0) {
+                address = (address << 4) | digit;
+                i++;
+            }
+            if (i > addressStart && (i == limit || data[i] == '\n')) {
+                record[0] = timestamp;
+                record[1] = accessType == 'W' ? address | TraceFormat.WRITE_BIT : address & ~TraceFormat.WRITE_BIT;
+                return i;
+            }
+        }
+
+        // Any other line goes through the general rule
+        int end = i;
+        while (end < limit && data[end] != '\n') {
+            end++;
+        }
+        return parseLine(data, start, end, record) ? end : -end - 1;
+    }
+
+    // Parse data[start, end) (without the newline) into record[0] (timestamp)
+    // and record[1] (address with TraceFormat's write bit). False if malformed.
+    public static boolean parseLine(byte[] data, int start, int end, long[] record) {
+        // Carriage returns and trailing empty fields are ignored
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        while (end > start && data[end - 1] == ',') {
+            end--;
+        }
+
+        int i = start;
+        long timestamp = 0;
+        int digit;
+        while (i < end && (digit = HEX_VALUES[data[i] & 0xFF]) >= 0) {
+            timestamp = (timestamp << 4) | digit;
+            i++;
+        }
+        if (i == start || i == end || data[i] != ',') {
+            return false;
+        }
+        i++;
+
+        boolean write = false;
+        if (data[i] != ',') {
+            write = data[i] == 'W';
+            // The access type is the first character of its field
+            while (i < end && data[i] != ',') {
+                i++;
+            }
+            if (i == end) {
+                return false;
+            }
+        }
+        i++;
+
+        int addressStart = i;
+        long address = 0;
+        while (i < end && (digit = HEX_VALUES[data[i] & 0xFF]) >= 0) {
+            address = (address << 4) | digit;
+            i++;
+        }
+        if (i != end || i == addressStart) {
+            return false;
+        }
+
+        record[0] = timestamp;
+        record[1] = write ? address | TraceFormat.WRITE_BIT : address & ~TraceFormat.WRITE_BIT;
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trace writer producing MyPinTool's text format: one
+ * {@code hex_ts,R|W,hex_addr} line per record, with lowercase hexadecimal
+ * numbers and no zero padding, exactly as the tracer writes them.
+ */
+public class TextTraceWriter implements TraceWriter {
+
+    private static final int WRITE_BUFFER_SIZE = 4 << 20;
+
+    // Longest line: two 16-digit numbers, the access type, two commas and a newline
+    private static final int MAX_LINE_LENGTH = 36;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] data;
+    private int position;
+
+    public TextTraceWriter(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        this.data = buffer.array();
+    }
+
+    @Override
+    public void write(long timestamp, char accessType, long address) throws IOException {
+        if (position > data.length - MAX_LINE_LENGTH) {
+            flush();
+        }
+        position = putHex(timestamp, position);
+        data[position++] = ',';
+        data[position++] = (byte) accessType;
+        data[position++] = ',';
+        position = putHex(address, position);
+        data[position++] = '\n';
+    }
+
+    private int putHex(long value, int offset) {
+        int digits = Math.max(1, (67 - Long.numberOfLeadingZeros(value)) >> 2);
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            data[i] = HEX_DIGITS[(int) value & 0xF];
+            value >>>= 4;
+        }
+        return offset + digits;
+    }
+
+    private void flush() throws IOException {
+        buffer.clear().limit(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
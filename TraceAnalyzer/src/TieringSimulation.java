@@ -0,0 +1,210 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stateful DRAM tiering across intervals, for every ranking policy.
+ *
+ * Each policy keeps the set of pages resident in DRAM from one interval to
+ * the next. An interval's accesses hit DRAM if their page is in the set
+ * chosen at the end of the previous interval, so the tiered hit ratio
+ * includes the cost of ranking one interval behind (the first interval
+ * starts with an empty DRAM). At the end of the interval, the policy's top
+ * N pages become the target set, N being the interval's DRAM capacity, and
+ * pages are migrated:
+ * <ul>
+ * <li>target pages that are not resident are promoted, hottest first, up to
+ * the migration cap of the interval, if any;</li>
+ * <li>resident pages outside the target are demoted, except the hottest of
+ * them that still fit in the capacity left by capped promotions.</li>
+ * </ul>
+ * The resident set is updated in place: the work per interval is
+ * proportional to the resident and target sets, with hash lookups of
+ * primitive page IDs and no sorting. Policies are simulated in parallel.
+ */
+public class TieringSimulation implements Closeable {
+
+    private final List<RankingPolicy> policies;
+    private final int pageShift;
+    private final long migrationCapPages;
+    private final BufferedWriter csvWriter;
+
+    // Resident DRAM set of each policy
+    private final PageSet[] residentSets;
+
+    // Scratch arrays of each policy, kept across intervals
+    private final int[][] targetEntries;
+    private final int[][] promotionEntries;
+    private final int[][] demotionEntries;
+    private final long[][] residentPages;
+    private final long[][] targetFlags;
+
+    // Results of the last interval and totals, per policy
+    private final long[] hits;
+    private final long[] promotions;
+    private final long[] demotions;
+    private final long[] totalHits;
+    private final long[] totalPromotions;
+    private final long[] totalDemotions;
+    private long totalAccessCount;
+    private long intervalCount;
+
+    // migrationCapBytes is the most bytes promoted per interval, or Long.MAX_VALUE
+    public TieringSimulation(String outputFilename, List<RankingPolicy> policies, long migrationCapBytes,
+            int pageShift) throws IOException {
+        this.policies = policies;
+        this.pageShift = pageShift;
+        this.migrationCapPages = migrationCapBytes == Long.MAX_VALUE ? Long.MAX_VALUE : migrationCapBytes >> pageShift;
+
+        int policyCount = policies.size();
+        this.residentSets = new PageSet[policyCount];
+        for (int p = 0; p < policyCount; p++) {
+            residentSets[p] = new PageSet();
+        }
+        this.targetEntries = new int[policyCount][0];
+        this.promotionEntries = new int[policyCount][0];
+        this.demotionEntries = new int[policyCount][0];
+        this.residentPages = new long[policyCount][0];
+        this.targetFlags = new long[policyCount][0];
+
+        this.hits = new long[policyCount];
+        this.promotions = new long[policyCount];
+        this.demotions = new long[policyCount];
+        this.totalHits = new long[policyCount];
+        this.totalPromotions = new long[policyCount];
+        this.totalDemotions = new long[policyCount];
+
+        this.csvWriter = new BufferedWriter(new FileWriter(outputFilename));
+        csvWriter.write("interval_start_timestamp,interval_end_timestamp,policy,dram_pages,promotions,demotions,"
+                + "migrated_bytes,tiered_dram_hit_ratio\n");
+    }
+
+    // Simulate the interval the analyzer just ranked, given its top N accesses
+    // selection (TraceAnalyzer.calculateAccuracy) for the DRAM capacity topN
+    public void addInterval(IntervalAnalyzer intervalAnalyzer, int topN) throws IOException {
+        PageTable table = intervalAnalyzer.getPageTable();
+        RankingEngine rankingEngine = intervalAnalyzer.getRankingEngine();
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[policies.size()];
+        for (int policy = 0; policy < policies.size(); policy++) {
+            int p = policy;
+            tasks[p] = intervalAnalyzer.getWorkerPool().submit(() -> simulate(p, table, rankingEngine, topN));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        long intervalAccessCount = table.getTotalAccessCount();
+        for (int p = 0; p < policies.size(); p++) {
+            csvWriter.write(intervalAnalyzer.getIntervalStart() + "," + intervalAnalyzer.getIntervalEnd() + ","
+                    + policies.get(p).getName() + "," + topN + "," + promotions[p] + "," + demotions[p] + ","
+                    + ((promotions[p] + demotions[p]) << pageShift) + ","
+                    + (double) hits[p] / intervalAccessCount + "\n");
+            totalHits[p] += hits[p];
+            totalPromotions[p] += promotions[p];
+            totalDemotions[p] += demotions[p];
+        }
+        totalAccessCount += intervalAccessCount;
+        intervalCount++;
+    }
+
+    private void simulate(int p, PageTable table, RankingEngine rankingEngine, int topN) {
+        PageSet residentSet = residentSets[p];
+        int size = table.size();
+
+        // Flag the policy's top N entries
+        int[] target = targetEntries[p] = ensureCapacity(targetEntries[p], topN);
+        rankingEngine.copyTopEntries(p, topN, target);
+        long[] flags = targetFlags[p] = ensureCapacity(targetFlags[p], (size + 63) >>> 6);
+        Arrays.fill(flags, 0, (size + 63) >>> 6, 0L);
+        for (int i = 0; i < topN; i++) {
+            flags[target[i] >>> 6] |= 1L << target[i];
+        }
+
+        // Hits of the resident pages, and the resident pages outside the target:
+        // accessed ones by entry, others by page ID at the front of the array
+        int residentCount = residentSet.size();
+        long[] pages = residentPages[p] = ensureCapacity(residentPages[p], residentCount);
+        residentSet.toArray(pages);
+        int[] demotable = demotionEntries[p] = ensureCapacity(demotionEntries[p], residentCount);
+        int demotableCount = 0;
+        int idleCount = 0;
+        int keptCount = 0;
+        long residentHits = 0;
+        for (int i = 0; i < residentCount; i++) {
+            int entry = table.indexOf(pages[i]);
+            if (entry < 0) {
+                pages[idleCount++] = pages[i];
+                continue;
+            }
+            residentHits += table.getAccessCount(entry);
+            if ((flags[entry >>> 6] & (1L << entry)) != 0) {
+                keptCount++;
+            } else {
+                demotable[demotableCount++] = entry;
+            }
+        }
+
+        // Target pages to promote, hottest first if they are capped
+        int[] promotable = promotionEntries[p] = ensureCapacity(promotionEntries[p], topN);
+        int promotableCount = 0;
+        for (int i = 0; i < topN; i++) {
+            if (!residentSet.contains(table.getPageId(target[i]))) {
+                promotable[promotableCount++] = target[i];
+            }
+        }
+        int promoted = (int) Math.min(promotableCount, migrationCapPages);
+        rankingEngine.selectHottest(p, promotable, promotableCount, promoted);
+
+        // Capped promotions leave room for the hottest pages that would be demoted
+        int room = topN - keptCount - promoted;
+        int keptDemotable = Math.min(room, demotableCount);
+        rankingEngine.selectHottest(p, demotable, demotableCount, keptDemotable);
+        int keptIdle = Math.min(room - keptDemotable, idleCount);
+
+        for (int i = keptDemotable; i < demotableCount; i++) {
+            residentSet.remove(table.getPageId(demotable[i]));
+        }
+        for (int i = keptIdle; i < idleCount; i++) {
+            residentSet.remove(pages[i]);
+        }
+        for (int i = 0; i < promoted; i++) {
+            residentSet.add(table.getPageId(promotable[i]));
+        }
+
+        hits[p] = residentHits;
+        promotions[p] = promoted;
+        demotions[p] = (demotableCount - keptDemotable) + (idleCount - keptIdle);
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        return array.length >= length ? array : new int[Math.max(length, array.length * 2)];
+    }
+
+    private static long[] ensureCapacity(long[] array, int length) {
+        return array.length >= length ? array : new long[Math.max(length, array.length * 2)];
+    }
+
+    // Print the overall tiered hit ratio and migration traffic of every policy
+    public void printOverall() {
+        System.out.println("\nTiering (DRAM set of the previous interval"
+                + (migrationCapPages == Long.MAX_VALUE ? "" : ", at most " + migrationCapPages + " promotions per interval")
+                + "):");
+        for (int p = 0; p < policies.size(); p++) {
+            double hitRatio = BigDecimal.valueOf((double) totalHits[p] / totalAccessCount)
+                    .setScale(3, RoundingMode.HALF_UP)
+                    .doubleValue();
+            long migratedBytes = (totalPromotions[p] + totalDemotions[p]) << pageShift;
+            System.out.printf("%s: %s (Promotions: %d, Demotions: %d, Migrated: %.1f MB, %.1f MB per interval)%n",
+                    policies.get(p).getLabel(), hitRatio, totalPromotions[p], totalDemotions[p],
+                    migratedBytes / 1048576.0, migratedBytes / 1048576.0 / Math.max(1, intervalCount));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvWriter.close();
+    }
+}
@@ -2,56 +2,310 @@ import java.io.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class TraceAnalyzer {
 
+    // Optional "--name value" arguments accepted after the positional ones
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList("curve", "sweep", "from", "to", "cache", "policies", "tiering", "page-shifts", "approximate", "spill", "sample", "follow", "progress", "metrics", "shard", "shard-window"));
+
     public static void main(String[] args) {
-        if (args.length != 7) {
-            System.out.println(
-                    "Usage: java TraceAnalyzer <workload_name> <interval_window_ms> <real_runtime_ms> <trace_runtime_ms> <trace_dir> <dram_percentage> <sub_interval_duration_ms>");
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && OPTIONS.contains(args[i].substring(2)) && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+
+        if (positional.size() != 7) {
+            printUsage();
             return;
         }
 
-        String workloadName = args[0];
-        long intervalWindowMs = Long.parseLong(args[1]);
-        long realRuntime = Long.parseLong(args[2]);
-        long traceRuntime = Long.parseLong(args[3]);
-        String traceDir = args[4];
-        double dramPercentage = Double.parseDouble(args[5]);
-        float ptsIntervalDurationMs = Float.parseFloat(args[6]);
+        String workloadName = positional.get(0);
+        long intervalWindowMs = Long.parseLong(positional.get(1));
+        long realRuntime = Long.parseLong(positional.get(2));
+        long traceRuntime = Long.parseLong(positional.get(3));
+        String traceDir = positional.get(4);
+        double dramPercentage = Double.parseDouble(positional.get(5));
+        float ptsIntervalDurationMs = Float.parseFloat(positional.get(6));
 
         if (dramPercentage <= 0 || dramPercentage > 1) {
             System.out.println("DRAM percentage must be between 0 and 1 (exclusive)");
             return;
         }
 
+        // Hit-ratio-vs-capacity curve resolution, e.g. 0.01 for every 1% of DRAM capacity
+        int curvePoints = 0;
+        if (options.containsKey("curve")) {
+            double curveStep = Double.parseDouble(options.get("curve"));
+            // The curve's capacities are the multiples of the resolution up to 100%
+            double steps = 1 / curveStep;
+            if (curveStep <= 0 || curveStep > 1 || Math.abs(steps - Math.rint(steps)) > 1e-6 * steps) {
+                System.out.println("Curve resolution must be between 0 (exclusive) and 1 (inclusive), and divide 1 evenly, e.g. 0.01 or 0.25");
+                return;
+            }
+            curvePoints = (int) Math.rint(steps);
+        }
+
+        // (interval window, sub-interval duration) configurations, all evaluated in one pass
+        List<Long> windows = new ArrayList<>();
+        List<Float> subIntervals = new ArrayList<>();
+        windows.add(intervalWindowMs);
+        subIntervals.add(ptsIntervalDurationMs);
+        if (options.containsKey("sweep")) {
+            for (String configuration : options.get("sweep").split(",")) {
+                String[] parts = configuration.split(":");
+                if (parts.length != 2) {
+                    System.out.println("Sweep configurations must be <interval_window_ms>:<sub_interval_duration_ms>");
+                    return;
+                }
+                long sweepWindowMs = Long.parseLong(parts[0].trim());
+                float sweepSubIntervalMs = Float.parseFloat(parts[1].trim());
+                boolean duplicate = false;
+                for (int i = 0; i < windows.size(); i++) {
+                    duplicate |= windows.get(i) == sweepWindowMs && subIntervals.get(i) == sweepSubIntervalMs;
+                }
+                if (!duplicate) {
+                    windows.add(sweepWindowMs);
+                    subIntervals.add(sweepSubIntervalMs);
+                }
+            }
+        }
+
+        // Ranking policies evaluated besides the built-in ones
+        List<String> policySpecs = new ArrayList<>();
+        if (options.containsKey("policies")) {
+            for (String spec : options.get("policies").split(",")) {
+                policySpecs.add(spec.trim());
+            }
+        }
+        try {
+            RankingPolicies.create(policySpecs);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        // Larger page sizes aggregated from the scanned 4 KB pages, in ascending order
+        TreeSet<Integer> pageShifts = new TreeSet<>();
+        if (options.containsKey("page-shifts")) {
+            for (String shift : options.get("page-shifts").split(",")) {
+                int pageShift = Integer.parseInt(shift.trim());
+                if (pageShift < TraceScanner.PAGE_SHIFT || pageShift > 48) {
+                    System.out.println("Page shifts must be between " + TraceScanner.PAGE_SHIFT + " (4 KB) and 48");
+                    return;
+                }
+                pageShifts.add(pageShift);
+            }
+            pageShifts.remove(TraceScanner.PAGE_SHIFT);
+        }
+
+        // Migration bandwidth of the tiering simulation, in MB/s of real execution time
+        double migrationBandwidth = -1;
+        if (options.containsKey("tiering")) {
+            migrationBandwidth = options.get("tiering").equals("unlimited") ? Double.POSITIVE_INFINITY
+                    : Double.parseDouble(options.get("tiering"));
+            if (!(migrationBandwidth > 0)) {
+                System.out.println("The migration bandwidth must be positive, or unlimited");
+                return;
+            }
+        }
+
+        // Memory budget of the bounded page tables of approximate mode, in bytes,
+        // and whether exact runs are kept to compare against
+        long approximateBudget = 0;
+        boolean compareExact = false;
+        if (options.containsKey("approximate")) {
+            String[] parts = options.get("approximate").split(":");
+            approximateBudget = (long) (Double.parseDouble(parts[0]) * 1048576);
+            compareExact = parts.length == 2 && parts[1].equals("compare");
+            if (approximateBudget <= 0 || parts.length > 2 || (parts.length == 2 && !compareExact)) {
+                System.out.println("The approximate mode memory budget must be a positive number of MB, "
+                        + "optionally followed by :compare");
+                return;
+            }
+            if (!compareExact && (!pageShifts.isEmpty() || options.containsKey("cache"))) {
+                System.out.println("--page-shifts and --cache are ignored in approximate mode without :compare");
+                pageShifts.clear();
+            }
+        }
+
+        // Memory budget of the page statistics before they spill to disk, in bytes, and where they spill
+        long spillBudget = 0;
+        File spillRoot = null;
+        if (options.containsKey("spill")) {
+            String spill = options.get("spill");
+            int colon = spill.indexOf(':');
+            spillBudget = (long) (Double.parseDouble(colon < 0 ? spill : spill.substring(0, colon)) * 1048576);
+            spillRoot = new File(colon < 0 ? System.getProperty("java.io.tmpdir") : spill.substring(colon + 1));
+            if (spillBudget <= 0) {
+                System.out.println("The spill memory budget must be a positive number of MB");
+                return;
+            }
+            // These need every page of an interval in memory
+            for (String option : Arrays.asList("curve", "tiering", "page-shifts", "cache", "approximate")) {
+                if (options.containsKey(option)) {
+                    System.out.println("--spill cannot be combined with --" + option);
+                    return;
+                }
+            }
+        }
+
+        // Fraction of the pages analyzed, chosen by a hash of their page ID
+        double sampleRate = 1;
+        if (options.containsKey("sample")) {
+            sampleRate = Double.parseDouble(options.get("sample"));
+            if (!(sampleRate > 0 && sampleRate <= 1)) {
+                System.out.println("The sample rate must be between 0 (exclusive) and 1");
+                return;
+            }
+            // Their results would not be of whole sampled pages, or have no error bands
+            for (String option : Arrays.asList("page-shifts", "approximate", "spill")) {
+                if (options.containsKey(option)) {
+                    System.out.println("--sample cannot be combined with --" + option);
+                    return;
+                }
+            }
+        }
+
+        // Reorder window and idle timeout of follow mode, in ms
+        long reorderWindowMs = -1;
+        long idleTimeoutMs = 30000;
+        if (options.containsKey("follow")) {
+            String[] parts = options.get("follow").split(":");
+            reorderWindowMs = Long.parseLong(parts[0]);
+            if (parts.length == 2) {
+                idleTimeoutMs = (long) (Double.parseDouble(parts[1]) * 1000);
+            }
+            if (reorderWindowMs < 0 || idleTimeoutMs <= 0 || parts.length > 2) {
+                System.out.println("Follow mode takes <reorder_window_ms>[:<idle_timeout_s>]");
+                return;
+            }
+            // The cache is keyed by the finished trace files
+            if (options.containsKey("cache")) {
+                System.out.println("--follow cannot be combined with --cache");
+                return;
+            }
+        }
+
+        // Shard of the pages this process analyzes, and where its rank histograms go
+        int shardIndex = 0;
+        int shardCount = 1;
+        File shardDir = null;
+        double shardWindowDeviations = ShardHistograms.DEFAULT_WINDOW_DEVIATIONS;
+        if (options.containsKey("shard-window")) {
+            shardWindowDeviations = Double.parseDouble(options.get("shard-window"));
+            if (!options.containsKey("shard") || shardWindowDeviations <= 0) {
+                System.out.println("--shard-window needs --shard, and a positive number of standard deviations");
+                return;
+            }
+        }
+        if (options.containsKey("shard")) {
+            String shard = options.get("shard");
+            int colon = shard.indexOf(':');
+            String[] parts = (colon < 0 ? shard : shard.substring(0, colon)).split("/");
+            if (parts.length == 2) {
+                shardIndex = Integer.parseInt(parts[0]);
+                shardCount = Integer.parseInt(parts[1]);
+            }
+            shardDir = new File(colon < 0 ? "output/shards" : shard.substring(colon + 1));
+            if (parts.length != 2 || shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+                System.out.println("Shards are given as <index>/<count>[:<dir>], with 0 <= index < count");
+                return;
+            }
+            // The coordinator merges exact top N selections of 4 KB pages of whole intervals
+            for (String option : Arrays.asList("curve", "tiering", "page-shifts", "approximate", "spill", "sample",
+                    "cache", "follow")) {
+                if (options.containsKey(option)) {
+                    System.out.println("--shard cannot be combined with --" + option);
+                    return;
+                }
+            }
+        }
+
+        // Period of the progress lines and metrics samples, and where the metrics go
+        long progressPeriodMs = AnalysisMetrics.DEFAULT_PERIOD_MS;
+        if (options.containsKey("progress")) {
+            progressPeriodMs = (long) (Double.parseDouble(options.get("progress")) * 1000);
+            if (progressPeriodMs <= 0) {
+                System.out.println("The progress period must be a positive number of seconds");
+                return;
+            }
+        }
+        File metricsFile = options.containsKey("metrics") ? new File(options.get("metrics")) : null;
+
         double slowdownFactor = (double) traceRuntime / realRuntime;
-        long traceIntervalWindowMs = (long) (intervalWindowMs * slowdownFactor);
-        long tracePTSWindowMs = (long) (ptsIntervalDurationMs * slowdownFactor);
 
         // Print slowdown factor
         System.out.println("Slowdown factor: " + slowdownFactor);
 
         try {
-            List<File> traceFiles = getTraceFiles(traceDir);
-            long[] globalTimestamps = getGlobalTimestamps(traceFiles);
-            long globalStartTimestamp = globalTimestamps[0];
-            long globalEndTimestamp = globalTimestamps[1];
-
-            // Print global timestamps
-            System.out.println("Global start timestamp: " + globalStartTimestamp);
-            System.out.println("Global end timestamp: " + globalEndTimestamp);
+            // Throughput, queue depths and interval timings, as progress lines on
+            // stderr, a metrics file and JFR events
+            AnalysisMetrics metrics = new AnalysisMetrics(progressPeriodMs, options.containsKey("progress"),
+                    metricsFile);
+
+            List<File> traceFiles = null;
+            TraceFollower traceFollower = null;
+            long globalStartTimestamp;
+            long globalEndTimestamp;
+            long ticksPerTraceMs;
+            if (reorderWindowMs >= 0) {
+                // A trace still being written has no end yet, and is in MyPinTool's nanoseconds
+                traceFollower = new TraceFollower(new File(traceDir), reorderWindowMs, idleTimeoutMs);
+                traceFollower.setSampleRate(sampleRate);
+                traceFollower.setMetrics(metrics);
+                System.out.println((TraceReceiver.isPipe(new File(traceDir)) ? "Receiving from " : "Following ")
+                        + traceDir + " (reorder window: " + reorderWindowMs + " ms)");
+                globalStartTimestamp = awaitTraceStart(traceFollower);
+                if (globalStartTimestamp == Long.MAX_VALUE) {
+                    System.out.println("No trace records were written to " + traceDir);
+                    traceFollower.close();
+                    return;
+                }
+                globalEndTimestamp = Long.MAX_VALUE;
+                ticksPerTraceMs = TraceFollower.TICKS_PER_MS;
+                System.out.println("Global start timestamp: " + globalStartTimestamp);
+            } else {
+                traceFiles = getTraceFiles(traceDir);
+                long[] globalTimestamps = getGlobalTimestamps(traceFiles);
+                globalStartTimestamp = globalTimestamps[0];
+                globalEndTimestamp = globalTimestamps[1];
+                if (globalStartTimestamp > globalEndTimestamp) {
+                    System.out.println("No records in the trace files of " + traceDir);
+                    return;
+                }
 
-            // Convert interval in ms to interval in ticks used in timestamps
-            long traceIntervalWindowTicks = (globalEndTimestamp - globalStartTimestamp) / traceRuntime
-                    * traceIntervalWindowMs;
+                // Print global timestamps
+                System.out.println("Global start timestamp: " + globalStartTimestamp);
+                System.out.println("Global end timestamp: " + globalEndTimestamp);
 
-            // Convert PT scan time to ticks
-            long tracePTSWindowTicks = (globalEndTimestamp - globalStartTimestamp) / traceRuntime
-                    * tracePTSWindowMs;
+                ticksPerTraceMs = (globalEndTimestamp - globalStartTimestamp) / traceRuntime;
+            }
 
-            long currentIntervalStart = globalStartTimestamp;
-            long currentIntervalEnd = globalStartTimestamp + traceIntervalWindowTicks;
+            // Optionally restrict the analysis to [from, to) ms of real execution time
+            long analysisStartTimestamp = globalStartTimestamp;
+            long analysisEndTimestamp = globalEndTimestamp;
+            if (options.containsKey("from")) {
+                analysisStartTimestamp += ticksPerTraceMs
+                        * (long) (Double.parseDouble(options.get("from")) * slowdownFactor);
+            }
+            if (options.containsKey("to")) {
+                analysisEndTimestamp = Math.min(globalEndTimestamp, globalStartTimestamp + ticksPerTraceMs
+                        * (long) (Double.parseDouble(options.get("to")) * slowdownFactor));
+            }
+            if (analysisStartTimestamp >= analysisEndTimestamp) {
+                System.out.println("The analyzed range is empty (--from must be before --to and the end of the trace)");
+                return;
+            }
+            if (options.containsKey("from") || options.containsKey("to")) {
+                System.out.println("Analyzed range: " + analysisStartTimestamp + " - "
+                        + (analysisEndTimestamp == Long.MAX_VALUE ? "end of the trace" : analysisEndTimestamp));
+            }
 
             // Create the output directory if it doesn't exist
             File outputDir = new File("output");
@@ -59,86 +313,317 @@ public class TraceAnalyzer {
                 outputDir.mkdir();
             }
 
-            // Create the output filename using the workload name and other parameters
-            String outputFilename = String.format("output/%s-%d-%.2f-%.2f.csv",
-                    workloadName, intervalWindowMs, ptsIntervalDurationMs, dramPercentage);
+            metrics.setRange(analysisStartTimestamp, analysisEndTimestamp, ticksPerTraceMs);
+
+            TraceScanner traceScanner = null;
+            ForkJoinPool workerPool;
+            if (traceFollower != null) {
+                traceFollower.setStart(analysisStartTimestamp);
+                workerPool = traceFollower.getWorkerPool();
+            } else {
+                traceScanner = new TraceScanner(traceFiles);
+                traceScanner.setSampleRate(sampleRate);
+                traceScanner.setShard(shardIndex, shardCount);
+                traceScanner.setMetrics(metrics);
+                workerPool = traceScanner.getWorkerPool();
+            }
+
+            // Intervals are completed while the next ones are scanned, unless there
+            // is a single processor to do both or the page tables are budgeted for
+            // a single interval at a time
+            IntervalPipeline pipeline = Runtime.getRuntime().availableProcessors() > 1 && approximateBudget == 0
+                    && spillBudget == 0 ? new IntervalPipeline() : null;
+            if (pipeline != null) {
+                metrics.addQueue("pending_intervals", pipeline::getPendingCount);
+            }
+
+            // Configurations with cached page summaries are replayed instead of scanned
+            File cacheDir = options.containsKey("cache") ? new File(options.get("cache")) : null;
+            List<AnalysisRun> runs = new ArrayList<>();
+            for (int i = 0; i < windows.size(); i++) {
+                long traceIntervalWindowMs = (long) (windows.get(i) * slowdownFactor);
+                long tracePTSWindowMs = (long) (subIntervals.get(i) * slowdownFactor);
+
+                // Convert interval in ms to interval in ticks used in timestamps
+                long traceIntervalWindowTicks = ticksPerTraceMs * traceIntervalWindowMs;
+
+                // Convert PT scan time to ticks
+                long tracePTSWindowTicks = ticksPerTraceMs * tracePTSWindowMs;
+
+                // Every configuration gets its own policy instances
+                boolean labelled = windows.size() > 1 || !pageShifts.isEmpty() || compareExact;
+                List<RankingPolicy> policies = RankingPolicies.create(policySpecs);
+
+                // The configuration's share of the approximate mode memory budget
+                int maxPages = 0;
+                if (approximateBudget > 0) {
+                    maxPages = getMaxPages(approximateBudget / windows.size(),
+                            (int) ((traceIntervalWindowTicks + tracePTSWindowTicks - 1) / tracePTSWindowTicks),
+                            policies, workerPool.getParallelism());
+                    if (maxPages == 0) {
+                        System.out.println("The approximate mode memory budget is too small");
+                        return;
+                    }
+                }
+
+                // An approximate run of the configuration, next to the exact one if they are compared
+                AnalysisRun approximateRun = null;
+                if (compareExact) {
+                    approximateRun = new AnalysisRun(workloadName, windows.get(i), subIntervals.get(i),
+                            dramPercentage, curvePoints, traceIntervalWindowTicks, tracePTSWindowTicks,
+                            analysisStartTimestamp, RankingPolicies.create(policySpecs), workerPool,
+                            TraceScanner.PAGE_SHIFT, maxPages, "output/approximate", labelled);
+                }
+                AnalysisRun run = new AnalysisRun(workloadName, windows.get(i), subIntervals.get(i), dramPercentage,
+                        curvePoints, traceIntervalWindowTicks, tracePTSWindowTicks, analysisStartTimestamp,
+                        policies, workerPool, TraceScanner.PAGE_SHIFT,
+                        compareExact ? 0 : maxPages, "output", labelled);
+
+                // Each larger page size is aggregated from the next smaller one
+                AnalysisRun finerRun = run;
+                for (int pageShift : pageShifts) {
+                    AnalysisRun coarserRun = new AnalysisRun(workloadName, windows.get(i), subIntervals.get(i),
+                            dramPercentage, curvePoints, traceIntervalWindowTicks, tracePTSWindowTicks,
+                            analysisStartTimestamp, RankingPolicies.create(policySpecs), workerPool,
+                            pageShift, 0, "output", labelled);
+                    finerRun.setCoarserRun(coarserRun);
+                    finerRun = coarserRun;
+                }
+                run.setMetrics(metrics);
+                if (approximateRun != null) {
+                    approximateRun.setMetrics(metrics);
+                }
+                if (sampleRate < 1) {
+                    run.setSampleRate(sampleRate);
+                }
+                if (spillBudget > 0) {
+                    run.enableSpill(spillRoot, spillBudget / windows.size());
+                }
+                if (migrationBandwidth > 0) {
+                    // Bytes that can be promoted during one interval window
+                    double migrationCapBytes = migrationBandwidth * 1048576 * windows.get(i) / 1000;
+                    run.enableTiering(migrationCapBytes >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) migrationCapBytes);
+                }
+
+                if (cacheDir != null && (approximateBudget == 0 || compareExact)) {
+                    String key = PageSummaryCache.getKey(new File(traceDir), traceFiles, analysisStartTimestamp,
+                            analysisEndTimestamp, traceIntervalWindowTicks, tracePTSWindowTicks, policies, sampleRate);
+                    File cacheFile = PageSummaryCache.getFile(cacheDir, new File(traceDir), key);
+                    try (PageSummaryCache cachedSummaries = PageSummaryCache.open(cacheFile, key)) {
+                        if (cachedSummaries != null) {
+                            System.out.println("Using cached page summaries " + cacheFile);
+                            run.replay(cachedSummaries);
+                            run.finish();
+                            if (approximateRun != null) {
+                                runs.add(approximateRun);
+                            }
+                            continue;
+                        }
+                    }
+                    run.setSummaryCache(PageSummaryCache.create(cacheFile, key));
+                }
+                if (shardDir != null) {
+                    run.enableShard(ShardHistograms.create(
+                            ShardHistograms.getFile(shardDir, run.getOutputBaseName(), shardIndex, shardCount),
+                            shardIndex, shardCount, i, workloadName, windows.get(i), subIntervals.get(i),
+                            dramPercentage, traceIntervalWindowTicks, tracePTSWindowTicks, analysisStartTimestamp,
+                            labelled, policySpecs, shardWindowDeviations));
+                }
+                if (pipeline != null) {
+                    run.enablePipeline(pipeline, RankingPolicies.create(policySpecs));
+                }
+                runs.add(run);
 
-            // Initialize CSV writer
-            BufferedWriter csvWriter = new BufferedWriter(new FileWriter(outputFilename));
-            csvWriter.write(
-                    "interval_start_timestamp,interval_end_timestamp,number_of_pages_accessed,total_access_count,"
-                            + "actual_accesses_dram_hit_ratio,estimated_dram_hit_ratio,pts_dram_hit_ratio,microchronos_dram_hit_ratio\n");
+                // After the exact run, so that it finishes every interval first
+                if (approximateRun != null) {
+                    approximateRun.setExactRun(run);
+                    runs.add(approximateRun);
+                }
+            }
+
+            if (traceFollower != null) {
+                follow(traceFollower, runs, pipeline, metrics, analysisStartTimestamp, analysisEndTimestamp);
+                traceFollower.close();
+                for (AnalysisRun run : runs) {
+                    run.finish();
+                }
+                metrics.close();
+                return;
+            }
+
+            if (!runs.isEmpty() && analysisStartTimestamp > globalStartTimestamp) {
+                traceScanner.seek(analysisStartTimestamp);
+            }
 
             // We only contemplate 'full' intervals, i.e., intervals that
-            // start and end within the global trace timestamps
-            IntervalAnalyzer intervalAnalyzer = new IntervalAnalyzer(traceFiles, tracePTSWindowTicks);
-            while (currentIntervalEnd <= globalEndTimestamp) {
-                intervalAnalyzer.analyzeInterval(currentIntervalStart, currentIntervalEnd);
-
-                // Compare rankings and calculate accuracy
-                HitRatioStats hitRatios = calculateAccuracy(intervalAnalyzer, dramPercentage);
-                System.out.println(
-                        "<Interval " + currentIntervalStart + " - " + currentIntervalEnd + ">");
-
-                // Print number of pages accessed in interval
-                long numberOfPagesAccessed = hitRatios.getNumPagesAccessed();
-                System.out.println("Number of pages accessed: " + numberOfPagesAccessed);
-
-                // Print total number of accesses in interval
-                long totalAccessCount = hitRatios.getNumAccesses();
-                System.out.println("Total access count: " + totalAccessCount);
-
-                // If number of pages accessed is bigger than 0, print hit ratios rounded to 3
-                // decimal places
-                if (numberOfPagesAccessed > 0) {
-                    double actualHitRatioRounded = BigDecimal.valueOf(hitRatios.getActualHitRatio())
-                            .setScale(3, RoundingMode.HALF_UP)
-                            .doubleValue();
-
-                    double estimatedHitRatioRounded = BigDecimal.valueOf(hitRatios.getEstimatedHitRatio())
-                            .setScale(3, RoundingMode.HALF_UP)
-                            .doubleValue();
-
-                    double ptsHitRatioRounded = BigDecimal.valueOf(hitRatios.getPTSHitRatio())
-                            .setScale(3, RoundingMode.HALF_UP)
-                            .doubleValue();
-
-                    double microChronosHitRatioRounded = BigDecimal.valueOf(hitRatios.getMicroChronosHitRatio())
-                            .setScale(3, RoundingMode.HALF_UP)
-                            .doubleValue();
-
-                    System.out.println("Actual hit ratio: " + actualHitRatioRounded);
-                    System.out.println("Estimated hit ratio: " + estimatedHitRatioRounded);
-                    System.out.println("PTS hit ratio: " + ptsHitRatioRounded);
-                    System.out.println("MicroChronos hit ratio: " + microChronosHitRatioRounded);
-
-                    // Write to CSV
-                    csvWriter.write(currentIntervalStart + "," + currentIntervalEnd + "," + numberOfPagesAccessed + ","
-                            + totalAccessCount + "," + hitRatios.getActualHitRatio() + ","
-                            + hitRatios.getEstimatedHitRatio() + ","
-                            + hitRatios.getPTSHitRatio() + ","
-                            + hitRatios.getMicroChronosHitRatio() + "\n");
-                } else {
-                    // If no pages were accessed, don't print hit ratios and print a message
-                    System.out.println("No pages accessed in this interval");
-                }
-
-                currentIntervalStart = currentIntervalEnd;
-                currentIntervalEnd = currentIntervalStart + traceIntervalWindowTicks;
-            }
-
-            csvWriter.close();
-
-            calculateOverallDRAMHitRatiosAndVariance(outputFilename);
+            // start and end within the global (or analyzed) trace timestamps.
+            // The trace is scanned up to the nearest interval end of any
+            // configuration, so every configuration sees each record once.
+            long scanStart = analysisStartTimestamp;
+            while (true) {
+                List<IntervalAnalyzer> activeAnalyzers = new ArrayList<>();
+                long scanEnd = Long.MAX_VALUE;
+                for (AnalysisRun run : runs) {
+                    if (run.getIntervalEnd() <= analysisEndTimestamp) {
+                        activeAnalyzers.add(run.getIntervalAnalyzer());
+                        scanEnd = Math.min(scanEnd, run.getIntervalEnd());
+                    }
+                }
+                if (activeAnalyzers.isEmpty()) {
+                    break;
+                }
+
+                long scanStartNanos = System.nanoTime();
+                traceScanner.scan(scanStart, scanEnd, activeAnalyzers);
+                addScanTime(runs, analysisEndTimestamp, System.nanoTime() - scanStartNanos);
+                metrics.setPosition(scanEnd);
+
+                for (AnalysisRun run : runs) {
+                    if (run.getIntervalEnd() == scanEnd) {
+                        run.finishInterval();
+                    }
+                }
+                scanStart = scanEnd;
+            }
+
+            // The pipeline ranks on the scanner's worker pool
+            if (pipeline != null) {
+                pipeline.drain();
+                pipeline.close();
+            }
+            traceScanner.close();
+
+            for (AnalysisRun run : runs) {
+                run.finish();
+            }
+            metrics.close();
         } catch (IOException e) {
             e.printStackTrace();
+            // A failed analysis, e.g. a shard worker's, exits with an error status
+            System.exit(1);
         }
     }
 
+    // Wait until the watermark has passed the earliest record of a followed
+    // trace, so that it is the start of the trace. Long.MAX_VALUE if the trace
+    // went idle without any record.
+    private static long awaitTraceStart(TraceFollower traceFollower) throws IOException {
+        while (true) {
+            boolean growing = traceFollower.poll();
+            long earliestTimestamp = traceFollower.getEarliestTimestamp();
+            if (!growing || (earliestTimestamp != Long.MAX_VALUE
+                    && traceFollower.getWatermark() >= earliestTimestamp)) {
+                return earliestTimestamp;
+            }
+        }
+    }
+
+    // Analyze a trace while it is being written. Records are aggregated as
+    // the watermark passes them, and an interval is finished once it has
+    // passed the interval's end. Once the trace stops growing, every interval
+    // that ends before its last record is finished, as in a scan.
+    private static void follow(TraceFollower traceFollower, List<AnalysisRun> runs, IntervalPipeline pipeline,
+            AnalysisMetrics metrics, long analysisStartTimestamp, long analysisEndTimestamp) throws IOException {
+        long scanStart = analysisStartTimestamp;
+        boolean growing = true;
+        while (true) {
+            long watermark = growing ? traceFollower.getWatermark() : Long.MAX_VALUE;
+            long endTimestamp = growing ? analysisEndTimestamp
+                    : Math.min(analysisEndTimestamp, traceFollower.getLatestTimestamp());
+
+            List<IntervalAnalyzer> activeAnalyzers = new ArrayList<>();
+            long scanEnd = Long.MAX_VALUE;
+            for (AnalysisRun run : runs) {
+                if (run.getIntervalEnd() <= endTimestamp) {
+                    activeAnalyzers.add(run.getIntervalAnalyzer());
+                    scanEnd = Math.min(scanEnd, run.getIntervalEnd());
+                }
+            }
+            if (activeAnalyzers.isEmpty()) {
+                break;
+            }
+
+            // Aggregate what is settled so far, and wait for more of the trace
+            if (scanEnd > watermark) {
+                if (watermark > scanStart) {
+                    long releaseStartNanos = System.nanoTime();
+                    traceFollower.release(scanStart, watermark, activeAnalyzers);
+                    addScanTime(runs, endTimestamp, System.nanoTime() - releaseStartNanos);
+                    metrics.setPosition(watermark);
+                    scanStart = watermark;
+                }
+                growing = traceFollower.poll();
+                continue;
+            }
+
+            long releaseStartNanos = System.nanoTime();
+            traceFollower.release(scanStart, scanEnd, activeAnalyzers);
+            addScanTime(runs, endTimestamp, System.nanoTime() - releaseStartNanos);
+            metrics.setPosition(scanEnd);
+            for (AnalysisRun run : runs) {
+                if (run.getIntervalEnd() == scanEnd) {
+                    run.finishInterval();
+                }
+            }
+            scanStart = scanEnd;
+        }
+        if (pipeline != null) {
+            pipeline.drain();
+            pipeline.close();
+        }
+
+        System.out.println("Followed threads: " + traceFollower.getThreadCount());
+        if (traceFollower.getLateRecordCount() > 0) {
+            System.out.println("Records later than the reorder window (dropped): " + traceFollower.getLateRecordCount());
+        }
+    }
+
+    // Count a scan's time to every run it scanned an interval of
+    private static void addScanTime(List<AnalysisRun> runs, long endTimestamp, long nanos) {
+        for (AnalysisRun run : runs) {
+            if (run.getIntervalEnd() <= endTimestamp) {
+                run.addScanTime(nanos);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println(
+                "Usage: java TraceAnalyzer <workload_name> <interval_window_ms> <real_runtime_ms> <trace_runtime_ms> <trace_dir> <dram_percentage> <sub_interval_duration_ms> [options]");
+        System.out.println("Options:");
+        System.out.println("  --curve <resolution>  Also write hit ratio vs. DRAM capacity curves, e.g. 0.01 for every 1%");
+        System.out.println("  --sweep <w:s,...>     Also evaluate these interval_window_ms:sub_interval_duration_ms pairs in the same pass");
+        System.out.println("  --from <ms>           Only analyze from this many ms of real execution time onwards");
+        System.out.println("  --to <ms>             Only analyze up to this many ms of real execution time");
+        System.out.println("  --cache <dir>         Save per-interval page summaries here, and rank from them on later runs");
+        System.out.println("  --tiering <MB/s>       Also simulate DRAM sets carried across intervals, migrating at most");
+        System.out.println("                        this many MB/s of real execution time (or unlimited)");
+        System.out.println("  --page-shifts <s,...>  Also analyze larger pages, e.g. 21,30 for 2 MB and 1 GB pages");
+        System.out.println("  --approximate <MB>    Bound the page tables of each run to this much memory and estimate hit");
+        System.out.println("                        ratios with error bounds; <MB>:compare also runs the exact analysis");
+        System.out.println("  --spill <MB>[:<dir>]  Keep at most this many MB of page statistics per interval in memory,");
+        System.out.println("                        spilling the rest to files in dir (default: the temporary directory)");
+        System.out.println("  --sample <rate>       Only analyze this fraction of the pages, e.g. 0.01, chosen by page ID hash,");
+        System.out.println("                        and report approximate 95% bands of the hit ratios");
+        System.out.println("  --follow <ms>[:<s>]   Analyze the trace while MyPinTool writes it, holding records back by this");
+        System.out.println("                        reorder window; it ends once no file grew for s seconds (default: 30).");
+        System.out.println("                        trace_dir may also be a named pipe that MyPinTool sends the trace to");
+        System.out.println("  --progress <s>        Print progress, throughput and an ETA to stderr every s seconds");
+        System.out.println("  --metrics <file>      Write throughput, queue depths and per-interval page counts and scan");
+        System.out.println("                        and rank times to this CSV (every 10 s, or the --progress period)");
+        System.out.println("  --shard <i>/<n>[:<dir>]  Only analyze shard i of n of the pages, and write their rank histograms");
+        System.out.println("                        to dir (default: output/shards) for ShardCoordinator to merge");
+        System.out.println("  --shard-window <d>    With --shard, rank single pages within d standard deviations of the");
+        System.out.println("                        shard's expected share of the top N (default: 8)");
+        System.out.println("  --policies <p,...>    Also evaluate these ranking policies: "
+                + String.join(", ", RankingPolicies.getNames()) + " (name[:parameter]) or a class name");
+    }
+
     private static List<File> getTraceFiles(String dirPath) {
 
         File dir = new File(dirPath);
-        File[] files = dir.listFiles();
+        // Skip sub-directories and hidden entries such as the .index directory
+        File[] files = dir.listFiles(file -> file.isFile() && !file.isHidden());
 
         return Arrays.asList(files);
     }
@@ -148,145 +633,200 @@ public class TraceAnalyzer {
         long globalEndTimestamp = Long.MIN_VALUE;
 
         for (File file : traceFiles) {
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            String line;
-
-            // Read the first line
-            if ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                long timestamp = Long.parseLong(parts[0], 16);
-                if (timestamp < globalStartTimestamp)
-                    globalStartTimestamp = timestamp;
+            // Binary and compressed traces carry their first and last timestamps in the header
+            if (TraceFormat.isBinaryTrace(file)) {
+                TraceFormat.Header header = TraceFormat.readHeader(file);
+                if (header.getRecordCount() > 0) {
+                    globalStartTimestamp = Math.min(globalStartTimestamp, header.getFirstTimestamp());
+                    globalEndTimestamp = Math.max(globalEndTimestamp, header.getLastTimestamp());
+                }
+                continue;
+            }
+            if (CompressedTraceFormat.isCompressedTrace(file)) {
+                TraceFormat.Header header = CompressedTraceFormat.readHeader(file);
+                if (header.getRecordCount() > 0) {
+                    globalStartTimestamp = Math.min(globalStartTimestamp, header.getFirstTimestamp());
+                    globalEndTimestamp = Math.max(globalEndTimestamp, header.getLastTimestamp());
+                }
+                continue;
             }
 
-            reader.close();
-
-            // Read the last line
-            RandomAccessFile raf = new RandomAccessFile(file, "r");
-            long fileLength = raf.length() - 1;
-            raf.seek(fileLength);
-
-            // Move to the beginning of the last line
-            while (fileLength > 0) {
-                fileLength--;
-                raf.seek(fileLength);
-                if (raf.readByte() == '\n') {
-                    break;
+            // A saved trace index already knows the first and last timestamps
+            TraceIndex index = TraceIndex.load(file);
+            if (index != null) {
+                if (index.hasRecords()) {
+                    globalStartTimestamp = Math.min(globalStartTimestamp, index.getFirstTimestamp());
+                    globalEndTimestamp = Math.max(globalEndTimestamp, index.getLastTimestamp());
                 }
+                continue;
+            }
+            if (file.length() == 0) {
+                continue;
             }
 
-            String lastLine = raf.readLine();
-            String[] parts = lastLine.split(",");
-            long timestamp = Long.parseLong(parts[0], 16);
-            if (timestamp > globalEndTimestamp)
-                globalEndTimestamp = timestamp;
+            // Read the first and last lines; a file starting or ending with a
+            // malformed line is scanned for its well-formed ones instead
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(file));
+                String line;
+
+                // Read the first line
+                if ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    long timestamp = Long.parseLong(parts[0], 16);
+                    if (timestamp < globalStartTimestamp)
+                        globalStartTimestamp = timestamp;
+                }
 
-            raf.close();
+                reader.close();
+
+                // Read the last line from a block at the end of the file
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    int blockSize = (int) Math.min(raf.length(), 64 * 1024);
+                    byte[] block = new byte[blockSize];
+                    raf.seek(raf.length() - blockSize);
+                    raf.readFully(block);
+
+                    int lineEnd = blockSize;
+                    while (lineEnd > 0 && (block[lineEnd - 1] == '\n' || block[lineEnd - 1] == '\r')) {
+                        lineEnd--;
+                    }
+                    int lineStart = lineEnd;
+                    while (lineStart > 0 && block[lineStart - 1] != '\n') {
+                        lineStart--;
+                    }
+
+                    String lastLine = new String(block, lineStart, lineEnd - lineStart, "ISO-8859-1");
+                    String[] parts = lastLine.split(",");
+                    long timestamp = Long.parseLong(parts[0], 16);
+                    if (timestamp > globalEndTimestamp)
+                        globalEndTimestamp = timestamp;
+                }
+            } catch (NumberFormatException e) {
+                index = TraceIndex.build(file);
+                if (index.hasRecords()) {
+                    globalStartTimestamp = Math.min(globalStartTimestamp, index.getFirstTimestamp());
+                    globalEndTimestamp = Math.max(globalEndTimestamp, index.getLastTimestamp());
+                }
+            }
         }
 
         return new long[] { globalStartTimestamp, globalEndTimestamp };
     }
 
-    private static HitRatioStats calculateAccuracy(IntervalAnalyzer intervalAnalyzer, double dramPercentage) {
+    // Page bound of the tables of an approximate run within a memory budget:
+    // a table per worker and the interval's table, each ranked when pruned,
+    // and the interval's table ranked again. 0 if the budget cannot hold 16
+    // pages per table.
+    static int getMaxPages(long budgetBytes, int ptsSubIntervalCount, List<RankingPolicy> policies, int workers) {
+        long bytesPerPage = PageTable.getBoundedBytesPerPage(ptsSubIntervalCount, policies) * (workers + 1)
+                + 12L * policies.size() + 8;
+        long maxPages = Math.min(budgetBytes / bytesPerPage, 1 << 30);
+        return maxPages < 16 ? 0 : (int) Long.highestOneBit(maxPages);
+    }
+
+    // Number of pages of the interval that fit in DRAM
+    static int getDRAMPageCount(IntervalAnalyzer intervalAnalyzer, double dramPercentage) {
+        return (int) Math.ceil(intervalAnalyzer.getTotalPageCount() * dramPercentage);
+    }
+
+    static HitRatioStats calculateAccuracy(IntervalAnalyzer intervalAnalyzer, double dramPercentage)
+            throws IOException {
 
         // We look at the top DRAM percentage of pages
-        int topN = (int) Math.ceil(intervalAnalyzer.getTotalPageCount() * dramPercentage);
+        int topN = getDRAMPageCount(intervalAnalyzer, dramPercentage);
 
         // Calculate total accesses of all pages
         long totalAccesses = intervalAnalyzer.getTotalAccessCount();
 
-        // Collect and compare hot pages, then calculate total accesses of top N pages
-        List<PageStats> topActual = intervalAnalyzer.getHotPagesByTotalAccess().subList(0, topN);
-        long topActualAccesses = topActual.stream().mapToLong(PageStats::getAccessCount).sum();
-
-        List<PageStats> topEstimated = intervalAnalyzer.getHotPagesByFirstAccess().subList(0, topN);
-        long topEstimatedAccesses = topEstimated.stream().mapToLong(PageStats::getAccessCount).sum();
-
-        List<PageStats> topPTS = intervalAnalyzer.getHotPagesByPTSScore().subList(0, topN);
-        long topPTSAccesses = topPTS.stream().mapToLong(PageStats::getAccessCount).sum();
-
-        List<PageStats> topMicroChronos = intervalAnalyzer.getHotPagesByMicroChronos().subList(0, topN);
-        long topMicroChronosAccesses = topMicroChronos.stream().mapToLong(PageStats::getAccessCount).sum();
+        // Select the top N pages of every policy and calculate their DRAM hit ratio
+        long[] topAccessCounts = intervalAnalyzer.getTopAccessCounts(topN);
+        double[] hitRatios = new double[topAccessCounts.length];
+        for (int p = 0; p < topAccessCounts.length; p++) {
+            hitRatios[p] = (double) topAccessCounts[p] / totalAccesses;
+        }
 
-        // Calculate DRAM hit ratio of top N pages
-        double hitRatioActual = (double) topActualAccesses / totalAccesses;
-        double hitRatioEstimated = (double) topEstimatedAccesses / totalAccesses;
-        double hitRatioPTS = (double) topPTSAccesses / totalAccesses;
-        double hitRatioMicroChronos = (double) topMicroChronosAccesses / totalAccesses;
+        double sampleRate = intervalAnalyzer.getSampleRate();
+        if (sampleRate < 1) {
+            return getSampledAccuracy(intervalAnalyzer, topN, hitRatios, sampleRate);
+        }
+        return new HitRatioStats(hitRatios, intervalAnalyzer.getTotalPageCount(), totalAccesses);
+    }
 
-        return new HitRatioStats(hitRatioActual, hitRatioEstimated, hitRatioPTS, hitRatioMicroChronos,
-                intervalAnalyzer.getTotalPageCount(), totalAccesses);
+    // Hit ratios of sampled pages, a ratio estimate for all pages, with their
+    // approximate 95% bands and the page and access counts scaled up to all
+    // pages. Every page is kept with probability q, so the variance of a hit
+    // ratio R is about (1 - q) * sum((hits - R * accesses)^2) / (sum(accesses))^2
+    // over the sampled pages, where hits are the page's accesses if it is in
+    // the top N and 0 otherwise (Taylor linearization). The band is 1.96 of
+    // its standard deviations, but it is no confidence interval: it takes the
+    // top N as fixed, and it cannot account for hot pages the sample missed,
+    // which skew the hit ratio of every interval alike. A bootstrap over the
+    // sampled pages does not see those pages either, and covered no better.
+    private static HitRatioStats getSampledAccuracy(IntervalAnalyzer intervalAnalyzer, int topN, double[] hitRatios,
+            double sampleRate) {
+        double totalAccesses = intervalAnalyzer.getTotalAccessCount();
+        double squaredAccesses = intervalAnalyzer.getSquaredAccessCount();
+        double[] topSquaredAccesses = intervalAnalyzer.getTopSquaredAccessCounts(topN);
+        double[] confidenceIntervals = new double[hitRatios.length];
+        for (int p = 0; p < hitRatios.length; p++) {
+            double r = hitRatios[p];
+            double residuals = (1 - r) * (1 - r) * topSquaredAccesses[p]
+                    + r * r * (squaredAccesses - topSquaredAccesses[p]);
+            double variance = (1 - sampleRate) * residuals / (totalAccesses * totalAccesses);
+            confidenceIntervals[p] = 1.96 * Math.sqrt(Math.max(0, variance));
+        }
+        return new HitRatioStats(hitRatios, confidenceIntervals,
+                Math.round(intervalAnalyzer.getTotalPageCount() / sampleRate),
+                Math.round(totalAccesses / sampleRate));
     }
 
-    private static void calculateOverallDRAMHitRatiosAndVariance(String csvFilePath) {
+    static void calculateOverallDRAMHitRatiosAndVariance(String csvFilePath, List<RankingPolicy> policies) {
+        int policyCount = policies.size();
         long totalAccessCount = 0;
-        double totalActualHits = 0;
-        double totalEstimatedHits = 0;
-        double totalPTSHits = 0;
-        double totalMicroChronosHits = 0;
+        double[] totalHits = new double[policyCount];
 
-        List<Double> actualHitRatios = new ArrayList<>();
-        List<Double> estimatedHitRatios = new ArrayList<>();
-        List<Double> ptsHitRatios = new ArrayList<>();
-        List<Double> microChronosHitRatios = new ArrayList<>();
+        List<List<Double>> hitRatios = new ArrayList<>();
+        for (int p = 0; p < policyCount; p++) {
+            hitRatios.add(new ArrayList<>());
+        }
 
         try (BufferedReader reader = new BufferedReader(new FileReader(csvFilePath))) {
             String line;
             reader.readLine(); // Skip header
 
+            // Policy hit ratios follow the four leading interval columns
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(",");
                 long intervalAccessCount = Long.parseLong(parts[3]);
-                double actualHitRatio = Double.parseDouble(parts[4]);
-                double estimatedHitRatio = Double.parseDouble(parts[5]);
-                double ptsHitRatio = Double.parseDouble(parts[6]);
-                double microChronosHitRatio = Double.parseDouble(parts[7]);
-
                 totalAccessCount += intervalAccessCount;
-                totalActualHits += intervalAccessCount * actualHitRatio;
-                totalEstimatedHits += intervalAccessCount * estimatedHitRatio;
-                totalPTSHits += intervalAccessCount * ptsHitRatio;
-                totalMicroChronosHits += intervalAccessCount * microChronosHitRatio;
 
-                actualHitRatios.add(actualHitRatio);
-                estimatedHitRatios.add(estimatedHitRatio);
-                ptsHitRatios.add(ptsHitRatio);
-                microChronosHitRatios.add(microChronosHitRatio);
+                for (int p = 0; p < policyCount; p++) {
+                    double hitRatio = Double.parseDouble(parts[4 + p]);
+                    totalHits[p] += intervalAccessCount * hitRatio;
+                    hitRatios.get(p).add(hitRatio);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        double overallActualHitRatio = totalActualHits / totalAccessCount;
-        double overallEstimatedHitRatio = totalEstimatedHits / totalAccessCount;
-        double overallPTSHitRatio = totalPTSHits / totalAccessCount;
-        double overallMicroChronosHitRatio = totalMicroChronosHits / totalAccessCount;
-
-        double overallActualHitRatioRounded = BigDecimal.valueOf(overallActualHitRatio)
-                .setScale(3, RoundingMode.HALF_UP)
-                .doubleValue();
-        double overallEstimatedHitRatioRounded = BigDecimal.valueOf(overallEstimatedHitRatio)
-                .setScale(3, RoundingMode.HALF_UP)
-                .doubleValue();
-        double overallPTSHitRatioRounded = BigDecimal.valueOf(overallPTSHitRatio)
-                .setScale(3, RoundingMode.HALF_UP)
-                .doubleValue();
-        double overallMicroChronosHitRatioRounded = BigDecimal.valueOf(overallMicroChronosHitRatio)
-                .setScale(3, RoundingMode.HALF_UP)
-                .doubleValue();
-
-        double varianceActual = calculateVariance(actualHitRatios, overallActualHitRatio);
-        double varianceEstimated = calculateVariance(estimatedHitRatios, overallEstimatedHitRatio);
-        double variancePTS = calculateVariance(ptsHitRatios, overallPTSHitRatio);
-        double varianceMicroChronos = calculateVariance(microChronosHitRatios, overallMicroChronosHitRatio);
-
         System.out.println("\n---------------------------------------------\n");
         System.out.println("Overall DRAM Hit Ratios:");
-        System.out.println("Actual: " + overallActualHitRatioRounded + " (Variance: " + varianceActual + ")");
-        System.out.println("Estimated: " + overallEstimatedHitRatioRounded + " (Variance: " + varianceEstimated + ")");
-        System.out.println("PTS: " + overallPTSHitRatioRounded + " (Variance: " + variancePTS + ")");
-        System.out.println(
-                "MicroChronos: " + overallMicroChronosHitRatioRounded + " (Variance: " + varianceMicroChronos + ")");
+        // E.g. every interval of an approximate run unresolvable
+        if (totalAccessCount == 0) {
+            System.out.println("No intervals reported");
+            return;
+        }
+        for (int p = 0; p < policyCount; p++) {
+            double overallHitRatio = totalHits[p] / totalAccessCount;
+            double overallHitRatioRounded = BigDecimal.valueOf(overallHitRatio)
+                    .setScale(3, RoundingMode.HALF_UP)
+                    .doubleValue();
+            double variance = calculateVariance(hitRatios.get(p), overallHitRatio);
+
+            System.out.println(policies.get(p).getLabel() + ": " + overallHitRatioRounded + " (Variance: " + variance + ")");
+        }
     }
 
     private static double calculateVariance(List<Double> hitRatios, double mean) {
@@ -0,0 +1,76 @@
+import java.io.*;
+
+/**
+ * A run of whole records read from one trace file, scanned by a single worker.
+ *
+ * Chunks of a file are produced in order by a {@link TraceChunkReader}. A
+ * chunk that straddles an interval end is kept, holding its first record at
+ * or after the end, and the next interval resumes scanning at that record.
+ */
+public abstract class TraceChunk {
+
+    // Current record, valid after next() returned true
+    protected long timestamp;
+    protected long address;
+    protected char accessType;
+
+    // Timestamp of the last record in the chunk
+    protected long lastTimestamp = Long.MIN_VALUE;
+
+    // Bytes of the file the chunk was read from
+    protected int byteLength;
+
+    // Whether next() returns the current record again
+    private boolean holding;
+
+    // Move to the next record of the chunk
+    public boolean next() {
+        if (holding) {
+            holding = false;
+            return true;
+        }
+        return advance();
+    }
+
+    // Keep the current record for the next scan of the chunk, which resumes
+    // at it instead of parsing the chunk again from its first record
+    public void holdRecord() {
+        holding = true;
+    }
+
+    // Go back to the first record of the chunk
+    public void rewind() {
+        holding = false;
+        restart();
+    }
+
+    // Parse the record after the current one
+    protected abstract boolean advance();
+
+    // Parse from the first record again
+    protected abstract void restart();
+
+    // Return the chunk's storage once it is no longer needed
+    public void release() {
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public char getAccessType() {
+        return accessType;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public int getByteLength() {
+        return byteLength;
+    }
+}
@@ -0,0 +1,28 @@
+import java.io.*;
+import java.util.Queue;
+
+/**
+ * Splits a trace file into consecutive record-aligned {@link TraceChunk}s.
+ */
+public interface TraceChunkReader extends Closeable {
+
+    // Next chunk of the file, or null once the whole file has been read
+    TraceChunk nextChunk() throws IOException;
+
+    // Position the reader at or shortly before the first record with a
+    // timestamp >= the given one; earlier records are skipped by the scanner
+    void seek(long timestamp) throws IOException;
+
+    // Open a chunk reader matching the on-disk format of the file (binary,
+    // compressed or text). Text and compressed readers borrow their buffers
+    // from bufferPool and return them on release.
+    static TraceChunkReader open(File file, Queue<byte[]> bufferPool) throws IOException {
+        if (TraceFormat.isBinaryTrace(file)) {
+            return new MappedTraceChunkReader(file);
+        }
+        if (CompressedTraceFormat.isCompressedTrace(file)) {
+            return new CompressedTraceChunkReader(file, bufferPool);
+        }
+        return new TextTraceChunkReader(file, bufferPool);
+    }
+}
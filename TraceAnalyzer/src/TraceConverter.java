@@ -0,0 +1,70 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Converts sorted text trace files into the binary format described in
+ * {@link TraceFormat} or the block-compressed format described in
+ * {@link CompressedTraceFormat}, one output file per input file with the same
+ * name.
+ */
+public class TraceConverter {
+
+    public static void main(String[] args) {
+        TraceWriter.Format format = TraceWriter.Format.BINARY;
+        if (args.length == 4 && args[2].equals("--format")) {
+            format = TraceWriter.parseFormat(args[3]);
+        }
+        if ((args.length != 2 && args.length != 4) || format == null || format == TraceWriter.Format.TEXT) {
+            System.out.println("Usage: java TraceConverter <sorted_trace_dir> <binary_trace_dir> [--format binary|compressed]");
+            return;
+        }
+
+        File inputDir = new File(args[0]);
+        File outputDir = new File(args[1]);
+
+        File[] files = inputDir.listFiles(File::isFile);
+        if (files == null) {
+            System.out.println("Input directory does not exist: " + inputDir);
+            return;
+        }
+
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Long>> futures = new ArrayList<>();
+
+        for (File file : files) {
+            File outputFile = new File(outputDir, file.getName());
+            TraceWriter.Format outputFormat = format;
+            futures.add(executor.submit(() -> convertFile(file, outputFile, outputFormat)));
+        }
+
+        for (int i = 0; i < files.length; i++) {
+            try {
+                long records = futures.get(i).get();
+                System.out.println("Converted " + files[i] + " (" + records + " records)");
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+
+        executor.shutdown();
+    }
+
+    public static long convertFile(File input, File output, TraceWriter.Format format) throws IOException {
+        long recordCount = 0;
+        try (TraceCursor cursor = new TextTraceCursor(input);
+                TraceWriter writer = TraceWriter.open(output, format)) {
+
+            while (cursor.hasRecord()) {
+                writer.write(cursor.getTimestamp(), cursor.getAccessType(), cursor.getAddress());
+                recordCount++;
+                cursor.advance();
+            }
+        }
+        return recordCount;
+    }
+}
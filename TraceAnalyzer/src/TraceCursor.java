@@ -0,0 +1,32 @@
+import java.io.*;
+
+/**
+ * Forward-only cursor over a single sorted trace file.
+ *
+ * A cursor keeps its file open for the whole run and always holds the next
+ * unconsumed record, so an interval can stop exactly at the first record past
+ * its end and the following interval resumes from that same record.
+ */
+public interface TraceCursor extends Closeable {
+
+    File getFile();
+
+    boolean hasRecord();
+
+    long getTimestamp();
+
+    long getAddress();
+
+    char getAccessType();
+
+    // Move to the next record, or mark the cursor as exhausted
+    void advance() throws IOException;
+
+    // Open a cursor matching the on-disk format of the file (binary or text)
+    static TraceCursor open(File file) throws IOException {
+        if (TraceFormat.isBinaryTrace(file)) {
+            return new MappedTraceCursor(file);
+        }
+        return new TextTraceCursor(file);
+    }
+}
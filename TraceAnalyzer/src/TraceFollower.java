@@ -0,0 +1,397 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Follows a trace directory while MyPinTool is still writing it, instead of
+ * scanning finished, sorted files (see {@link TraceScanner}).
+ *
+ * Every poll reads the complete lines appended to each per-thread file since
+ * the last poll, and picks up thread files that appeared in the meantime.
+ * Each thread writes its records when its buffer fills up, so records arrive
+ * out of order, but only by a bounded amount of time: the reorder window.
+ * Records are held per file until the low watermark, the oldest of the
+ * latest timestamps of the files still being written minus the reorder
+ * window, has passed them. Once it has, no earlier record is expected any
+ * more, and the records can be handed to the analyzers. Records that still
+ * arrive behind the watermark are dropped and counted.
+ *
+ * A file that has not grown for a reorder window does not hold the
+ * watermark back, so threads that exited or sleep don't stall the analysis.
+ * The trace is over once no file has grown for the idle timeout.
+ *
+ * If the trace directory is a named pipe instead, the records are received
+ * through it from MyPinTool (see {@link TraceReceiver}), held per thread the
+ * same way, and the trace is over once MyPinTool has closed the pipe.
+ */
+public class TraceFollower implements Closeable {
+
+    // MyPinTool's timestamps are std::chrono nanoseconds
+    public static final long TICKS_PER_MS = 1000000;
+
+    // Wait between polls that found nothing new
+    private static final long POLL_INTERVAL_MS = 100;
+
+    // At most this much of a file is read per poll, so that the analysis keeps up
+    private static final int READ_LIMIT = 16 << 20;
+
+    private final File traceDir;
+    private final ForkJoinPool workerPool;
+    private final long reorderWindowTicks;
+    private final long reorderWindowNanos;
+    private final long idleTimeoutNanos;
+    private final Map<String, FollowedThread> threads = new TreeMap<>();
+    private final TraceReceiver receiver;
+
+    // Read buffer of each worker
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[TextTraceChunkReader.CHUNK_SIZE]);
+
+    private long sampleThreshold = -1;
+    private long lastGrowthNanos = System.nanoTime();
+    private long earliestTimestamp = Long.MAX_VALUE;
+    private long latestTimestamp = Long.MIN_VALUE;
+    private long startTimestamp = Long.MIN_VALUE;
+    private long releasedUpTo = Long.MIN_VALUE;
+
+    // Bytes and records read per thread, and records held, when metrics are on
+    private AnalysisMetrics metrics;
+    private volatile long heldRecords;
+
+    public TraceFollower(File traceDir, long reorderWindowMs, long idleTimeoutMs) {
+        this.traceDir = traceDir;
+        this.receiver = TraceReceiver.isPipe(traceDir) ? new TraceReceiver(traceDir) : null;
+        this.workerPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.reorderWindowTicks = reorderWindowMs * TICKS_PER_MS;
+        this.reorderWindowNanos = reorderWindowMs * 1000000;
+        this.idleTimeoutNanos = idleTimeoutMs * 1000000;
+    }
+
+    public ForkJoinPool getWorkerPool() {
+        return workerPool;
+    }
+
+    // Count the bytes and records read from every thread, the records held
+    // back by the watermark, and the frames received ahead of the analysis.
+    // Before the first poll, so that every thread is counted.
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+        metrics.addQueue("held_records", () -> (int) Math.min(Integer.MAX_VALUE, heldRecords));
+        if (receiver != null) {
+            metrics.addQueue("received_frames", receiver.getRing()::size);
+        }
+    }
+
+    // Only records of this fraction of the pages are kept, as in TraceScanner.setSampleRate
+    public void setSampleRate(double sampleRate) {
+        this.sampleThreshold = sampleRate < 1 ? (long) (sampleRate * Long.MAX_VALUE) : -1;
+    }
+
+    // Records before the start of the analysis are dropped as they are read
+    public void setStart(long startTimestamp) {
+        this.startTimestamp = startTimestamp;
+    }
+
+    // Read what was appended to the trace since the last poll, waiting a
+    // little if nothing was. False once no file has grown for the idle timeout.
+    public boolean poll() throws IOException {
+        boolean grown;
+        if (receiver != null) {
+            // Whether the pipe was closed is read first, so that every frame received before is drained
+            boolean ended = receiver.hasEnded();
+            grown = receiveFrames();
+            if (ended && !grown) {
+                return false;
+            }
+        } else {
+            grown = readFiles();
+        }
+
+        long now = System.nanoTime();
+        long held = 0;
+        for (FollowedThread thread : threads.values()) {
+            earliestTimestamp = Math.min(earliestTimestamp, thread.earliestTimestamp);
+            latestTimestamp = Math.max(latestTimestamp, thread.latestTimestamp);
+            held += thread.count;
+        }
+        heldRecords = held;
+        if (grown) {
+            lastGrowthNanos = now;
+        } else {
+            // A pipe is only over once it is closed
+            if (receiver == null && now - lastGrowthNanos >= idleTimeoutNanos) {
+                return false;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Read and hold what was appended to every file, picking up new ones. True if any grew.
+    private boolean readFiles() throws IOException {
+        File[] listed = traceDir.listFiles(file -> file.isFile() && !file.isHidden());
+        if (listed != null) {
+            for (File file : listed) {
+                if (!threads.containsKey(file.getName())) {
+                    threads.put(file.getName(), new FollowedThread(file, file.getName()));
+                }
+            }
+        }
+
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+        for (FollowedThread thread : threads.values()) {
+            tasks.add(workerPool.submit(thread::read));
+        }
+        boolean grown = false;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            try {
+                grown |= task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Failed to read the followed trace", e.getCause());
+            }
+        }
+        return grown;
+    }
+
+    // Hold the records of the frames received so far, at most a ring's worth,
+    // so that the analysis keeps up. True if there were any.
+    private boolean receiveFrames() throws IOException {
+        FrameRing ring = receiver.getRing();
+        long now = System.nanoTime();
+        int frames = 0;
+        byte[] frame;
+        while (frames < READ_LIMIT / TraceReceiver.FRAME_SIZE && (frame = ring.peek()) != null) {
+            String name = TraceReceiver.getProcessId(frame) + "." + TraceReceiver.getThreadId(frame);
+            FollowedThread thread = threads.get(name);
+            if (thread == null) {
+                thread = new FollowedThread(null, name);
+                threads.put(name, thread);
+            }
+
+            ByteBuffer records = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+            int count = TraceReceiver.getRecordCount(frame);
+            for (int r = 0; r < count; r++) {
+                int offset = TraceReceiver.HEADER_SIZE + r * TraceReceiver.MEMREF_SIZE;
+                long address = records.getLong(offset);
+                // Empty records are skipped, as in MyPinTool's trace files
+                if (address != 0) {
+                    thread.hold(records.getLong(offset + 16), address >>> TraceScanner.PAGE_SHIFT);
+                }
+            }
+            thread.lastGrowthNanos = now;
+            if (thread.metricsSource != null) {
+                thread.metricsSource.addBytesRead(TraceReceiver.HEADER_SIZE + count * TraceReceiver.MEMREF_SIZE);
+                thread.metricsSource.addRecordsParsed(count);
+            }
+            ring.consume();
+            frames++;
+        }
+        return frames > 0;
+    }
+
+    // Every record before this timestamp has been read, or Long.MIN_VALUE while
+    // nothing has been read yet
+    public long getWatermark() {
+        long now = System.nanoTime();
+        long watermark = Long.MAX_VALUE;
+        boolean anyActive = false;
+        for (FollowedThread thread : threads.values()) {
+            if (thread.latestTimestamp == Long.MIN_VALUE || now - thread.lastGrowthNanos > reorderWindowNanos) {
+                continue;
+            }
+            watermark = Math.min(watermark, thread.latestTimestamp);
+            anyActive = true;
+        }
+        // With every file quiet, nothing is on its way
+        if (!anyActive) {
+            watermark = latestTimestamp;
+        }
+        return watermark == Long.MIN_VALUE ? Long.MIN_VALUE : watermark - reorderWindowTicks;
+    }
+
+    // Earliest and latest timestamps read so far
+    public long getEarliestTimestamp() {
+        return earliestTimestamp;
+    }
+
+    public long getLatestTimestamp() {
+        return latestTimestamp;
+    }
+
+    // Threads (trace files, or threads sending to the pipe) seen so far
+    public int getThreadCount() {
+        return threads.size();
+    }
+
+    // Records that arrived after the watermark had passed them, and were dropped
+    public long getLateRecordCount() {
+        long count = 0;
+        for (FollowedThread thread : threads.values()) {
+            count += thread.lateRecords;
+        }
+        return count;
+    }
+
+    // Aggregate every held record in [from, to) into the analyzers, and drop
+    // the records before to. Records read from now on that are before to
+    // arrived too late.
+    public void release(long from, long to, List<IntervalAnalyzer> analyzers) {
+        IntervalAnalyzer[] targets = analyzers.toArray(new IntervalAnalyzer[0]);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (FollowedThread thread : threads.values()) {
+            if (thread.count > 0) {
+                tasks.add(workerPool.submit(() -> thread.release(from, to, targets)));
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        long held = 0;
+        for (FollowedThread thread : threads.values()) {
+            held += thread.count;
+        }
+        heldRecords = held;
+        releasedUpTo = Math.max(releasedUpTo, to);
+    }
+
+    @Override
+    public void close() throws IOException {
+        workerPool.shutdown();
+        if (receiver != null) {
+            receiver.close();
+        }
+        for (FollowedThread thread : threads.values()) {
+            if (thread.input != null) {
+                thread.input.close();
+            }
+        }
+    }
+
+    // A thread, with its trace file unless it sends to the pipe, and its
+    // records not released yet in arrival order
+    private class FollowedThread {
+
+        private final File file;
+        private final RandomAccessFile input;
+        private final AnalysisMetrics.Source metricsSource;
+        private long position;
+        private long lastGrowthNanos = System.nanoTime();
+        private long earliestTimestamp = Long.MAX_VALUE;
+        private long latestTimestamp = Long.MIN_VALUE;
+        private long lateRecords;
+
+        private long[] timestamps = new long[1024];
+        private long[] pageIds = new long[1024];
+        private int count;
+
+        FollowedThread(File file, String name) throws IOException {
+            this.file = file;
+            this.input = file != null ? new RandomAccessFile(file, "r") : null;
+            this.metricsSource = metrics != null ? metrics.addSource(name) : null;
+        }
+
+        // Read and hold the complete lines appended since the last read.
+        // True if there were any.
+        boolean read() throws IOException {
+            byte[] buffer = buffers.get();
+            long[] record = new long[2];
+            boolean grown = false;
+            long end = input.length();
+            long limit = Math.min(end, position + READ_LIMIT);
+            while (position < limit) {
+                int length = (int) Math.min(buffer.length, limit - position);
+                input.seek(position);
+                input.readFully(buffer, 0, length);
+
+                // A line being written is left for the next read
+                int complete = length;
+                while (complete > 0 && buffer[complete - 1] != '\n') {
+                    complete--;
+                }
+                if (complete == 0) {
+                    if (length == buffer.length) {
+                        throw new IOException("Line longer than " + buffer.length + " bytes in " + file);
+                    }
+                    break;
+                }
+
+                int start = 0;
+                long records = 0;
+                while (start < complete) {
+                    int lineEnd = TextTraceFormat.parseNextLine(buffer, start, complete, record);
+                    if (lineEnd >= 0) {
+                        hold(record[0], (record[1] & ~TraceFormat.WRITE_BIT) >>> TraceScanner.PAGE_SHIFT);
+                        records++;
+                    } else {
+                        lineEnd = -lineEnd - 1;
+                    }
+                    start = lineEnd + 1;
+                }
+                position += complete;
+                grown = true;
+                if (metricsSource != null) {
+                    metricsSource.addBytesRead(complete);
+                    metricsSource.addRecordsParsed(records);
+                }
+            }
+            if (grown) {
+                lastGrowthNanos = System.nanoTime();
+            }
+            return grown;
+        }
+
+        private void hold(long timestamp, long pageId) {
+            earliestTimestamp = Math.min(earliestTimestamp, timestamp);
+            latestTimestamp = Math.max(latestTimestamp, timestamp);
+
+            // Pages left out by sampling are dropped right away
+            if (sampleThreshold >= 0 && !TraceScanner.isSampled(pageId, sampleThreshold)) {
+                return;
+            }
+            if (timestamp < startTimestamp) {
+                return;
+            }
+            if (timestamp < releasedUpTo) {
+                lateRecords++;
+                return;
+            }
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                pageIds = Arrays.copyOf(pageIds, count * 2);
+            }
+            timestamps[count] = timestamp;
+            pageIds[count] = pageId;
+            count++;
+        }
+
+        // Aggregate the records in [from, to), keeping the ones from to onwards.
+        // The others were before the start of the analysis.
+        void release(long from, long to, IntervalAnalyzer[] targets) {
+            PageTable[] tables = new PageTable[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                tables[i] = targets[i].getWorkerPageTable();
+            }
+
+            int kept = 0;
+            for (int r = 0; r < count; r++) {
+                long timestamp = timestamps[r];
+                if (timestamp >= to) {
+                    timestamps[kept] = timestamp;
+                    pageIds[kept] = pageIds[r];
+                    kept++;
+                } else if (timestamp >= from) {
+                    for (int i = 0; i < targets.length; i++) {
+                        targets[i].recordAccess(tables[i], pageIds[r], timestamp);
+                    }
+                }
+            }
+            count = kept;
+        }
+    }
+}
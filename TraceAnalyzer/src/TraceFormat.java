@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-width binary trace format produced by {@link TraceConverter}.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header  : magic (8) | version (4) | record size (4) | record count (8)
+ *             | first timestamp (8) | last timestamp (8) | reserved (8)
+ *   records : timestamp (8) | address with the access type in bit 63 (8)
+ * </pre>
+ * A set bit 63 marks a write; user-space addresses never use it.
+ */
+public final class TraceFormat {
+
+    public static final long MAGIC = 0x314E49424D54504DL; // "MPTMBIN1"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 48;
+    public static final int RECORD_SIZE = 16;
+    public static final long WRITE_BIT = 1L << 63;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private TraceFormat() {
+    }
+
+    public static long encodeAddress(long address, char accessType) {
+        return accessType == 'W' ? address | WRITE_BIT : address & ~WRITE_BIT;
+    }
+
+    public static long decodeAddress(long encoded) {
+        return encoded & ~WRITE_BIT;
+    }
+
+    public static char decodeAccessType(long encoded) {
+        return (encoded & WRITE_BIT) != 0 ? 'W' : 'R';
+    }
+
+    // Check the magic number without assuming anything about the file contents
+    public static boolean isBinaryTrace(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).order(BYTE_ORDER);
+            channel.read(buffer, 0);
+            return buffer.getLong(0) == MAGIC;
+        }
+    }
+
+    public static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("Truncated binary trace header");
+            }
+        }
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a binary trace file");
+        }
+        int version = buffer.getInt(8);
+        int recordSize = buffer.getInt(12);
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("Unsupported binary trace version " + version + " (record size " + recordSize + ")");
+        }
+        return new Header(buffer.getLong(16), buffer.getLong(24), buffer.getLong(32));
+    }
+
+    public static Header readHeader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    public static void writeHeader(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        buffer.putLong(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RECORD_SIZE);
+        buffer.putLong(header.getRecordCount());
+        buffer.putLong(header.getFirstTimestamp());
+        buffer.putLong(header.getLastTimestamp());
+        buffer.putLong(0L);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    public static class Header {
+        private final long recordCount;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+
+        public Header(long recordCount, long firstTimestamp, long lastTimestamp) {
+            this.recordCount = recordCount;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public long getFirstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public long getLastTimestamp() {
+            return lastTimestamp;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates synthetic trace directories in MyPinTool's layout: one sorted
+ * {@code buffer.out.<pid>.<tid>} file per thread, with
+ * {@code hex_ts,R|W,hex_addr} lines (or any other {@link TraceWriter.Format}).
+ *
+ * Every thread draws its accesses from the same footprint of 4 KB pages:
+ * <ul>
+ * <li>{@code uniform}: every page is equally likely.</li>
+ * <li>{@code zipf:<exponent>}: the page of rank r is accessed with a
+ * probability proportional to 1 / r^exponent.</li>
+ * <li>{@code hotspot:<hot_fraction>:<hot_probability>}: a fraction of the
+ * pages receives the given fraction of the accesses, uniformly.</li>
+ * </ul>
+ * Ranks are scattered over the footprint by a fixed permutation, and each
+ * phase shifts that permutation so the hot pages change completely. Threads
+ * generate their files in parallel, each from its own random stream derived
+ * from the seed, so the output only depends on the options.
+ */
+public class TraceGenerator {
+
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList("threads", "accesses", "footprint",
+            "skew", "phases", "writes", "rate", "seed", "pid", "format"));
+
+    private static final long PAGE_SIZE = 4096;
+
+    // Page IDs must stay below this for the rank permutation not to overflow
+    private static final long MAX_FOOTPRINT_PAGES = 1L << 36;
+
+    // First timestamp of every thread, similar to real timestamp counter values
+    private static final long START_TIMESTAMP = 0x1e946f00000000L;
+
+    // Base address of the footprint, in the heap range of a typical process
+    private static final long BASE_PAGE = 0x7f0000000L;
+
+    private final int threads;
+    private final long accesses;
+    private final long footprintPages;
+    private final String skew;
+    private final int phases;
+    private final double writeFraction;
+    private final int ticksPerAccess;
+    private final long seed;
+    private final long pid;
+    private final TraceWriter.Format format;
+
+    // Skew parameters
+    private ZipfSampler zipfSampler;
+    private long hotPages;
+    private double hotProbability;
+
+    // Rank permutation: rank -> (rank * multiplier) mod footprint
+    private final long multiplier;
+
+    public static void main(String[] args) {
+        if (args.length < 1 || (args.length - 1) % 2 != 0) {
+            printUsage();
+            return;
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if (!OPTIONS.contains(name)) {
+                printUsage();
+                return;
+            }
+            options.put(name, args[i + 1]);
+        }
+
+        TraceWriter.Format format = TraceWriter.parseFormat(options.getOrDefault("format", "text"));
+        if (format == null) {
+            printUsage();
+            return;
+        }
+
+        TraceGenerator generator;
+        try {
+            generator = new TraceGenerator(
+                    Integer.parseInt(options.getOrDefault("threads", "4")),
+                    Long.parseLong(options.getOrDefault("accesses", "10000000")),
+                    parseSize(options.getOrDefault("footprint", "1G")) / PAGE_SIZE,
+                    options.getOrDefault("skew", "zipf:0.99"),
+                    Integer.parseInt(options.getOrDefault("phases", "1")),
+                    Double.parseDouble(options.getOrDefault("writes", "0.3")),
+                    Integer.parseInt(options.getOrDefault("rate", "20")),
+                    Long.parseLong(options.getOrDefault("seed", "42")),
+                    Long.parseLong(options.getOrDefault("pid", "1")),
+                    format);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            return;
+        }
+
+        try {
+            generator.generate(new File(args[0]));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java TraceGenerator <output_dir> [options]");
+        System.out.println("Options:");
+        System.out.println("  --threads <n>         Number of threads, i.e. trace files (default 4)");
+        System.out.println("  --accesses <n>        Total number of accesses over all threads (default 10000000)");
+        System.out.println("  --footprint <size>    Memory footprint, e.g. 512M or 64G (default 1G)");
+        System.out.println("  --skew <skew>         uniform, zipf:<exponent> or hotspot:<hot_fraction>:<hot_probability>");
+        System.out.println("                        (default zipf:0.99)");
+        System.out.println("  --phases <n>          Number of phases with different hot pages (default 1)");
+        System.out.println("  --writes <fraction>   Fraction of accesses that are writes (default 0.3)");
+        System.out.println("  --rate <ticks>        Mean timestamp ticks between two accesses of a thread (default 20)");
+        System.out.println("  --seed <n>            Random seed (default 42)");
+        System.out.println("  --pid <n>             Process ID used in the file names (default 1)");
+        System.out.println("  --format <format>     Output format: text (default), binary or compressed");
+    }
+
+    // Size in bytes, with an optional K, M, G or T suffix
+    private static long parseSize(String size) {
+        String digits = size.toUpperCase();
+        long unit = 1;
+        int suffix = "KMGT".indexOf(digits.charAt(digits.length() - 1));
+        if (suffix >= 0) {
+            unit = 1L << (10 * (suffix + 1));
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return Long.parseLong(digits) * unit;
+    }
+
+    public TraceGenerator(int threads, long accesses, long footprintPages, String skew, int phases,
+            double writeFraction, int ticksPerAccess, long seed, long pid, TraceWriter.Format format) {
+        if (threads < 1 || accesses < 0 || phases < 1 || ticksPerAccess < 1) {
+            throw new IllegalArgumentException("threads, phases and rate must be positive");
+        }
+        if (footprintPages < 1 || footprintPages > MAX_FOOTPRINT_PAGES) {
+            throw new IllegalArgumentException("The footprint must be between 4K and " + (MAX_FOOTPRINT_PAGES >> 18) + "G");
+        }
+        this.threads = threads;
+        this.accesses = accesses;
+        this.footprintPages = footprintPages;
+        this.skew = skew;
+        this.phases = phases;
+        this.writeFraction = writeFraction;
+        this.ticksPerAccess = ticksPerAccess;
+        this.seed = seed;
+        this.pid = pid;
+        this.format = format;
+
+        String[] parts = skew.split(":");
+        if (parts[0].equals("zipf") && parts.length == 2) {
+            zipfSampler = new ZipfSampler(footprintPages, Double.parseDouble(parts[1]));
+        } else if (parts[0].equals("hotspot") && parts.length == 3) {
+            hotPages = Math.max(1, Math.min(footprintPages, (long) (footprintPages * Double.parseDouble(parts[1]))));
+            hotProbability = Double.parseDouble(parts[2]);
+        } else if (!skew.equals("uniform")) {
+            throw new IllegalArgumentException("Unknown skew: " + skew);
+        }
+
+        // A multiplier coprime with the footprint makes the permutation a bijection
+        long candidate = 0x3FFFFFBL; // prime below 2^26, so rank * multiplier < 2^62
+        while (gcd(candidate, footprintPages) != 1) {
+            candidate += 2;
+        }
+        this.multiplier = candidate;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public void generate(File outputDir) throws IOException {
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, Runtime.getRuntime().availableProcessors()));
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int tid = 0; tid < threads; tid++) {
+            // Spread the accesses evenly, the first threads taking the remainder
+            long threadAccesses = accesses / threads + (tid < accesses % threads ? 1 : 0);
+            File file = new File(outputDir, "buffer.out." + pid + "." + tid);
+            int threadId = tid;
+            futures.add(executor.submit(() -> {
+                generateThread(threadId, threadAccesses, file);
+                return null;
+            }));
+        }
+
+        try {
+            for (int tid = 0; tid < threads; tid++) {
+                try {
+                    futures.get(tid).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("Generated %d accesses in %d files in %s (%.1f M accesses/s)%n",
+                accesses, threads, outputDir, accesses / seconds / 1e6);
+    }
+
+    private void generateThread(int tid, long threadAccesses, File file) throws IOException {
+        // Independent, reproducible stream per thread
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + tid);
+        long phaseLength = Math.max(1, (threadAccesses + phases - 1) / phases);
+        long phaseShift = Math.max(1, footprintPages / phases);
+
+        long timestamp = START_TIMESTAMP + random.nextInt(ticksPerAccess);
+        try (TraceWriter writer = TraceWriter.open(file, format)) {
+            for (long i = 0; i < threadAccesses; i++) {
+                long phase = i / phaseLength;
+                long rank = sampleRank(random);
+                long page = ((rank * multiplier) % footprintPages + phase * phaseShift) % footprintPages;
+                long address = ((BASE_PAGE + page) * PAGE_SIZE) | (random.nextInt((int) (PAGE_SIZE / 8)) * 8L);
+                char accessType = random.nextDouble() < writeFraction ? 'W' : 'R';
+
+                timestamp += 1 + random.nextInt(2 * ticksPerAccess - 1);
+                writer.write(timestamp, accessType, address);
+            }
+        }
+    }
+
+    // Rank in [0, footprint), 0 being the hottest page
+    private long sampleRank(SplittableRandom random) {
+        if (zipfSampler != null) {
+            return zipfSampler.sample(random) - 1;
+        }
+        if (hotPages > 0) {
+            if (random.nextDouble() < hotProbability || hotPages == footprintPages) {
+                return random.nextLong(hotPages);
+            }
+            return hotPages + random.nextLong(footprintPages - hotPages);
+        }
+        return random.nextLong(footprintPages);
+    }
+}
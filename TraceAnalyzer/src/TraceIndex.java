@@ -0,0 +1,254 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse timestamp index of a sorted text trace file.
+ *
+ * The index holds the (timestamp, byte offset) of one line every
+ * {@link #STRIDE} lines, plus the first and last timestamps of the file, so
+ * a reader can start close to any point in time after an O(log n) lookup
+ * instead of scanning from the beginning. Indexes are built on first use and
+ * saved next to the trace, in {@code <trace_dir>/.index/<file>.idx}, to be
+ * reused by later runs; an index is rebuilt when its trace file changes.
+ * A file without any well-formed line has no first and last timestamps, and
+ * its index is never saved.
+ *
+ * Binary traces need no index: their fixed-width records can be binary
+ * searched directly, and compressed traces carry their own block index.
+ */
+public class TraceIndex {
+
+    public static final int STRIDE = 1 << 16;
+    public static final String INDEX_DIR = ".index";
+
+    private static final long MAGIC = 0x315844494D54504DL; // "MPTMIDX1"
+    private static final int SCAN_BUFFER_SIZE = 4 << 20;
+
+    private final long[] timestamps;
+    private final long[] offsets;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    private TraceIndex(long[] timestamps, long[] offsets, long firstTimestamp, long lastTimestamp) {
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java TraceIndex <sorted_trace_dir>");
+            return;
+        }
+
+        File[] files = new File(args[0]).listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null) {
+            System.out.println("Trace directory does not exist: " + args[0]);
+            return;
+        }
+
+        for (File file : files) {
+            try {
+                if (TraceFormat.isBinaryTrace(file) || CompressedTraceFormat.isCompressedTrace(file)) {
+                    continue;
+                }
+                TraceIndex index = loadOrBuild(file);
+                if (!index.hasRecords()) {
+                    System.out.println("No records in " + file + ", not indexed");
+                    continue;
+                }
+                System.out.println("Indexed " + file + " (" + index.timestamps.length + " entries)");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static File getIndexFile(File traceFile) {
+        return new File(new File(traceFile.getParentFile(), INDEX_DIR), traceFile.getName() + ".idx");
+    }
+
+    // Load the saved index of the file, or build it and try to save it if the
+    // file has records
+    public static TraceIndex loadOrBuild(File traceFile) throws IOException {
+        TraceIndex index = load(traceFile);
+        if (index != null) {
+            return index;
+        }
+
+        index = build(traceFile);
+        if (!index.hasRecords()) {
+            return index;
+        }
+        try {
+            index.save(traceFile);
+        } catch (IOException e) {
+            // A read-only trace directory only costs a rebuild next time
+            System.out.println("Could not save index of " + traceFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    // Saved index of the file, or null if there is none or it is stale
+    public static TraceIndex load(File traceFile) throws IOException {
+        File indexFile = getIndexFile(traceFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readLong() != MAGIC || in.readInt() != STRIDE
+                    || in.readLong() != traceFile.length() || in.readLong() != traceFile.lastModified()) {
+                return null;
+            }
+
+            long firstTimestamp = in.readLong();
+            long lastTimestamp = in.readLong();
+            int entries = in.readInt();
+            long[] timestamps = new long[entries];
+            long[] offsets = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                timestamps[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new TraceIndex(timestamps, offsets, firstTimestamp, lastTimestamp);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void save(File traceFile) throws IOException {
+        File indexFile = getIndexFile(traceFile);
+        indexFile.getParentFile().mkdirs();
+
+        // Write to a temporary file first so a concurrent run never sees a partial index
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(STRIDE);
+            out.writeLong(traceFile.length());
+            out.writeLong(traceFile.lastModified());
+            out.writeLong(firstTimestamp);
+            out.writeLong(lastTimestamp);
+            out.writeInt(timestamps.length);
+            for (int i = 0; i < timestamps.length; i++) {
+                out.writeLong(timestamps[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    // Scan the whole file once, recording one well-formed line every STRIDE lines
+    public static TraceIndex build(File traceFile) throws IOException {
+        long[] timestamps = new long[1024];
+        long[] offsets = new long[1024];
+        int entries = 0;
+        long firstTimestamp = Long.MIN_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        try (FileChannel channel = FileChannel.open(traceFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            byte[] data = buffer.array();
+            long[] record = new long[2];
+
+            long bufferOffset = 0; // file offset of data[0]
+            long lineNumber = 0;
+            long nextIndexedLine = 0;
+            boolean endOfFile = false;
+
+            while (!endOfFile) {
+                if (channel.read(buffer) < 0) {
+                    endOfFile = true;
+                }
+                int length = buffer.position();
+                int lineStart = 0;
+
+                for (int i = 0; i < length; i++) {
+                    if (data[i] != '\n') {
+                        continue;
+                    }
+                    if (TextTraceFormat.parseLine(data, lineStart, i, record)) {
+                        long timestamp = record[0];
+                        if (lineNumber >= nextIndexedLine) {
+                            if (entries == timestamps.length) {
+                                timestamps = Arrays.copyOf(timestamps, entries * 2);
+                                offsets = Arrays.copyOf(offsets, entries * 2);
+                            }
+                            timestamps[entries] = timestamp;
+                            offsets[entries] = bufferOffset + lineStart;
+                            entries++;
+                            nextIndexedLine = lineNumber + STRIDE;
+                        }
+                        if (firstTimestamp == Long.MIN_VALUE) {
+                            firstTimestamp = timestamp;
+                        }
+                        lastTimestamp = timestamp;
+                    }
+                    lineNumber++;
+                    lineStart = i + 1;
+                }
+
+                // Last line without a trailing newline
+                if (endOfFile && lineStart < length) {
+                    if (TextTraceFormat.parseLine(data, lineStart, length, record)) {
+                        long timestamp = record[0];
+                        if (firstTimestamp == Long.MIN_VALUE) {
+                            firstTimestamp = timestamp;
+                        }
+                        lastTimestamp = timestamp;
+                    }
+                }
+
+                // Keep the partial line at the start of the buffer for the next read
+                if (lineStart == 0 && length == data.length) {
+                    throw new IOException("Line longer than " + SCAN_BUFFER_SIZE + " bytes in " + traceFile);
+                }
+                System.arraycopy(data, lineStart, data, 0, length - lineStart);
+                buffer.position(length - lineStart);
+                bufferOffset += lineStart;
+            }
+        }
+
+        return new TraceIndex(Arrays.copyOf(timestamps, entries), Arrays.copyOf(offsets, entries),
+                firstTimestamp, lastTimestamp);
+    }
+
+    // Offset of an indexed line at or before the first line with a timestamp >= timestamp
+    public long findOffset(long timestamp) {
+        // Last entry strictly before the timestamp; every line before it is earlier too
+        int low = 0;
+        int high = timestamps.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? 0 : offsets[found];
+    }
+
+    // Whether the file has any well-formed line, and so first and last timestamps
+    public boolean hasRecords() {
+        return firstTimestamp != Long.MIN_VALUE;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+}
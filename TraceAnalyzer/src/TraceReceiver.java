@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Receives MyPinTool's trace buffers through a named pipe (see its
+ * {@code -pipe} knob), instead of trace files.
+ *
+ * The pipe carries frames of at most PIPE_BUF (4096) bytes, so that the
+ * frames that MyPinTool's threads write to the pipe concurrently are never
+ * interleaved. A frame is a header of three little-endian 32-bit integers
+ * (process ID, thread ID, record count) followed by that many raw
+ * {@code MEMREF} structs of 24 bytes: the effective address (8 bytes), the
+ * access type ({@code 'R'} or {@code 'W'}, then 7 bytes of padding) and the
+ * timestamp (8 bytes).
+ *
+ * A reader thread copies the frames into a bounded {@link FrameRing}. While
+ * the ring is full it stops reading, so MyPinTool's threads block on the pipe
+ * until the analysis catches up. The trace ends when every writer has closed
+ * the pipe.
+ */
+public class TraceReceiver implements Closeable {
+
+    public static final int FRAME_SIZE = 4096;
+    public static final int HEADER_SIZE = 12;
+    public static final int MEMREF_SIZE = 24;
+    public static final int MAX_FRAME_RECORDS = (FRAME_SIZE - HEADER_SIZE) / MEMREF_SIZE;
+
+    // Frames held between the pipe and the analysis, 16 MB
+    private static final int RING_FRAMES = 4096;
+
+    // Wait of the reader thread while the ring is full
+    private static final long FULL_WAIT_NANOS = 100000;
+
+    private final File pipe;
+    private final FrameRing ring = new FrameRing(RING_FRAMES, FRAME_SIZE);
+    private final Thread reader;
+
+    private volatile boolean ended;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    public TraceReceiver(File pipe) {
+        this.pipe = pipe;
+        this.reader = new Thread(this::receive, "trace-receiver");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Whether the file is a named pipe (or another special file) rather than a trace directory
+    public static boolean isPipe(File file) {
+        return Files.isReadable(file.toPath()) && !file.isDirectory() && !file.isFile();
+    }
+
+    public FrameRing getRing() {
+        return ring;
+    }
+
+    // Whether every writer has closed the pipe. Frames published before are
+    // still in the ring.
+    public boolean hasEnded() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        return ended;
+    }
+
+    // Process ID, thread ID and record count of a frame
+    public static int getProcessId(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+    }
+
+    public static int getThreadId(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+    }
+
+    public static int getRecordCount(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+    }
+
+    private void receive() {
+        // Opening blocks until MyPinTool opens the pipe for writing
+        try (InputStream input = new FileInputStream(pipe)) {
+            while (!closed) {
+                byte[] frame = ring.claim();
+                if (frame == null) {
+                    LockSupport.parkNanos(FULL_WAIT_NANOS);
+                    continue;
+                }
+                if (!readFully(input, frame, 0, HEADER_SIZE, true)) {
+                    break;
+                }
+                int count = getRecordCount(frame);
+                if (count < 0 || count > MAX_FRAME_RECORDS) {
+                    throw new IOException("Malformed frame of " + count + " records in " + pipe);
+                }
+                readFully(input, frame, HEADER_SIZE, count * MEMREF_SIZE, false);
+                ring.publish();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            ended = true;
+        }
+    }
+
+    // Fill frame[offset, offset + length) from the pipe. False at the end of
+    // the stream before any byte, if allowed there.
+    private boolean readFully(InputStream input, byte[] frame, int offset, int length, boolean endAllowed)
+            throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = input.read(frame, offset + read, length - read);
+            if (n < 0) {
+                if (read == 0 && endAllowed) {
+                    return false;
+                }
+                throw new IOException("Truncated frame in " + pipe);
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+}
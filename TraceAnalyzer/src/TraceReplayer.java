@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Replays a trace directory into a named pipe the way MyPinTool's
+ * {@code -pipe} knob sends it (see {@link TraceReceiver}), to test the
+ * analyzer's pipe ingestion without PIN.
+ *
+ * Like PIN, every thread sends its records a buffer at a time, and the
+ * thread whose next buffer starts first sends next, so buffers of different
+ * threads overlap in time by up to a buffer, as in a real trace.
+ */
+public class TraceReplayer {
+
+    // Records per thread buffer of MyPinTool (2 pages of 24-byte MEMREFs)
+    private static final int DEFAULT_BUFFER_RECORDS = 8192 / TraceReceiver.MEMREF_SIZE;
+
+    public static void main(String[] args) {
+        if (args.length != 2 && !(args.length == 4 && args[2].equals("--buffer"))) {
+            printUsage();
+            return;
+        }
+        int bufferRecords = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_BUFFER_RECORDS;
+        if (bufferRecords < 1) {
+            printUsage();
+            return;
+        }
+
+        try {
+            long records = replay(new File(args[0]), new File(args[1]), bufferRecords);
+            System.out.println("Replayed " + records + " records");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java TraceReplayer <trace_dir> <pipe> [--buffer <records>]");
+        System.out.println("  --buffer <records>    Records per thread buffer (default " + DEFAULT_BUFFER_RECORDS + ", as in MyPinTool)");
+    }
+
+    // Send every record of the (text or binary) trace files of the directory
+    // to the pipe, and close it. Returns the number of records sent.
+    public static long replay(File traceDir, File pipe, int bufferRecords) throws IOException {
+        File[] files = traceDir.listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null) {
+            throw new FileNotFoundException(traceDir.toString());
+        }
+        Arrays.sort(files);
+
+        List<TraceCursor> cursors = new ArrayList<>();
+        PriorityQueue<Integer> byTimestamp = new PriorityQueue<>(
+                Comparator.comparingLong((Integer thread) -> cursors.get(thread).getTimestamp()));
+        long records = 0;
+        try (OutputStream output = new FileOutputStream(pipe)) {
+            for (File file : files) {
+                cursors.add(TraceCursor.open(file));
+                if (cursors.get(cursors.size() - 1).hasRecord()) {
+                    byTimestamp.add(cursors.size() - 1);
+                }
+            }
+
+            ByteBuffer frame = ByteBuffer.allocate(TraceReceiver.FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (!byTimestamp.isEmpty()) {
+                int thread = byTimestamp.poll();
+                TraceCursor cursor = cursors.get(thread);
+                int[] ids = getThreadIds(files[thread], thread);
+
+                // One buffer, in frames of at most PIPE_BUF bytes
+                int sent = 0;
+                while (sent < bufferRecords && cursor.hasRecord()) {
+                    frame.clear();
+                    frame.putInt(ids[0]).putInt(ids[1]).putInt(0);
+                    int count = 0;
+                    while (count < TraceReceiver.MAX_FRAME_RECORDS && sent < bufferRecords && cursor.hasRecord()) {
+                        frame.putLong(cursor.getAddress() & ~TraceFormat.WRITE_BIT);
+                        frame.putLong(cursor.getAccessType() == 'W' ? 'W' : 'R');
+                        frame.putLong(cursor.getTimestamp());
+                        cursor.advance();
+                        count++;
+                        sent++;
+                    }
+                    frame.putInt(8, count);
+                    output.write(frame.array(), 0, frame.position());
+                }
+                records += sent;
+
+                if (cursor.hasRecord()) {
+                    byTimestamp.add(thread);
+                }
+            }
+        } finally {
+            for (TraceCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        return records;
+    }
+
+    // Process and thread ID from a buffer.out.<pid>.<tid> file name, or 0 and the file's index
+    private static int[] getThreadIds(File file, int index) {
+        String[] parts = file.getName().split("\\.");
+        try {
+            if (parts.length >= 2) {
+                return new int[] { Integer.parseInt(parts[parts.length - 2]), Integer.parseInt(parts[parts.length - 1]) };
+            }
+        } catch (NumberFormatException e) {
+            // Not MyPinTool's naming
+        }
+        return new int[] { 0, index };
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads all trace files of a run exactly once, in time order, and hands
+ * every record to one or more {@link IntervalAnalyzer}s.
+ *
+ * Each file keeps one open {@link TraceChunkReader} for the whole run. A scan
+ * covers a time range [from, to): the chunks holding that range are parsed in
+ * parallel on a fork/join pool, and the chunk reaching {@code to} is kept so
+ * the next range resumes at its first record at or after {@code to}. Every parsed record is fanned out to all
+ * analyzers, so several interval configurations cost a single read.
+ */
+public class TraceScanner implements Closeable {
+
+    // Pages are 4 KB
+    public static final int PAGE_SHIFT = 12;
+
+    // Pages kept by sampling are those whose salted hash is below the
+    // threshold, independent of the hashes of page tables and spill partitions
+    private static final long SAMPLE_SALT = 0xC2B2AE3D27D4EB4FL;
+
+    // Pages are assigned to shards by a hash independent of all of those too
+    private static final long SHARD_SALT = 0x165667B19E3779F9L;
+
+    private final List<File> traceFiles;
+    private final List<TraceChunkReader> chunkReaders;
+    private final ForkJoinPool workerPool;
+
+    // Chunk that straddled the end of the previous scan, per file
+    private final TraceChunk[] pendingChunks;
+
+    // Bounds the chunks read ahead of the workers, and recycles their buffers
+    private final int maxInFlightChunks;
+    private final Semaphore inFlightChunks;
+    private final Queue<byte[]> chunkBufferPool;
+
+    // Bytes and records read per file, when metrics are on
+    private AnalysisMetrics.Source[] metricsSources;
+
+    // Fraction of the pages analyzed, as a hash threshold
+    private double sampleRate = 1;
+    private long sampleThreshold = Long.MAX_VALUE;
+
+    // Shard of the pages analyzed, out of shardCount
+    private int shardIndex;
+    private int shardCount = 1;
+
+    public TraceScanner(List<File> traceFiles) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        this.workerPool = new ForkJoinPool(parallelism);
+        this.maxInFlightChunks = 2 * parallelism;
+        this.inFlightChunks = new Semaphore(maxInFlightChunks);
+        this.chunkBufferPool = new ConcurrentLinkedQueue<>();
+
+        // Open one chunk reader per trace file, kept open for the whole run so
+        // every file is read exactly once across all intervals
+        this.traceFiles = traceFiles;
+        this.chunkReaders = new ArrayList<>();
+        for (File file : traceFiles) {
+            chunkReaders.add(TraceChunkReader.open(file, chunkBufferPool));
+        }
+        this.pendingChunks = new TraceChunk[traceFiles.size()];
+    }
+
+    public ForkJoinPool getWorkerPool() {
+        return workerPool;
+    }
+
+    // Count the bytes and records read from every file, and the chunks read
+    // ahead of the workers
+    public void setMetrics(AnalysisMetrics metrics) {
+        metricsSources = new AnalysisMetrics.Source[traceFiles.size()];
+        for (int i = 0; i < metricsSources.length; i++) {
+            metricsSources[i] = metrics.addSource(traceFiles.get(i).getName());
+        }
+        metrics.addQueue("in_flight_chunks", () -> maxInFlightChunks - inFlightChunks.availablePermits());
+    }
+
+    // Only analyze a fraction of the pages, the same ones on every thread and
+    // in every interval, so the statistics of the analyzed pages stay exact
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        this.sampleThreshold = (long) (sampleRate * Long.MAX_VALUE);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    // Only analyze the pages of one shard out of shardCount, so that as many
+    // workers together analyze every page once (see ShardCoordinator)
+    public void setShard(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    // Shard of a page, out of shardCount
+    static int getShard(long pageId, int shardCount) {
+        return (int) ((PageTable.mix(pageId ^ SHARD_SALT) >>> 1) % shardCount);
+    }
+
+    // Whether sampling at the threshold keeps the page
+    static boolean isSampled(long pageId, long sampleThreshold) {
+        return (PageTable.mix(pageId ^ SAMPLE_SALT) >>> 1) < sampleThreshold;
+    }
+
+    // Skip straight to the first records at or after the timestamp, using the
+    // trace index (text files) or a binary search (binary files)
+    public void seek(long timestamp) throws IOException {
+        for (int i = 0; i < chunkReaders.size(); i++) {
+            if (pendingChunks[i] != null) {
+                pendingChunks[i].release();
+                pendingChunks[i] = null;
+            }
+            chunkReaders.get(i).seek(timestamp);
+        }
+    }
+
+    // Feed every record with a timestamp in [from, to) to all analyzers. A
+    // chunk failing to scan fails the whole range, once every chunk is done.
+    public void scan(long from, long to, List<IntervalAnalyzer> analyzers) throws IOException {
+        IntervalAnalyzer[] targets = analyzers.toArray(new IntervalAnalyzer[0]);
+
+        // Hand the range's chunks of every file to the workers, in file order
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < chunkReaders.size(); i++) {
+                submitFileChunks(i, from, to, targets, tasks);
+            }
+        } finally {
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.join();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw new IOException("Failed to scan the trace from " + from + " to " + to, failure);
+        }
+    }
+
+    // Submit every chunk of the file up to the first one reaching the end of
+    // the range. That last chunk is kept so the next range resumes inside it,
+    // at the record the scan stopped at.
+    private void submitFileChunks(int fileIndex, long from, long to, IntervalAnalyzer[] targets,
+            List<ForkJoinTask<?>> tasks) throws IOException {
+        TraceChunkReader reader = chunkReaders.get(fileIndex);
+
+        while (true) {
+            TraceChunk chunk = pendingChunks[fileIndex];
+            pendingChunks[fileIndex] = null;
+            if (chunk == null) {
+                chunk = reader.nextChunk();
+                if (chunk == null) {
+                    return;
+                }
+                if (metricsSources != null) {
+                    metricsSources[fileIndex].addBytesRead(chunk.getByteLength());
+                }
+            }
+
+            // Chunks ending before the range (left over from a seek) are never scanned
+            if (chunk.getLastTimestamp() < from) {
+                chunk.release();
+                continue;
+            }
+
+            boolean reachesRangeEnd = chunk.getLastTimestamp() >= to;
+            if (reachesRangeEnd) {
+                pendingChunks[fileIndex] = chunk;
+            }
+
+            inFlightChunks.acquireUninterruptibly();
+            TraceChunk submitted = chunk;
+            AnalysisMetrics.Source source = metricsSources != null ? metricsSources[fileIndex] : null;
+            tasks.add(workerPool.submit(() -> {
+                try {
+                    scanChunk(submitted, from, to, targets, sampleRate < 1 ? sampleThreshold : -1, shardIndex,
+                            shardCount, source);
+                } finally {
+                    if (!reachesRangeEnd) {
+                        submitted.release();
+                    }
+                    inFlightChunks.release();
+                }
+            }));
+
+            if (reachesRangeEnd) {
+                return;
+            }
+        }
+    }
+
+    // Aggregate every record of the chunk that falls in [from, to), of the
+    // sampled pages only unless sampleThreshold is negative, and of the
+    // shard's pages only. The scan stops at the first record at or after to,
+    // and holds it for the next range. The records are counted to the
+    // metrics source, if there is one.
+    private static void scanChunk(TraceChunk chunk, long from, long to, IntervalAnalyzer[] targets,
+            long sampleThreshold, int shardIndex, int shardCount, AnalysisMetrics.Source source) {
+        // Each worker aggregates into its own table of every analyzer
+        PageTable[] tables = new PageTable[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            tables[i] = targets[i].getWorkerPageTable();
+        }
+
+        long records = 0;
+        while (chunk.next()) {
+            long timestamp = chunk.getTimestamp();
+
+            if (timestamp >= to) {
+                chunk.holdRecord();
+                break;
+            }
+
+            if (timestamp >= from) {
+                records++;
+                long address = chunk.getAddress();
+                // We are considering 4KB pages, so we mask the lower 12 bits to get the page ID
+                long pageId = address >>> PAGE_SHIFT;
+
+                // Pages left out by sampling are dropped from their address alone
+                if (sampleThreshold >= 0 && !isSampled(pageId, sampleThreshold)) {
+                    continue;
+                }
+                if (shardCount > 1 && getShard(pageId, shardCount) != shardIndex) {
+                    continue;
+                }
+
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i].recordAccess(tables[i], pageId, timestamp);
+                }
+            }
+        }
+
+        if (source != null) {
+            source.addRecordsParsed(records);
+        }
+    }
+
+    // Close all trace files once the last interval has been analyzed
+    @Override
+    public void close() throws IOException {
+        workerPool.shutdown();
+        for (TraceChunkReader reader : chunkReaders) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Sorts the raw per-thread trace files written by MyPinTool by timestamp.
+ *
+ * Timestamps are compared as numbers, not as text, so their unpadded
+ * hexadecimal representation never affects the order. Sorting is an external
+ * merge sort with bounded memory:
+ * <ol>
+ * <li>Every file is split into byte ranges that are parsed and sorted in
+ * parallel, each range producing one or more sorted runs of at most
+ * {@code memory / threads} bytes, spilled to temporary binary files.</li>
+ * <li>The runs of every file are merged into a sorted file with the same
+ * name, or, with {@code --merge}, the runs of all files are merged into a
+ * single globally ordered trace that the analyzer can read directly.</li>
+ * </ol>
+ * Records with equal timestamps keep their input order (file by file).
+ * Malformed lines are dropped, like the analyzer does.
+ */
+public class TraceSorter {
+
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList("merge", "memory", "format", "tmp"));
+
+    private static final long DEFAULT_MEMORY_MB = 1024;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_MERGE_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_MERGE_BUFFER_SIZE = 64 << 10;
+
+    // Bytes of sort memory per record: timestamp and address, plus their scratch copies
+    private static final int SORT_BYTES_PER_RECORD = 32;
+
+    // Typical length of a text line, to size the ranges so that one usually fits a run
+    private static final int TYPICAL_LINE_LENGTH = 32;
+
+    public static void main(String[] args) {
+        if (args.length < 2 || (args.length - 2) % 2 != 0) {
+            printUsage();
+            return;
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i += 2) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : "";
+            if (!OPTIONS.contains(name)) {
+                printUsage();
+                return;
+            }
+            options.put(name, args[i + 1]);
+        }
+
+        File inputDir = new File(args[0]);
+        File outputDir = new File(args[1]);
+        String mergedName = options.get("merge");
+        long memoryBytes = Long.parseLong(options.getOrDefault("memory", String.valueOf(DEFAULT_MEMORY_MB))) << 20;
+
+        TraceWriter.Format format = TraceWriter.parseFormat(options.getOrDefault("format", "text"));
+        if (format == null) {
+            printUsage();
+            return;
+        }
+
+        File[] files = inputDir.listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null) {
+            System.out.println("Input directory does not exist: " + inputDir);
+            return;
+        }
+        Arrays.sort(files);
+
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        try {
+            File tmpDir = options.containsKey("tmp") ? new File(options.get("tmp")) : outputDir;
+            TraceSorter sorter = new TraceSorter(memoryBytes, format, tmpDir);
+            sorter.sort(files, outputDir, mergedName);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java TraceSorter <trace_dir> <sorted_trace_dir> [options]");
+        System.out.println("Options:");
+        System.out.println("  --merge <file_name>   Merge all files into a single sorted trace with this name");
+        System.out.println("  --memory <mb>         Memory used for sorting, in MB (default " + DEFAULT_MEMORY_MB + ")");
+        System.out.println("  --format <format>     Output format: text (default), binary or compressed");
+        System.out.println("  --tmp <dir>           Directory for temporary runs (default sorted_trace_dir)");
+    }
+
+    private final long memoryBytes;
+    private final TraceWriter.Format outputFormat;
+    private final File tmpParentDir;
+    private final int parallelism;
+    private final int maxRunRecords;
+
+    public TraceSorter(long memoryBytes, TraceWriter.Format outputFormat, File tmpParentDir) {
+        this.memoryBytes = memoryBytes;
+        this.outputFormat = outputFormat;
+        this.tmpParentDir = tmpParentDir;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.maxRunRecords = (int) Math.min(Integer.MAX_VALUE - 8,
+                Math.max(1024, (memoryBytes / parallelism - READ_BUFFER_SIZE) / SORT_BYTES_PER_RECORD));
+    }
+
+    // Sort the files into outputDir, merging them into one file if mergedName is not null
+    public void sort(File[] files, File outputDir, String mergedName) throws IOException {
+        tmpParentDir.mkdirs();
+        File tmpDir = Files.createTempDirectory(tmpParentDir.toPath(), ".sort").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        try {
+            // Phase 1: sorted runs of every range of every file, in input order
+            long rangeBytes = (long) maxRunRecords * TYPICAL_LINE_LENGTH;
+            List<List<Future<List<Run>>>> fileRuns = new ArrayList<>();
+            int nextRunId = 0;
+            for (File file : files) {
+                List<Future<List<Run>>> ranges = new ArrayList<>();
+                for (long start = 0; start < file.length(); start += rangeBytes) {
+                    long rangeStart = start;
+                    long rangeEnd = Math.min(file.length(), start + rangeBytes);
+                    String runPrefix = "run-" + (nextRunId++);
+                    ranges.add(executor.submit(() -> sortRange(file, rangeStart, rangeEnd, tmpDir, runPrefix)));
+                }
+                fileRuns.add(ranges);
+            }
+
+            List<List<Run>> runsPerFile = new ArrayList<>();
+            int totalRuns = 0;
+            for (int i = 0; i < files.length; i++) {
+                List<Run> runs = new ArrayList<>();
+                for (Future<List<Run>> range : fileRuns.get(i)) {
+                    runs.addAll(getResult(range));
+                }
+                runsPerFile.add(runs);
+                totalRuns += runs.size();
+            }
+
+            // Phase 2: k-way merges, sharing the memory between all open runs
+            int mergeBufferSize = (int) Math.max(MIN_MERGE_BUFFER_SIZE,
+                    Math.min(MAX_MERGE_BUFFER_SIZE, memoryBytes / Math.max(1, totalRuns)));
+            mergeBufferSize -= mergeBufferSize % TraceFormat.RECORD_SIZE;
+            int runBufferSize = mergeBufferSize;
+
+            if (mergedName != null) {
+                List<Run> allRuns = new ArrayList<>();
+                runsPerFile.forEach(allRuns::addAll);
+                File outputFile = new File(outputDir, mergedName);
+                long records = merge(allRuns, outputFile, runBufferSize);
+                System.out.println("Merged " + files.length + " files -> " + outputFile + " (" + records + " records)");
+            } else {
+                List<Future<Long>> merges = new ArrayList<>();
+                for (int i = 0; i < files.length; i++) {
+                    List<Run> runs = runsPerFile.get(i);
+                    File outputFile = new File(outputDir, files[i].getName());
+                    merges.add(executor.submit(() -> merge(runs, outputFile, runBufferSize)));
+                }
+                for (int i = 0; i < files.length; i++) {
+                    long records = getResult(merges.get(i));
+                    System.out.println("Sorted " + files[i] + " -> " + new File(outputDir, files[i].getName())
+                            + " (" + records + " records)");
+                }
+            }
+        } finally {
+            executor.shutdown();
+            File[] leftovers = tmpDir.listFiles();
+            if (leftovers != null) {
+                for (File leftover : leftovers) {
+                    leftover.delete();
+                }
+            }
+            tmpDir.delete();
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * A sorted run on disk: raw 16-byte records (timestamp, encoded address)
+     * in {@link TraceFormat#BYTE_ORDER}, without a header.
+     */
+    private static class Run {
+        final File file;
+        final long recordCount;
+
+        Run(File file, long recordCount) {
+            this.file = file;
+            this.recordCount = recordCount;
+        }
+    }
+
+    // Parse the lines starting in [start, end) of the file into sorted runs
+    private List<Run> sortRange(File file, long start, long end, File tmpDir, String runPrefix) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        long[] timestamps = new long[Math.min(maxRunRecords, 1 << 16)];
+        long[] addresses = new long[timestamps.length];
+        long[] parsed = new long[2];
+        int count = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] data = buffer.array();
+
+            // A range owns the lines that start inside it. Reading from the byte
+            // before the range and dropping everything up to the first newline
+            // skips the line that started in the previous range, if any.
+            long position = start == 0 ? 0 : start - 1;
+            long bufferOffset = position; // file offset of data[0]
+            boolean skipFirstLine = start > 0;
+            boolean endOfRange = false;
+
+            while (!endOfRange) {
+                int read = channel.read(buffer, position);
+                boolean endOfFile = read < 0;
+                if (!endOfFile) {
+                    position += read;
+                }
+                int length = buffer.position();
+                int lineStart = 0;
+
+                for (int i = 0; i <= length && !endOfRange; i++) {
+                    // The last line of the file may have no trailing newline
+                    boolean lineEnd = i < length ? data[i] == '\n' : endOfFile && lineStart < length;
+                    if (!lineEnd) {
+                        continue;
+                    }
+
+                    if (bufferOffset + lineStart >= end) {
+                        endOfRange = true;
+                    } else if (skipFirstLine) {
+                        skipFirstLine = false;
+                    } else if (TextTraceFormat.parseLine(data, lineStart, i, parsed)) {
+                        if (count == timestamps.length) {
+                            if (count == maxRunRecords) {
+                                runs.add(writeRun(timestamps, addresses, count, tmpDir, runPrefix + "-" + runs.size()));
+                                count = 0;
+                            } else {
+                                int capacity = (int) Math.min(maxRunRecords, 2L * count);
+                                timestamps = Arrays.copyOf(timestamps, capacity);
+                                addresses = Arrays.copyOf(addresses, capacity);
+                            }
+                        }
+                        timestamps[count] = parsed[0];
+                        addresses[count] = parsed[1];
+                        count++;
+                    }
+                    lineStart = i + 1;
+                }
+
+                if (endOfFile) {
+                    break;
+                }
+                if (lineStart == 0 && length == data.length) {
+                    throw new IOException("Line longer than " + READ_BUFFER_SIZE + " bytes in " + file);
+                }
+
+                // Keep the partial line at the start of the buffer for the next read
+                System.arraycopy(data, lineStart, data, 0, length - lineStart);
+                buffer.position(length - lineStart);
+                bufferOffset += lineStart;
+            }
+        }
+
+        if (count > 0) {
+            runs.add(writeRun(timestamps, addresses, count, tmpDir, runPrefix + "-" + runs.size()));
+        }
+        return runs;
+    }
+
+    // Sort the records by timestamp and spill them to a run file
+    private static Run writeRun(long[] timestamps, long[] addresses, int count, File tmpDir, String name)
+            throws IOException {
+        long[][] sorted = radixSort(timestamps, addresses, count);
+        long[] sortedTimestamps = sorted[0];
+        long[] sortedAddresses = sorted[1];
+
+        File runFile = new File(tmpDir, name);
+        try (FileChannel channel = FileChannel.open(runFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_MERGE_BUFFER_SIZE).order(TraceFormat.BYTE_ORDER);
+            for (int i = 0; i < count; i++) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(sortedTimestamps[i]);
+                buffer.putLong(sortedAddresses[i]);
+            }
+            flush(channel, buffer);
+        }
+        return new Run(runFile, count);
+    }
+
+    // Stable LSD radix sort of the first count records by timestamp, one byte
+    // per pass. Bytes shared by all timestamps (the high bytes of a run, most
+    // of the time) are skipped, and so are runs that are already sorted.
+    // Returns the arrays holding the sorted records: either the input arrays
+    // or fresh ones.
+    static long[][] radixSort(long[] keys, long[] values, int count) {
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = keys[i - 1] <= keys[i];
+        }
+        if (sorted) {
+            return new long[][] { keys, values };
+        }
+
+        int[][] histograms = new int[8][257];
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            for (int b = 0; b < 8; b++) {
+                histograms[b][(int) ((key >>> (b << 3)) & 0xFF) + 1]++;
+            }
+        }
+
+        long[] keyScratch = null;
+        long[] valueScratch = null;
+        for (int b = 0; b < 8; b++) {
+            int[] offsets = histograms[b];
+            boolean sharedByte = false;
+            for (int d = 1; d <= 256 && !sharedByte; d++) {
+                sharedByte = offsets[d] == count;
+            }
+            if (sharedByte) {
+                continue;
+            }
+
+            // offsets[d] becomes the position of the first key with digit d
+            for (int d = 0; d < 256; d++) {
+                offsets[d + 1] += offsets[d];
+            }
+            if (keyScratch == null) {
+                keyScratch = new long[count];
+                valueScratch = new long[count];
+            }
+
+            int shift = b << 3;
+            for (int i = 0; i < count; i++) {
+                int destination = offsets[(int) ((keys[i] >>> shift) & 0xFF)]++;
+                keyScratch[destination] = keys[i];
+                valueScratch[destination] = values[i];
+            }
+
+            long[] swap = keys;
+            keys = keyScratch;
+            keyScratch = swap;
+            swap = values;
+            values = valueScratch;
+            valueScratch = swap;
+        }
+        return new long[][] { keys, values };
+    }
+
+    // k-way merge of sorted runs into one trace file. Records with equal
+    // timestamps are taken from the runs in list order, keeping the input order.
+    private long merge(List<Run> runs, File outputFile, int bufferSize) throws IOException {
+        RunReader[] readers = new RunReader[runs.size()];
+        int[] heap = new int[runs.size()];
+        int heapSize = 0;
+        long records = 0;
+
+        try (TraceWriter writer = TraceWriter.open(outputFile, outputFormat)) {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RunReader(runs.get(i), bufferSize);
+                if (readers[i].advance()) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++, readers);
+                }
+            }
+
+            while (heapSize > 0) {
+                RunReader reader = readers[heap[0]];
+                writer.write(reader.timestamp, TraceFormat.decodeAccessType(reader.encodedAddress),
+                        TraceFormat.decodeAddress(reader.encodedAddress));
+                records++;
+
+                if (!reader.advance()) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, readers);
+            }
+        } finally {
+            for (int i = 0; i < readers.length; i++) {
+                if (readers[i] != null) {
+                    readers[i].close();
+                }
+                runs.get(i).file.delete();
+            }
+        }
+        return records;
+    }
+
+    private static boolean before(RunReader[] readers, int a, int b) {
+        long timestampA = readers[a].timestamp;
+        long timestampB = readers[b].timestamp;
+        return timestampA < timestampB || (timestampA == timestampB && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, RunReader[] readers) {
+        int run = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(readers, run, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = run;
+    }
+
+    private static void siftDown(int[] heap, int size, RunReader[] readers) {
+        if (size == 0) {
+            return;
+        }
+        int run = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(readers, heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(readers, heap[child], run)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    // Sequential reader of a run file, holding the current record
+    private static class RunReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        long timestamp;
+        long encodedAddress;
+
+        RunReader(Run run, int bufferSize) throws IOException {
+            this.channel = FileChannel.open(run.file.toPath(), StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocate(bufferSize).order(TraceFormat.BYTE_ORDER);
+            buffer.flip();
+        }
+
+        // Load the next record, or return false at the end of the run
+        boolean advance() throws IOException {
+            if (buffer.remaining() < TraceFormat.RECORD_SIZE) {
+                buffer.compact();
+                while (buffer.position() < TraceFormat.RECORD_SIZE) {
+                    if (channel.read(buffer) < 0) {
+                        buffer.flip();
+                        return false;
+                    }
+                }
+                buffer.flip();
+            }
+            timestamp = buffer.getLong();
+            encodedAddress = buffer.getLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
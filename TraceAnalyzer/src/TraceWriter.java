@@ -0,0 +1,37 @@
+import java.io.*;
+
+/**
+ * Sequential writer of trace records, in MyPinTool's text format, in the
+ * binary format described in {@link TraceFormat} or in the block-compressed
+ * format described in {@link CompressedTraceFormat}.
+ */
+public interface TraceWriter extends Closeable {
+
+    enum Format {
+        TEXT, BINARY, COMPRESSED
+    }
+
+    void write(long timestamp, char accessType, long address) throws IOException;
+
+    // Format named on the command line (text, binary or compressed), or null
+    static Format parseFormat(String name) {
+        for (Format format : Format.values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // Open a writer for the given format, replacing any existing file
+    static TraceWriter open(File file, Format format) throws IOException {
+        switch (format) {
+            case BINARY:
+                return new BinaryTraceWriter(file);
+            case COMPRESSED:
+                return new CompressedTraceWriter(file);
+            default:
+                return new TextTraceWriter(file);
+        }
+    }
+}